@@ -0,0 +1,445 @@
+package spass;
+
+import java.io.IOException;
+
+/**
+ * A SIM acquisition set: the images of several orientations of the
+ * SI-pattern (usually 3), each taken with several phases (usually 3 or
+ * 5).  The frames are ordered by orientation, so frame
+ * <code>o*phases + p</code> is phase <code>p</code> of orientation
+ * <code>o</code>.
+ * <p>
+ * <code>analyze</code> estimates the parameters of all frames in one
+ * pass, transforming each frame only once:
+ * <ul>
+ * <li>all frames are transformed in parallel, with the plans of one
+ * <code>PlanCache</code>; the transforms are kept for later use (see
+ * <code>getSpectrum</code>);</li>
+ * <li>the frames of one orientation differ only in their phase, so the
+ * absolute values of their spectra are summed, and angle and wavelength
+ * are taken from the peak of the sum (see
+ * <code>PeakFinder.findPeaks</code>), jointly for all phases;</li>
+ * <li>the peak is refined by a zoom-DFT of all phases together (see
+ * <code>PeakFinder.refineZoom(double[][], ...)</code>), which evaluates
+ * the coefficients only on a small grid, so no further transform is
+ * needed;</li>
+ * <li>the phase of each frame is taken from its coefficient at the
+ * common frequency, and the phases of an orientation are fitted by least
+ * squares to equally spaced steps <code>psi_p = psi_0 + p*step</code>,
+ * which reduces the noise of the single phases.</li>
+ * </ul>
+ * Frames, whose width or height is not a fast size for the FFT (see
+ * <code>Trafo.fastSize</code>), are padded with their mean value like in
+ * the <code>BatchEstimator</code>; the phases refer to the original
+ * frames.
+ * <p>
+ * The parameters of the result can be passed to the
+ * <code>SIMReconstructor</code> together with the frames.  This class
+ * uses no AWT components.
+ *
+ * @author Oliver Eickmeyer
+ */
+public class AcquisitionSet {
+
+	/**
+	 * Number of grid points of the zoom-DFT in each dimension.
+	 */
+	protected final static int ZOOM_STEPS = 9;
+
+	protected final PlanCache plans;
+	protected final double[][] frames;
+	protected final int width, height;
+	protected final int orientations, phases;
+	protected double maskRadius;
+	protected int zoomLevels;
+	protected Trafo[] spectra;
+
+	/**
+	 * Constructs a set of the given frames, with its own plan cache.
+	 * @param frames values of the frames (row by row), ordered by
+	 * orientation
+	 * @param width width of the frames
+	 * @param height height of the frames
+	 * @param orientations number of orientations
+	 */
+	public AcquisitionSet(double[][] frames, int width, int height, int orientations){
+		this(frames, width, height, orientations, new PlanCache());
+	}
+
+	/**
+	 * Constructs a set of the given frames, which takes the transform
+	 * plans from the given cache.
+	 * @param frames values of the frames (row by row), ordered by
+	 * orientation
+	 * @param width width of the frames
+	 * @param height height of the frames
+	 * @param orientations number of orientations
+	 * @param plans cache for the transform plans
+	 * @throws IllegalArgumentException if the frames can not be divided
+	 * into orientations, or have the wrong size
+	 */
+	public AcquisitionSet(double[][] frames, int width, int height, int orientations, PlanCache plans){
+		if(orientations < 1 || frames.length == 0 || frames.length % orientations != 0){
+			throw new IllegalArgumentException("frames can not be divided into "+orientations+" orientations");
+		}
+		for(double[] frame : frames){
+			if(frame.length != width*height) throw new IllegalArgumentException("frame has wrong size");
+		}
+		this.frames = frames;
+		this.width = width;
+		this.height = height;
+		this.orientations = orientations;
+		this.phases = frames.length / orientations;
+		this.plans = plans;
+		maskRadius = 20.0;
+		zoomLevels = 4;
+	}
+
+	/**
+	 * Reads a set from consecutive frames of a raw stack.
+	 * @param stack raw stack
+	 * @param first number of the first frame of the set
+	 * @param orientations number of orientations
+	 * @param phases number of phases of each orientation
+	 * @param plans cache for the transform plans
+	 * @return acquisition set
+	 * @throws IOException if the frames can not be read
+	 */
+	public static AcquisitionSet read(RawStack stack, int first, int orientations, int phases, PlanCache plans) throws IOException {
+		double[][] frames = new double[orientations*phases][];
+		for(int n=0; n<frames.length; n++){
+			frames[n] = stack.getFrame(first + n, (double[]) null);
+		}
+		return new AcquisitionSet(frames, stack.getWidth(), stack.getHeight(), orientations, plans);
+	}
+
+	/**
+	 * Reads a set from consecutive pages of an image stack (like a TIFF
+	 * file).  All pages must have the same size.
+	 * @param stack image stack
+	 * @param first number of the first page of the set
+	 * @param orientations number of orientations
+	 * @param phases number of phases of each orientation
+	 * @param plans cache for the transform plans
+	 * @return acquisition set
+	 * @throws IOException if the pages can not be read
+	 */
+	public static AcquisitionSet read(ImageStack stack, int first, int orientations, int phases, PlanCache plans) throws IOException {
+		double[][] frames = new double[orientations*phases][];
+		for(int n=0; n<frames.length; n++){
+			frames[n] = stack.getPage(first + n, (double[]) null);
+		}
+		return new AcquisitionSet(frames, stack.getWidth(first), stack.getHeight(first), orientations, plans);
+	}
+
+	/**
+	 * Transforms all frames in parallel, if this was not done before.
+	 */
+	protected synchronized void transform(){
+		if(spectra != null) return;
+		int fastWidth = Trafo.fastSize(width), fastHeight = Trafo.fastSize(height);
+		Trafo[] t = new Trafo[frames.length];
+		Parallel.forRows(frames.length, fastWidth*fastHeight, (from, to) -> {
+			for(int n=from; n<to; n++){
+				t[n] = new Trafo(plans);
+				t[n].transform(Trafo.pad(frames[n], width, height, fastWidth, fastHeight),
+						fastWidth, fastHeight, Trafo.Mode.FFT);
+				t[n].getAbsArray(); // calculated here, in parallel
+			}
+		});
+		spectra = t;
+	}
+
+	/**
+	 * Estimates the SI-parameters of all frames.  The frames are
+	 * transformed only by the first call.
+	 * @return parameters of all orientations
+	 * @throws IllegalStateException if no peak is found for an
+	 * orientation (like for constant frames)
+	 */
+	public Result analyze(){
+		transform();
+		int fastWidth = spectra[0].getWidth(), fastHeight = spectra[0].getHeight();
+		int size = fastWidth*fastHeight;
+		Mask mask = Mask.get(fastWidth, fastHeight, maskRadius);
+		Orientation[] result = new Orientation[orientations];
+		double[] sum = new double[size];
+		for(int o=0; o<orientations; o++){
+			// sum of the absolute values of all phases:
+			int offset = o*phases;
+			Parallel.forRows(size, 1, (from, to) -> {
+				for(int i=from; i<to; i++){
+					double s = 0.0;
+					for(int p=0; p<phases; p++) s += spectra[offset + p].getAbsArray()[i];
+					sum[i] = s;
+				}
+			});
+			double[] mean = new double[1];
+			int[] peak = PeakFinder.findPeaks(sum, fastWidth, fastHeight, mask, 1, 0.0, mean);
+			if(peak.length == 0) throw new IllegalStateException("no peak found for orientation "+o);
+			double max = sum[peak[0]];
+			double[] f = PeakFinder.refineGaussian(sum, fastWidth, fastHeight, peak[0]);
+			double[][] g = new double[phases][];
+			if(zoomLevels > 0){
+				// joint zoom-DFT of the original frames, in cycles per original size:
+				double[][] images = new double[phases][];
+				for(int p=0; p<phases; p++) images[p] = frames[offset + p];
+				double[] zoom = PeakFinder.refineZoom(images, width, height, f[0]*width/fastWidth, f[1]*height/fastHeight,
+						0.5, ZOOM_STEPS, zoomLevels);
+				f = new double[]{zoom[0], zoom[1]};
+				for(int p=0; p<phases; p++) g[p] = new double[]{zoom[2 + 2*p], zoom[3 + 2*p]};
+			}
+			else{
+				for(int p=0; p<phases; p++) g[p] = PeakFinder.coefficient(spectra[offset + p], peak[0], f[0], f[1]);
+			}
+			// size, to which the frequencies and coefficients refer:
+			int w = zoomLevels > 0 ? width : fastWidth, h = zoomLevels > 0 ? height : fastHeight;
+
+			Orientation orientation = new Orientation(phases);
+			orientation.fx = f[0];
+			orientation.fy = f[1];
+			orientation.angle = Trafo.toAngle(f[0], f[1], w, h);
+			orientation.wvlen = Trafo.toWavelength(f[0], f[1], w, h);
+			orientation.confidence = (max - mean[0]) / (max + mean[0]);
+			double[] psi = new double[phases];
+			for(int p=0; p<phases; p++){
+				psi[p] = Math.atan2(g[p][1], g[p][0]);
+				orientation.magnitudes[p] = Math.hypot(g[p][0], g[p][1]);
+				orientation.measuredPhases[p] = toPhase(orientation, psi[p], w, h);
+			}
+			fitPhases(psi, orientation.magnitudes, orientation);
+			for(int p=0; p<phases; p++){
+				orientation.phases[p] = toPhase(orientation, orientation.phaseOffset + p*orientation.phaseStep, w, h);
+			}
+			result[o] = orientation;
+		}
+		return new Result(result);
+	}
+
+	/**
+	 * Converts the angle of the coefficient <code>G</code> into the phase
+	 * of the SI-pattern in pixels (see <code>PeakFinder.toSIParams</code>),
+	 * for the original size of the frames.  The coefficient refers to an
+	 * image of the size <code>w*h</code>.
+	 */
+	protected double toPhase(Orientation orientation, double psi, int w, int h){
+		double phase = SumMulEvaluator.bestPhase(Math.cos(psi), Math.sin(psi), orientation.angle, orientation.wvlen, w, h);
+		if(w == width && h == height) return phase;
+		return SumMulEvaluator.convertPhase(orientation.angle, phase, orientation.wvlen, w, h, width, height);
+	}
+
+	/**
+	 * Fits <code>psi_p = psi_0 + p*step</code> to the angles of the
+	 * coefficients by weighted least squares (weighted with the absolute
+	 * values of the coefficients).  The angles are unwrapped first, so
+	 * that each step is between -pi and pi.
+	 */
+	protected static void fitPhases(double[] psi, double[] weights, Orientation orientation){
+		int n = psi.length;
+		double[] unwrapped = new double[n];
+		unwrapped[0] = psi[0];
+		for(int p=1; p<n; p++){
+			double d = psi[p] - psi[p-1];
+			d -= 2.0*Math.PI*Math.rint(d / (2.0*Math.PI));
+			unwrapped[p] = unwrapped[p-1] + d;
+		}
+		double sw = 0.0, sx = 0.0, sy = 0.0, sxx = 0.0, sxy = 0.0;
+		for(int p=0; p<n; p++){
+			double w = weights[p];
+			sw += w;
+			sx += w*p;
+			sy += w*unwrapped[p];
+			sxx += w*p*p;
+			sxy += w*p*unwrapped[p];
+		}
+		double denominator = sw*sxx - sx*sx;
+		double step = n > 1 && denominator > 0.0 ? (sw*sxy - sx*sy) / denominator : 0.0;
+		double offset = sw > 0.0 ? (sy - step*sx) / sw : unwrapped[0];
+		double squares = 0.0;
+		for(int p=0; p<n; p++){
+			double r = unwrapped[p] - offset - p*step;
+			squares += r*r;
+		}
+		orientation.phaseOffset = offset;
+		orientation.phaseStep = step;
+		orientation.residual = Math.sqrt(squares / n);
+	}
+
+	/**
+	 * Transform of a frame (padded to a fast size).  The frames are
+	 * transformed, if this was not done before.
+	 * @param n number of the frame
+	 * @return FFT of the frame
+	 */
+	public Trafo getSpectrum(int n){
+		transform();
+		return spectra[n];
+	}
+
+	/**
+	 * Sets the radius of the masked zero order for the search of the
+	 * peaks (in cycles per image).
+	 * @param maskRadius radius of the mask (default: 20)
+	 */
+	public void setMaskRadius(double maskRadius){ this.maskRadius = maskRadius; }
+
+	public double getMaskRadius(){ return maskRadius; }
+
+	/**
+	 * Sets the number of levels of the zoom-DFT.  Without zoom (0 levels),
+	 * the peak is only interpolated from the summed spectra, and the
+	 * coefficients are taken from the transforms (see
+	 * <code>PeakFinder.coefficient</code>).
+	 * @param zoomLevels number of levels (default: 4)
+	 */
+	public void setZoomLevels(int zoomLevels){ this.zoomLevels = zoomLevels; }
+
+	public int getZoomLevels(){ return zoomLevels; }
+
+	public double[] getFrame(int n){ return frames[n]; }
+
+	public int getFrameCount(){ return frames.length; }
+
+	public int getWidth(){ return width; }
+
+	public int getHeight(){ return height; }
+
+	public int getOrientations(){ return orientations; }
+
+	public int getPhases(){ return phases; }
+
+	public PlanCache getPlans(){ return plans; }
+
+	/**
+	 * Parameters of one orientation.
+	 */
+	public static class Orientation {
+		protected double angle;
+		protected double wvlen;
+		protected double fx, fy;
+		protected double confidence;
+		protected final double[] phases;
+		protected final double[] measuredPhases;
+		protected final double[] magnitudes;
+		protected double phaseOffset, phaseStep;
+		protected double residual;
+
+		protected Orientation(int phases){
+			this.phases = new double[phases];
+			measuredPhases = new double[phases];
+			magnitudes = new double[phases];
+		}
+
+		/**
+		 * Angle of the SI-pattern, common to all phases.
+		 * @return angle (in radians)
+		 */
+		public double getAngle(){ return angle; }
+
+		/**
+		 * Wavelength of the SI-pattern, common to all phases.
+		 * @return wavelength (in pixels)
+		 */
+		public double getWvlen(){ return wvlen; }
+
+		/**
+		 * Refined frequency in x-direction, in cycles per width (of the
+		 * padded frames, if there is no zoom).
+		 */
+		public double getFx(){ return fx; }
+
+		/** Refined frequency in y-direction, like <code>getFx</code>. */
+		public double getFy(){ return fy; }
+
+		/**
+		 * Confidence of the peak of the summed spectra, like
+		 * <code>SIPEstimate.getConfidence</code>.
+		 * @return confidence score from 0 (none) to 1
+		 */
+		public double getConfidence(){ return confidence; }
+
+		/**
+		 * Phase of a frame from the least squares fit.
+		 * @param p number of the phase
+		 * @return phase (in pixels)
+		 */
+		public double getPhase(int p){ return phases[p]; }
+
+		/**
+		 * Phase of a frame as measured from its own coefficient.
+		 * @param p number of the phase
+		 * @return phase (in pixels)
+		 */
+		public double getMeasuredPhase(int p){ return measuredPhases[p]; }
+
+		/**
+		 * Absolute value of the coefficient of a frame, which is
+		 * proportional to the modulation of the pattern.
+		 * @param p number of the phase
+		 * @return absolute value of the coefficient
+		 */
+		public double getMagnitude(int p){ return magnitudes[p]; }
+
+		/**
+		 * Fitted step between two phases, as angle of the coefficient.
+		 * @return step (in radians, from -pi to pi)
+		 */
+		public double getPhaseStep(){ return phaseStep; }
+
+		/**
+		 * Root mean square deviation of the measured phases from the fit.
+		 * @return residual (in radians)
+		 */
+		public double getResidual(){ return residual; }
+
+		public int getPhases(){ return phases.length; }
+
+		/**
+		 * SI-parameters of a frame, with the fitted phase.
+		 * @param p number of the phase
+		 * @return SI-parameters
+		 */
+		public SIParams getParams(int p){
+			return new SIParams(angle, phases[p], wvlen);
+		}
+	}
+
+	/**
+	 * Parameters of all frames of a set.
+	 */
+	public static class Result {
+		protected final Orientation[] orientations;
+
+		protected Result(Orientation[] orientations){
+			this.orientations = orientations;
+		}
+
+		public Orientation getOrientation(int o){ return orientations[o]; }
+
+		public int getOrientations(){ return orientations.length; }
+
+		/**
+		 * SI-parameters of a frame.
+		 * @param o number of the orientation
+		 * @param p number of the phase
+		 * @return SI-parameters
+		 */
+		public SIParams getParams(int o, int p){
+			return orientations[o].getParams(p);
+		}
+
+		/**
+		 * SI-parameters of all frames, in the order of the frames (like
+		 * needed by <code>SIMReconstructor.reconstruct</code>).
+		 * @return SI-parameters of each frame
+		 */
+		public SIParams[] getParams(){
+			int phases = orientations[0].getPhases();
+			SIParams[] params = new SIParams[orientations.length*phases];
+			for(int o=0; o<orientations.length; o++){
+				for(int p=0; p<phases; p++) params[o*phases + p] = orientations[o].getParams(p);
+			}
+			return params;
+		}
+	}
+}
@@ -0,0 +1,707 @@
+package spass;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteOrder;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import org.jtransforms.utils.ConcurrencyUtils;
+
+/**
+ * Estimates the SI-parameters of many images without GUI.
+ * <p>
+ * Each image is loaded, transformed with the FFT, the first-order peak is
+ * located by <code>PeakFinder.estimate</code> and the parameters are
+ * fitted to the image by the <code>SIPOptimizer</code>.  The images are
+ * processed in parallel on a pool of worker threads, each with its own
+ * <code>Trafo</code> (all sharing one <code>PlanCache</code>).  The results
+ * are written as one line per image, in the order of the input, as soon
+ * as they are available.  With more than one worker thread, the kernels
+ * of each image (see <code>Parallel.serial</code>) run in its worker
+ * thread; if started by <code>main</code>, also the transforms (see
+ * <code>setSerialTransforms</code>).
+ * <p>
+ * Usage:
+ * <pre>
+ *   java spass.BatchEstimator [options] (directory | file | glob)...
+ *
+ *   --threads n    number of worker threads (default: number of cores)
+ *   --format f     csv or json (default: csv)
+ *   --mask r       radius of the masked zero order (default: 20)
+ *   --no-fit       only locate the peak, do not fit the parameters
+ *   --millis t     time budget of the fit for one image (default: 2000)
+ *   --raw WxH[xB]  the files are stacks of raw frames with width W, height H
+ *                  and B bits per pixel (8 or 16, default: 16)
+ *   --big-endian   byte order of 16 bit raw frames (default: little endian)
+ *   --header n     bytes before the first raw frame (default: 0)
+ *   --suffix s     comma separated suffixes of the files of directories
+ *                  (default: all suffixes known to ImageIO; all files with
+ *                  --raw)
+ * </pre>
+ * A glob like <code>"data/*.gif"</code> has to be quoted, if it shall not
+ * be expanded by the shell.  Directories are not searched recursively,
+ * only files with a suffix known to <code>ImageIO</code> are used (or
+ * the suffixes of <code>--suffix</code>; for raw stacks all files).
+ * <p>
+ * Raw stacks are read with a <code>RawStack</code>, so they are not
+ * loaded into the heap; each frame is converted into a buffer of the
+ * worker thread, when it is processed.  TIFF files are read as stacks
+ * with an <code>ImageStack</code>, one page at a time (each worker thread
+ * keeps its own reader).  The result lines of stacks contain the number
+ * of the frame.
+ * <p>
+ * Images may be rectangular.  Images, whose width or height is not a
+ * fast size for the FFT (see <code>Trafo.fastSize</code>), are padded with
+ * their mean value; the phase of the result refers to the original image.
+ * <p>
+ * This class uses no AWT components, so it runs with
+ * <code>java.awt.headless=true</code>.
+ *
+ * @author Oliver Eickmeyer
+ */
+public class BatchEstimator {
+
+	/**
+	 * Format of the result lines.
+	 */
+	public enum Format { CSV, JSON }
+
+	protected static int serialBatches; // running batches with serial transforms
+	protected static int transformThreads; // threads of JTransforms before the first batch
+
+	protected final static String CSV_HEADER = "file,frame,width,height,angle,phase,wvlen,confidence,sumMul,error";
+
+	protected int threads;
+	protected Format format;
+	protected double maskRadius;
+	protected boolean fit;
+	protected long fitMillis;
+	protected int rawWidth, rawHeight, rawBits;
+	protected ByteOrder rawOrder;
+	protected long rawHeader;
+	protected boolean serialTransforms;
+	protected final PlanCache plans;
+	protected final ThreadLocal<Trafo> trafos;
+	protected final ThreadLocal<double[]> buffers;
+	protected final ThreadLocal<ImageStack> imageStacks;
+	protected final Set<ImageStack> openImageStacks;
+
+	/**
+	 * Constructs an estimator with the default settings.
+	 */
+	public BatchEstimator(){
+		threads = Runtime.getRuntime().availableProcessors();
+		format = Format.CSV;
+		maskRadius = 20.0;
+		fit = true;
+		fitMillis = 2000;
+		plans = new PlanCache();
+		trafos = ThreadLocal.withInitial(() -> new Trafo(plans));
+		buffers = new ThreadLocal<>();
+		imageStacks = new ThreadLocal<>();
+		openImageStacks = Collections.synchronizedSet(new HashSet<>());
+		rawOrder = ByteOrder.LITTLE_ENDIAN;
+	}
+
+	/**
+	 * Runs the estimation for the files given on the command line.
+	 * @param args options and files (see class description)
+	 */
+	public static void main(String[] args){
+		// the process runs only the batch:
+		System.exit(run(args, System.out, System.err, true));
+	}
+
+	/**
+	 * Runs the estimation for the files given by the arguments.
+	 * @param args options and files (see class description)
+	 * @param out stream for the results
+	 * @param err stream for error messages
+	 * @return exit code: 0 if all images were processed, 1 if some images
+	 * failed, 2 for invalid arguments
+	 */
+	public static int run(String[] args, PrintStream out, PrintStream err){
+		return run(args, out, err, false);
+	}
+
+	/**
+	 * Runs the estimation for the files given by the arguments, like
+	 * <code>run(String[], PrintStream, PrintStream)</code>.
+	 * @param args options and files (see class description)
+	 * @param out stream for the results
+	 * @param err stream for error messages
+	 * @param serialTransforms <code>true</code> to let the transforms of
+	 * JTransforms use one thread (see <code>setSerialTransforms</code>)
+	 * @return exit code
+	 */
+	protected static int run(String[] args, PrintStream out, PrintStream err, boolean serialTransforms){
+		BatchEstimator estimator = new BatchEstimator();
+		estimator.setSerialTransforms(serialTransforms);
+		List<String> names = new ArrayList<>();
+		List<String> suffixes = null;
+		List<File> files = new ArrayList<>();
+		try{
+			for(int i=0; i<args.length; i++){
+				switch(args[i]){
+				case "--threads":
+					estimator.setThreads(Integer.parseInt(args[++i]));
+					break;
+				case "--format":
+					estimator.setFormat(Format.valueOf(args[++i].toUpperCase(Locale.US)));
+					break;
+				case "--mask":
+					estimator.setMaskRadius(Double.parseDouble(args[++i]));
+					break;
+				case "--no-fit":
+					estimator.setFit(false);
+					break;
+				case "--millis":
+					estimator.setFitMillis(Long.parseLong(args[++i]));
+					break;
+				case "--raw":
+					String[] dims = args[++i].toLowerCase(Locale.US).split("x");
+					if(dims.length < 2 || dims.length > 3) throw new IllegalArgumentException("invalid raw format "+args[i]);
+					estimator.setRaw(Integer.parseInt(dims[0]), Integer.parseInt(dims[1]),
+							dims.length > 2 ? Integer.parseInt(dims[2]) : 16);
+					break;
+				case "--big-endian":
+					estimator.setRawByteOrder(ByteOrder.BIG_ENDIAN);
+					break;
+				case "--header":
+					estimator.setRawHeader(Long.parseLong(args[++i]));
+					break;
+				case "--suffix":
+					suffixes = Arrays.asList(args[++i].toLowerCase(Locale.US).split(","));
+					break;
+				default:
+					if(args[i].startsWith("--")) throw new IllegalArgumentException("unknown option "+args[i]);
+					names.add(args[i]);
+				}
+			}
+			// raw stacks have no known suffix, so all files of a directory are used:
+			if(suffixes == null && !estimator.isRaw()) suffixes = Arrays.asList(ImageIO.getReaderFileSuffixes());
+			for(String name : names) files.addAll(expand(name, suffixes));
+		}
+		catch(ArrayIndexOutOfBoundsException e){
+			err.println("Missing value for option "+args[args.length-1]);
+			return 2;
+		}
+		catch(IllegalArgumentException | IOException e){
+			err.println("Invalid arguments: "+e.getMessage());
+			return 2;
+		}
+		if(files.isEmpty()){
+			err.println("No images found.");
+			return 2;
+		}
+		int[] count = new int[1];
+		int failed = estimator.process(files, out, count);
+		if(failed > 0) err.println(failed+" of "+count[0]+" images failed.");
+		return failed > 0 ? 1 : 0;
+	}
+
+	/**
+	 * Converts an argument into a list of files.  A directory gives all
+	 * images in it, a glob pattern all matching files, sorted by name.
+	 * @param arg name of a file or directory, or glob pattern
+	 * @return list of files
+	 * @throws IOException if a directory can not be read
+	 */
+	public static List<File> expand(String arg) throws IOException {
+		return expand(arg, Arrays.asList(ImageIO.getReaderFileSuffixes()));
+	}
+
+	/**
+	 * Converts an argument into a list of files, like
+	 * <code>expand(String)</code>, but a directory gives all files with one
+	 * of the given suffixes.
+	 * @param arg name of a file or directory, or glob pattern
+	 * @param suffixes suffixes of the files of a directory (lower case,
+	 * without the dot); or <code>null</code> for all files
+	 * @return list of files
+	 * @throws IOException if a directory can not be read
+	 */
+	public static List<File> expand(String arg, List<String> suffixes) throws IOException {
+		File file = new File(arg);
+		if(file.isDirectory()){
+			File[] list = file.listFiles(f -> f.isFile() && (suffixes == null || suffixes.contains(suffix(f.getName()))));
+			if(list == null) throw new IOException("can not read directory "+arg);
+			Arrays.sort(list);
+			return Arrays.asList(list);
+		}
+		int glob = firstGlobChar(arg);
+		if(glob < 0) return Arrays.asList(file);
+		// the part before the first glob character gives the directory:
+		int separator = Math.max(arg.lastIndexOf('/', glob), arg.lastIndexOf(File.separatorChar, glob));
+		Path base = Paths.get(separator < 0 ? "." : arg.substring(0, separator+1));
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:"+arg.substring(separator+1));
+		try(Stream<Path> paths = Files.walk(base)){
+			return paths
+				.filter(p -> Files.isRegularFile(p) && matcher.matches(base.relativize(p)))
+				.map(p -> p.normalize().toFile())
+				.sorted()
+				.collect(Collectors.toList());
+		}
+	}
+
+	private static int firstGlobChar(String s){
+		for(int i=0; i<s.length(); i++){
+			if("*?[{".indexOf(s.charAt(i)) >= 0) return i;
+		}
+		return -1;
+	}
+
+	private static String suffix(String name){
+		int dot = name.lastIndexOf('.');
+		return dot < 0 ? "" : name.substring(dot+1).toLowerCase(Locale.US);
+	}
+
+	/**
+	 * Processes all files and writes one result line for each image (or
+	 * each frame of a raw stack), in the order of the list.  For the CSV
+	 * format, a header line is written first.
+	 * @param files images to process
+	 * @param out stream for the results
+	 * @return number of images, which could not be processed
+	 */
+	public int process(List<File> files, PrintStream out){
+		return process(files, out, null);
+	}
+
+	/**
+	 * Like <code>process(List, PrintStream)</code>, but also counts the
+	 * result lines (images, frames and pages).
+	 * @param files images to process
+	 * @param out stream for the results
+	 * @param count array to receive the number of result lines; or
+	 * <code>null</code>
+	 * @return number of images, which could not be processed
+	 */
+	public int process(List<File> files, PrintStream out, int[] count){
+		// the images are processed in parallel, so the kernels (and, if
+		// allowed, the transforms) of one image need no further threads
+		// (unless set by the system property):
+		boolean serial = threads > 1 && System.getProperty("spass.threads") == null;
+		boolean transforms = serial && serialTransforms;
+		if(transforms) beginSerialTransforms();
+		if(format == Format.CSV) out.println(CSV_HEADER);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<RawStack> stacks = new ArrayList<>();
+		int failed = 0;
+		try{
+			List<Future<Result>> results = new ArrayList<>(files.size());
+			for(File file : files){
+				if(!isRaw() && !ImageStack.isStack(file)){
+					results.add(executor.submit(task(serial, () -> estimate(file))));
+					continue;
+				}
+				if(!isRaw()){
+					int pages;
+					try(ImageStack stack = new ImageStack(file)){
+						pages = stack.getPageCount();
+					}
+					catch(IOException e){
+						Result result = new Result(file, -1);
+						result.error = e.getMessage() != null ? e.getMessage() : e.toString();
+						results.add(CompletableFuture.completedFuture(result));
+						continue;
+					}
+					for(int n=0; n<pages; n++){
+						final int page = n;
+						results.add(executor.submit(task(serial, () -> estimate(file, page))));
+					}
+					continue;
+				}
+				RawStack stack;
+				try{
+					stack = new RawStack(file, rawWidth, rawHeight, rawBits, rawOrder, rawHeader);
+				}
+				catch(IOException e){
+					Result result = new Result(file, -1);
+					result.error = e.getMessage() != null ? e.getMessage() : e.toString();
+					results.add(CompletableFuture.completedFuture(result));
+					continue;
+				}
+				stacks.add(stack);
+				for(int n=0; n<stack.getFrameCount(); n++){
+					final int frame = n;
+					results.add(executor.submit(task(serial, () -> estimate(file, stack, frame))));
+				}
+			}
+			for(Future<Result> future : results){
+				Result result;
+				try{
+					result = future.get();
+				}
+				catch(ExecutionException e){
+					throw new IllegalStateException(e.getCause());
+				}
+				if(result.error != null) failed++;
+				if(count != null) count[0]++;
+				out.println(format == Format.CSV ? result.toCSV() : result.toJSON());
+				out.flush();
+			}
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		finally{
+			executor.shutdownNow();
+			if(transforms) endSerialTransforms();
+			List<Closeable> closeables = new ArrayList<>(stacks);
+			synchronized(openImageStacks){
+				closeables.addAll(openImageStacks);
+				openImageStacks.clear();
+			}
+			for(Closeable stack : closeables){
+				try{
+					stack.close();
+				}
+				catch(IOException e){
+					System.err.println("Closing of stack failed: "+e.getMessage());
+				}
+			}
+		}
+		return failed;
+	}
+
+	/**
+	 * Wraps a task for the executor; with <code>serial</code>, its kernels
+	 * are processed in the worker thread (see <code>Parallel.serial</code>).
+	 */
+	protected static <T> Callable<T> task(boolean serial, Supplier<T> task){
+		return serial ? () -> Parallel.serial(task) : task::get;
+	}
+
+	/**
+	 * Lets the transforms of JTransforms use only one thread, while at
+	 * least one batch is running.  The setting of JTransforms is global,
+	 * so the running batches are counted, and the previous number of
+	 * threads is restored by the last one.
+	 */
+	protected static synchronized void beginSerialTransforms(){
+		if(serialBatches++ == 0){
+			transformThreads = ConcurrencyUtils.getNumberOfThreads();
+			ConcurrencyUtils.setNumberOfThreads(1);
+		}
+	}
+
+	/**
+	 * Ends a batch started with <code>beginSerialTransforms</code>.
+	 */
+	protected static synchronized void endSerialTransforms(){
+		if(--serialBatches == 0) ConcurrencyUtils.setNumberOfThreads(transformThreads);
+	}
+
+	/**
+	 * Estimates the SI-parameters of one image.  Errors are not thrown,
+	 * but returned as part of the result.
+	 * @param file image file
+	 * @return result for the image
+	 */
+	public Result estimate(File file){
+		Result result = new Result(file, -1);
+		try{
+			BufferedImage image = ImageLoader.read(file);
+			double[] values = ImageLoader.toDoubleArray(image, buffers.get());
+			buffers.set(values);
+			estimate(result, values, image.getWidth(), image.getHeight());
+		}
+		catch(IOException | RuntimeException e){
+			result.error = e.getMessage() != null ? e.getMessage() : e.toString();
+		}
+		return result;
+	}
+
+	/**
+	 * Estimates the SI-parameters of one page of an image stack.  Errors
+	 * are not thrown, but returned as part of the result.
+	 * The stack is opened for the calling thread, and stays open for the
+	 * next pages.
+	 * @param file file of the stack
+	 * @param page number of the page
+	 * @return result for the page
+	 */
+	public Result estimate(File file, int page){
+		Result result = new Result(file, page);
+		try{
+			ImageStack stack = imageStacks.get();
+			if(stack == null || !stack.getFile().equals(file)){
+				if(stack != null){
+					openImageStacks.remove(stack);
+					stack.close();
+				}
+				stack = new ImageStack(file);
+				openImageStacks.add(stack);
+				imageStacks.set(stack);
+			}
+			double[] values = stack.getPage(page, buffers.get());
+			buffers.set(values);
+			estimate(result, values, stack.getWidth(page), stack.getHeight(page));
+		}
+		catch(IOException | RuntimeException e){
+			result.error = e.getMessage() != null ? e.getMessage() : e.toString();
+		}
+		return result;
+	}
+
+	/**
+	 * Estimates the SI-parameters of one frame of a raw stack.  Errors are
+	 * not thrown, but returned as part of the result.
+	 * @param file file of the stack
+	 * @param stack raw stack
+	 * @param frame number of the frame
+	 * @return result for the frame
+	 */
+	public Result estimate(File file, RawStack stack, int frame){
+		Result result = new Result(file, frame);
+		try{
+			double[] values = stack.getFrame(frame, buffers.get());
+			buffers.set(values);
+			estimate(result, values, stack.getWidth(), stack.getHeight());
+		}
+		catch(IOException | RuntimeException e){
+			result.error = e.getMessage() != null ? e.getMessage() : e.toString();
+		}
+		return result;
+	}
+
+	/**
+	 * Estimates the SI-parameters of the given values, and stores them in
+	 * the result.  The values are padded to a fast size for the FFT, if
+	 * necessary.
+	 */
+	protected void estimate(Result result, double[] values, int width, int height){
+		int fastWidth = Trafo.fastSize(width), fastHeight = Trafo.fastSize(height);
+		double[] padded = Trafo.pad(values, width, height, fastWidth, fastHeight);
+		Trafo trafo = trafos.get();
+		trafo.transform(padded, fastWidth, fastHeight, Trafo.Mode.FFT);
+		SIPEstimate estimate = PeakFinder.estimate(trafo, maskRadius);
+		result.width = width;
+		result.height = height;
+		SIParams params = estimate.getParams();
+		result.confidence = estimate.getConfidence();
+		if(fit){
+			SIPOptimizer optimizer = new SIPOptimizer(new SumMulEvaluator(padded, fastWidth, fastHeight, trafo));
+			optimizer.setMaxMillis(fitMillis);
+			params = optimizer.optimize(params);
+			result.sumMul = optimizer.getBestSum();
+		}
+		if(padded != values){
+			double phase = SumMulEvaluator.convertPhase(params.getAngle(), params.getPhase(), params.getWvlen(),
+					fastWidth, fastHeight, width, height);
+			params = new SIParams(params.getAngle(), phase, params.getWvlen());
+		}
+		result.params = params;
+	}
+
+	/**
+	 * Sets the number of worker threads.
+	 * @param threads number of threads (at least 1)
+	 */
+	public void setThreads(int threads){
+		if(threads < 1) throw new IllegalArgumentException("threads must be at least 1");
+		this.threads = threads;
+	}
+
+	public int getThreads(){ return threads; }
+
+	public void setFormat(Format format){ this.format = format; }
+
+	public Format getFormat(){ return format; }
+
+	/**
+	 * Sets the radius of the masked zero order.
+	 * @param maskRadius radius in pixels of the spectrum
+	 */
+	public void setMaskRadius(double maskRadius){ this.maskRadius = maskRadius; }
+
+	public double getMaskRadius(){ return maskRadius; }
+
+	/**
+	 * Determines, whether the parameters are fitted to the image after the
+	 * peak has been located.
+	 * @param fit <code>true</code> to fit the parameters
+	 */
+	public void setFit(boolean fit){ this.fit = fit; }
+
+	public boolean isFit(){ return fit; }
+
+	/**
+	 * Sets the time budget of the fit for one image.
+	 * @param fitMillis time in milliseconds
+	 */
+	public void setFitMillis(long fitMillis){ this.fitMillis = fitMillis; }
+
+	/**
+	 * Lets the transforms of JTransforms use only one thread, while a
+	 * batch with more than one worker thread runs, so the worker threads
+	 * do not compete with the threads of the transforms.  The number of
+	 * threads of JTransforms is global for the JVM: every other user of
+	 * JTransforms in the same process (like a GUI) gets single-threaded
+	 * transforms until the batch is finished.  So it is only set by
+	 * <code>main</code>, where the process runs nothing else.
+	 * @param serialTransforms <code>true</code> for one thread per
+	 * transform (default: <code>false</code>)
+	 */
+	public void setSerialTransforms(boolean serialTransforms){ this.serialTransforms = serialTransforms; }
+
+	public boolean isSerialTransforms(){ return serialTransforms; }
+
+	/**
+	 * Declares the files as stacks of raw frames (see <code>RawStack</code>).
+	 * @param width width of the frames in pixels
+	 * @param height height of the frames in pixels
+	 * @param bits bits per pixel (8 or 16); 0 for image files
+	 */
+	public void setRaw(int width, int height, int bits){
+		if(bits != 0 && bits != 8 && bits != 16) throw new IllegalArgumentException("bits must be 8 or 16");
+		rawWidth = width;
+		rawHeight = height;
+		rawBits = bits;
+	}
+
+	/**
+	 * Returns, whether the files are stacks of raw frames.
+	 * @return <code>true</code> for raw stacks
+	 */
+	public boolean isRaw(){ return rawBits > 0; }
+
+	public void setRawByteOrder(ByteOrder order){ rawOrder = order; }
+
+	/**
+	 * Sets the number of bytes before the first frame of a raw stack.
+	 * @param header size of the header in bytes
+	 */
+	public void setRawHeader(long header){ rawHeader = header; }
+
+	/**
+	 * Result of the estimation for one image.
+	 */
+	public static class Result {
+		protected final File file;
+		protected final int frame;
+		protected int width;
+		protected int height;
+		protected SIParams params;
+		protected double confidence;
+		protected double sumMul = Double.NaN;
+		protected String error;
+
+		protected Result(File file, int frame){
+			this.file = file;
+			this.frame = frame;
+		}
+
+		public File getFile(){ return file; }
+
+		/**
+		 * Number of the frame in a raw stack.
+		 * @return number of the frame; or -1 for an image file
+		 */
+		public int getFrame(){ return frame; }
+
+		public int getWidth(){ return width; }
+
+		public int getHeight(){ return height; }
+
+		/**
+		 * SI-parameters of the image.
+		 * @return SI-parameters; or <code>null</code> if the image failed
+		 */
+		public SIParams getParams(){ return params; }
+
+		public double getConfidence(){ return confidence; }
+
+		/**
+		 * Pixelsum of the multiplication for the fitted parameters.
+		 * @return pixelsum; or <code>NaN</code> if not fitted
+		 */
+		public double getSumMul(){ return sumMul; }
+
+		/**
+		 * Error message, if the image could not be processed.
+		 * @return error message; or <code>null</code>
+		 */
+		public String getError(){ return error; }
+
+		/**
+		 * Formats the result as a line of comma separated values (see
+		 * <code>CSV_HEADER</code>).
+		 * @return line of values
+		 */
+		public String toCSV(){
+			if(error != null){
+				return csvString(file.getPath())+","+frameString("")+",,,,,,,,"+csvString(error);
+			}
+			return String.format(Locale.US, "%s,%s,%d,%d,%.6f,%.6f,%.6f,%.4f,%s,",
+					csvString(file.getPath()), frameString(""), width, height, params.getAngle(), params.getPhase(), params.getWvlen(),
+					confidence, Double.isNaN(sumMul) ? "" : String.format(Locale.US, "%.6g", sumMul));
+		}
+
+		/**
+		 * Formats the result as a JSON object in one line.
+		 * @return JSON object
+		 */
+		public String toJSON(){
+			if(error != null){
+				return "{\"file\":"+jsonString(file.getPath())+",\"frame\":"+frameString("null")
+						+",\"error\":"+jsonString(error)+"}";
+			}
+			return String.format(Locale.US, "{\"file\":%s,\"frame\":%s,\"width\":%d,\"height\":%d,\"angle\":%.6f,\"phase\":%.6f,\"wvlen\":%.6f,\"confidence\":%.4f,\"sumMul\":%s}",
+					jsonString(file.getPath()), frameString("null"), width, height, params.getAngle(), params.getPhase(), params.getWvlen(),
+					confidence, Double.isNaN(sumMul) ? "null" : String.format(Locale.US, "%.6g", sumMul));
+		}
+
+		private String frameString(String none){
+			return frame < 0 ? none : Integer.toString(frame);
+		}
+
+		private static String csvString(String s){
+			if(s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0) return s;
+			return "\""+s.replace("\"", "\"\"")+"\"";
+		}
+
+		private static String jsonString(String s){
+			StringBuilder b = new StringBuilder("\"");
+			for(char c : s.toCharArray()){
+				switch(c){
+				case '"': b.append("\\\""); break;
+				case '\\': b.append("\\\\"); break;
+				case '\n': b.append("\\n"); break;
+				case '\r': b.append("\\r"); break;
+				case '\t': b.append("\\t"); break;
+				default:
+					if(c < 0x20) b.append(String.format("\\u%04x", (int) c));
+					else b.append(c);
+				}
+			}
+			return b.append('"').toString();
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package spass;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Loads images from files and converts them into arrays of values.
+ * It uses only <code>ImageIO</code> and the image classes, no GUI, so it
+ * can be used in headless mode (<code>java.awt.headless=true</code>).
+ * <p>
+ * Grayscale images (one band) are supported.  Images with 8 or 16 bit per
+ * pixel are converted directly from the data buffer, without copying the
+ * raster; all other grayscale images through the <code>Raster</code>.
+ * Images with more than one page (like TIFF stacks) are read with an
+ * <code>ImageStack</code>.
+ *
+ * @author Oliver Eickmeyer
+ */
+public class ImageLoader {
+
+	/**
+	 * Reads an image from a file.  Of an image with several pages, only
+	 * the first page is read.
+	 * @param file image file
+	 * @return image
+	 * @throws IOException if the file can not be read, or its format is
+	 * not supported
+	 */
+	public static BufferedImage read(File file) throws IOException {
+		BufferedImage image = ImageIO.read(file);
+		if(image == null){
+			throw new IOException("unsupported image format: "+file);
+		}
+		return image;
+	}
+
+	/**
+	 * Returns the raster of a grayscale image.
+	 * @throws IOException if the image has more than one band
+	 */
+	protected static Raster getGrayRaster(BufferedImage image) throws IOException {
+		Raster r = image.getRaster();
+		if(r.getNumBands() != 1){
+			throw new IOException("only grayscale images are supported");
+		}
+		return r;
+	}
+
+	/**
+	 * Returns, whether the samples of the raster can be read directly
+	 * from its data buffer.
+	 */
+	protected static boolean isDirect(Raster r){
+		DataBuffer db = r.getDataBuffer();
+		return r.getSampleModel() instanceof ComponentSampleModel
+				&& (db instanceof DataBufferByte || db instanceof DataBufferUShort);
+	}
+
+	/**
+	 * Index of the first sample of the raster in its data bank.
+	 */
+	protected static int firstSample(Raster r){
+		ComponentSampleModel sm = (ComponentSampleModel) r.getSampleModel();
+		int bank = sm.getBankIndices()[0];
+		return r.getDataBuffer().getOffsets()[bank]
+				+ sm.getOffset(r.getMinX() - r.getSampleModelTranslateX(), r.getMinY() - r.getSampleModelTranslateY());
+	}
+
+	/**
+	 * Converts a grayscale image into an array of doubles.
+	 * @param image grayscale image
+	 * @param values array to use, if it has the right length; or
+	 * <code>null</code>
+	 * @return values of the image (row by row)
+	 * @throws IOException if the image is not grayscale
+	 */
+	public static double[] toDoubleArray(BufferedImage image, double[] values) throws IOException {
+		Raster r = getGrayRaster(image);
+		int w = r.getWidth(), h = r.getHeight();
+		double[] v = Trafo.reuse(values, w*h);
+		if(!isDirect(r)){
+			return r.getSamples(r.getMinX(), r.getMinY(), w, h, 0, v);
+		}
+		ComponentSampleModel sm = (ComponentSampleModel) r.getSampleModel();
+		int first = firstSample(r), bank = sm.getBankIndices()[0];
+		int stride = sm.getScanlineStride(), pixelStride = sm.getPixelStride();
+		if(r.getDataBuffer() instanceof DataBufferByte){
+			byte[] data = ((DataBufferByte) r.getDataBuffer()).getData(bank);
+			Parallel.forRows(h, w, (from, to) -> {
+				for(int y=from; y<to; y++){
+					int offset = first + y*stride;
+					for(int x=0; x<w; x++) v[y*w + x] = data[offset + x*pixelStride] & 0xFF;
+				}
+			});
+		}
+		else{
+			short[] data = ((DataBufferUShort) r.getDataBuffer()).getData(bank);
+			Parallel.forRows(h, w, (from, to) -> {
+				for(int y=from; y<to; y++){
+					int offset = first + y*stride;
+					for(int x=0; x<w; x++) v[y*w + x] = data[offset + x*pixelStride] & 0xFFFF;
+				}
+			});
+		}
+		return v;
+	}
+
+	/**
+	 * Converts a grayscale image into an array of floats.
+	 * @param image grayscale image
+	 * @param values array to use, if it has the right length; or
+	 * <code>null</code>
+	 * @return values of the image (row by row)
+	 * @throws IOException if the image is not grayscale
+	 */
+	public static float[] toFloatArray(BufferedImage image, float[] values) throws IOException {
+		Raster r = getGrayRaster(image);
+		int w = r.getWidth(), h = r.getHeight();
+		float[] v = Trafo.reuse(values, w*h);
+		if(!isDirect(r)){
+			return r.getSamples(r.getMinX(), r.getMinY(), w, h, 0, v);
+		}
+		ComponentSampleModel sm = (ComponentSampleModel) r.getSampleModel();
+		int first = firstSample(r), bank = sm.getBankIndices()[0];
+		int stride = sm.getScanlineStride(), pixelStride = sm.getPixelStride();
+		if(r.getDataBuffer() instanceof DataBufferByte){
+			byte[] data = ((DataBufferByte) r.getDataBuffer()).getData(bank);
+			Parallel.forRows(h, w, (from, to) -> {
+				for(int y=from; y<to; y++){
+					int offset = first + y*stride;
+					for(int x=0; x<w; x++) v[y*w + x] = data[offset + x*pixelStride] & 0xFF;
+				}
+			});
+		}
+		else{
+			short[] data = ((DataBufferUShort) r.getDataBuffer()).getData(bank);
+			Parallel.forRows(h, w, (from, to) -> {
+				for(int y=from; y<to; y++){
+					int offset = first + y*stride;
+					for(int x=0; x<w; x++) v[y*w + x] = data[offset + x*pixelStride] & 0xFFFF;
+				}
+			});
+		}
+		return v;
+	}
+}
@@ -0,0 +1,144 @@
+package spass;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.SampleModel;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Reads the pages of an image file with several pages (like a multi-page
+ * TIFF), one page at a time.
+ * <p>
+ * The file is read through an <code>ImageReader</code> from the file
+ * itself, so only the page being decoded is held in memory.  The image of
+ * the last page is reused as destination for the next page (if it has
+ * the same size and type), and the values are converted into an array
+ * given by the caller, so the memory needed does not depend on the number
+ * of pages.
+ * <p>
+ * TIFF is supported by <code>ImageIO</code> since Java 9; with Java 8, a
+ * TIFF plugin is needed.
+ * An <code>ImageStack</code> must not be used by several threads at the
+ * same time.
+ *
+ * @author Oliver Eickmeyer
+ */
+public class ImageStack implements Closeable {
+	protected final File file;
+	protected final ImageInputStream input;
+	protected final ImageReader reader;
+	protected int pageCount;
+	protected BufferedImage page;
+
+	/**
+	 * Opens an image file.
+	 * @param file image file
+	 * @throws IOException if the file can not be opened, or its format is
+	 * not supported
+	 */
+	public ImageStack(File file) throws IOException {
+		this.file = file;
+		input = ImageIO.createImageInputStream(file);
+		if(input == null) throw new IOException("can not read "+file);
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+		if(!readers.hasNext()){
+			input.close();
+			throw new IOException("unsupported image format: "+file);
+		}
+		reader = readers.next();
+		reader.setInput(input, false, true);
+		pageCount = -1;
+	}
+
+	/**
+	 * Returns, whether a file is read as a stack by default (TIFF files).
+	 * @param file image file
+	 * @return <code>true</code> for TIFF files
+	 */
+	public static boolean isStack(File file){
+		String name = file.getName().toLowerCase(Locale.US);
+		return name.endsWith(".tif") || name.endsWith(".tiff");
+	}
+
+	/**
+	 * Number of pages.  For some formats, the file has to be scanned for
+	 * this.
+	 * @return number of pages
+	 * @throws IOException if the file can not be read
+	 */
+	public int getPageCount() throws IOException {
+		if(pageCount < 0) pageCount = reader.getNumImages(true);
+		return pageCount;
+	}
+
+	public int getWidth(int n) throws IOException { return reader.getWidth(n); }
+
+	public int getHeight(int n) throws IOException { return reader.getHeight(n); }
+
+	public File getFile(){ return file; }
+
+	/**
+	 * Decodes a page.  The returned image is reused for the next page, so
+	 * it is only valid until the next call.
+	 * @param n number of the page (starting with 0)
+	 * @return image of the page
+	 * @throws IOException if the page can not be read
+	 */
+	public BufferedImage readPage(int n) throws IOException {
+		ImageReadParam param = reader.getDefaultReadParam();
+		if(page != null && page.getWidth() == reader.getWidth(n) && page.getHeight() == reader.getHeight(n)){
+			ImageTypeSpecifier type = reader.getRawImageType(n);
+			SampleModel sm = page.getSampleModel();
+			if(type != null && type.getNumBands() == sm.getNumBands()
+					&& type.getSampleModel().getTransferType() == sm.getTransferType()){
+				param.setDestination(page);
+			}
+		}
+		page = reader.read(n, param);
+		return page;
+	}
+
+	/**
+	 * Decodes a page and converts it into an array of values.
+	 * @param n number of the page (starting with 0)
+	 * @param values array to use, if it has the right length; or
+	 * <code>null</code>
+	 * @return values of the page (row by row)
+	 * @throws IOException if the page can not be read, or is not grayscale
+	 */
+	public double[] getPage(int n, double[] values) throws IOException {
+		return ImageLoader.toDoubleArray(readPage(n), values);
+	}
+
+	/**
+	 * Decodes a page and converts it into an array of values in single
+	 * precision.
+	 * @param n number of the page (starting with 0)
+	 * @param values array to use, if it has the right length; or
+	 * <code>null</code>
+	 * @return values of the page (row by row)
+	 * @throws IOException if the page can not be read, or is not grayscale
+	 */
+	public float[] getPage(int n, float[] values) throws IOException {
+		return ImageLoader.toFloatArray(readPage(n), values);
+	}
+
+	/**
+	 * Closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		reader.dispose();
+		page = null;
+		input.close();
+	}
+}
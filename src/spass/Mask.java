@@ -0,0 +1,257 @@
+package spass;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Marks the valid values of an array of <code>width*height</code> values
+ * (row by row).  The mask is stored as spans of valid columns for each
+ * row, so its size depends on the number of rows, not on the number of
+ * values, and the valid values can be processed span by span without
+ * testing each value.
+ * <p>
+ * The usual mask of the spectrum hides the zero order: all values within
+ * the distance <code>r</code> of one of the four corners (like
+ * <code>Point.distance</code>).  The masked columns of each row are
+ * calculated from the circle equation, and these masks are cached by
+ * size and radius (see <code>get</code>).
+ * <p>
+ * A <code>Mask</code> is immutable, so it can be shared by several
+ * threads.
+ *
+ * @author Oliver Eickmeyer
+ */
+public class Mask {
+
+	/**
+	 * Number of masks kept by <code>get</code>.
+	 */
+	protected final static int CACHE_SIZE = 16;
+
+	protected final static Map<Key, Mask> cache = new LinkedHashMap<Key, Mask>(CACHE_SIZE, 0.75f, true){
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Mask> eldest){
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	/**
+	 * Key of the cache.
+	 */
+	protected static class Key {
+		final int width, height;
+		final double radius;
+
+		Key(int width, int height, double radius){
+			this.width = width;
+			this.height = height;
+			this.radius = radius;
+		}
+
+		@Override
+		public boolean equals(Object o){
+			if(!(o instanceof Key)) return false;
+			Key k = (Key) o;
+			return width == k.width && height == k.height && Double.compare(radius, k.radius) == 0;
+		}
+
+		@Override
+		public int hashCode(){
+			return Objects.hash(width, height, radius);
+		}
+	}
+
+	protected final int width;
+	protected final int height;
+	protected final int[] rows; // first span of each row, and the number of spans at the end
+	protected final int[] starts; // first valid column of each span
+	protected final int[] ends; // end (exclusive) of each span
+
+	protected Mask(int width, int height, int[] rows, int[] starts, int[] ends){
+		this.width = width;
+		this.height = height;
+		this.rows = rows;
+		this.starts = starts;
+		this.ends = ends;
+	}
+
+	/**
+	 * Returns the mask of the zero order with the given radius, from the
+	 * cache if possible.
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @param radius radius of the masked areas around the corners
+	 * @return mask
+	 */
+	public static Mask get(int width, int height, double radius){
+		Key key = new Key(width, height, radius);
+		synchronized(cache){
+			Mask mask = cache.get(key);
+			if(mask == null){
+				mask = corners(width, height, radius);
+				cache.put(key, mask);
+			}
+			return mask;
+		}
+	}
+
+	/**
+	 * Creates a mask, which hides all values within the distance of
+	 * <code>radius</code> from one of the corners.
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @param radius radius of the masked areas around the corners
+	 * @return mask
+	 */
+	public static Mask corners(int width, int height, double radius){
+		int[] rows = new int[height+1];
+		int[] starts = new int[height];
+		int[] ends = new int[height];
+		int n = 0;
+		for(int row=0; row<height; row++){
+			rows[row] = n;
+			int masked = maskedColumns(width, height, row, radius);
+			if(width - masked > masked){
+				starts[n] = masked;
+				ends[n] = width - masked;
+				n++;
+			}
+		}
+		rows[height] = n;
+		return new Mask(width, height, rows, Arrays.copyOf(starts, n), Arrays.copyOf(ends, n));
+	}
+
+	/**
+	 * Number of columns at each end of the given row, which are within the
+	 * distance of <code>r</code> from one of the corners of the array.
+	 */
+	protected static int maskedColumns(int width, int height, int row, double r){
+		int dy = Math.min(row, height-1-row);
+		if(dy > r) return 0;
+		int n = (int) Math.sqrt(Math.max(0.0, r*r - (double) dy*dy));
+		// correct rounding errors, the distance is compared like Point.distance:
+		while(Math.sqrt((double) n*n + (double) dy*dy) <= r) n++;
+		while(n > 0 && Math.sqrt((double) (n-1)*(n-1) + (double) dy*dy) > r) n--;
+		return Math.min(n, (width + 1) / 2);
+	}
+
+	/**
+	 * Converts a boolean array into a mask.
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @param valid <code>true</code> for the valid values; or
+	 * <code>null</code>
+	 * @return mask; or <code>null</code> if <code>valid</code> is
+	 * <code>null</code>
+	 */
+	public static Mask of(int width, int height, boolean[] valid){
+		if(valid == null) return null;
+		if(valid.length != width*height) throw new IllegalArgumentException("mask has wrong length");
+		int[] rows = new int[height+1];
+		int n = 0;
+		for(int row=0; row<height; row++){
+			rows[row] = n;
+			for(int col=0, i=row*width; col<width; col++, i++){
+				if(valid[i] && (col == 0 || !valid[i-1])) n++;
+			}
+		}
+		rows[height] = n;
+		int[] starts = new int[n], ends = new int[n];
+		n = 0;
+		for(int row=0; row<height; row++){
+			int offset = row*width;
+			for(int col=0; col<width; col++){
+				if(!valid[offset + col]) continue;
+				starts[n] = col;
+				while(col < width && valid[offset + col]) col++;
+				ends[n++] = col;
+			}
+		}
+		return new Mask(width, height, rows, starts, ends);
+	}
+
+	/**
+	 * Converts the mask into a boolean array.
+	 * @return <code>true</code> for the valid values
+	 */
+	public boolean[] toArray(){
+		boolean[] valid = new boolean[width*height];
+		for(int row=0; row<height; row++){
+			for(int s=rows[row]; s<rows[row+1]; s++){
+				Arrays.fill(valid, row*width + starts[s], row*width + ends[s], true);
+			}
+		}
+		return valid;
+	}
+
+	/**
+	 * Checks, whether the value at the index is valid.
+	 * @param index index of the value
+	 * @return <code>true</code> if not masked
+	 */
+	public boolean isValid(int index){
+		int row = index / width, col = index % width;
+		for(int s=rows[row]; s<rows[row+1]; s++){
+			if(col >= starts[s] && col < ends[s]) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Processes the valid and the masked values as ranges of indices, row
+	 * by row.  The rows are processed in parallel (see
+	 * <code>Parallel.forRows</code>).  Without a mask, all values are
+	 * valid.
+	 * @param mask mask; or <code>null</code>
+	 * @param length number of values
+	 * @param valid called for the ranges of valid values
+	 * @param masked called for the ranges of masked values; or
+	 * <code>null</code>
+	 */
+	public static void forRanges(Mask mask, int length, Parallel.RangeKernel valid, Parallel.RangeKernel masked){
+		if(mask == null){
+			Parallel.forRows(length, 1, valid);
+			return;
+		}
+		mask.checkLength(length);
+		Parallel.forRows(mask.height, mask.width, (from, to) -> {
+			for(int row=from; row<to; row++){
+				int offset = row*mask.width, col = 0;
+				for(int s=mask.rows[row]; s<mask.rows[row+1]; s++){
+					if(masked != null && col < mask.starts[s]) masked.run(offset + col, offset + mask.starts[s]);
+					valid.run(offset + mask.starts[s], offset + mask.ends[s]);
+					col = mask.ends[s];
+				}
+				if(masked != null && col < mask.width) masked.run(offset + col, offset + mask.width);
+			}
+		});
+	}
+
+	/**
+	 * Throws an <code>IllegalArgumentException</code>, if the mask does
+	 * not fit to an array of the given length.
+	 */
+	protected void checkLength(int length){
+		if(length != width*height) throw new IllegalArgumentException("mask has wrong size");
+	}
+
+	public int getWidth(){ return width; }
+
+	public int getHeight(){ return height; }
+
+	/** Index of the first span of the row. */
+	public int firstSpan(int row){ return rows[row]; }
+
+	/** Index after the last span of the row. */
+	public int endSpan(int row){ return rows[row+1]; }
+
+	/** First valid column of the span. */
+	public int getStart(int span){ return starts[span]; }
+
+	/** End (exclusive) of the valid columns of the span. */
+	public int getEnd(int span){ return ends[span]; }
+}
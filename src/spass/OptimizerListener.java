@@ -0,0 +1,16 @@
+package spass;
+
+/**
+ * Defines the interface for a class, which wants to follow the progress
+ * of an <code>SIPOptimizer</code>.
+ * @author Oliver Eickmeyer
+ */
+public interface OptimizerListener {
+	/**
+	 * Called after each iteration of the optimizer.
+	 * @param iteration number of the iteration, starting with 1
+	 * @param best best SI-parameters found so far
+	 * @param sumMul pixelsum of the multiplication for <code>best</code>
+	 */
+	public void iterationDone(int iteration, SIParams best, double sumMul);
+}
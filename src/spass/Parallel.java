@@ -0,0 +1,241 @@
+package spass;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/**
+ * Shared executor for the per-pixel kernels.
+ * The rows of an array are divided into bands, which are processed in
+ * parallel on a <code>ForkJoinPool</code>.  Small arrays (less elements
+ * than the threshold) are processed in the calling thread.
+ * <p>
+ * The bands depend only on the size of the array, not on the number of
+ * threads.  Reductions combine the results of the bands always in the same
+ * order, so the results are deterministic, even for floating point sums.
+ * <p>
+ * The number of threads can be set with <code>setThreads</code>, or by
+ * the system property <code>spass.threads</code>.  A thread can process
+ * its kernels without the pool by <code>serial</code>.
+ *
+ * @author Oliver Eickmeyer
+ */
+public class Parallel {
+
+	/**
+	 * Default minimum number of elements for parallel processing.
+	 */
+	public final static int THRESHOLD = 1 << 16;
+
+	/**
+	 * Number of elements per band (rounded to complete rows).
+	 */
+	public final static int BAND_SIZE = 1 << 15;
+
+	/**
+	 * Kernel for a range of rows (or elements).
+	 */
+	public interface RangeKernel {
+		/**
+		 * Processes the rows <code>from</code> (inclusive) to
+		 * <code>to</code> (exclusive).
+		 */
+		void run(int from, int to);
+	}
+
+	/**
+	 * Kernel for one band of rows, which knows the number of its band.
+	 */
+	public interface BandKernel {
+		/**
+		 * Processes the rows <code>from</code> (inclusive) to
+		 * <code>to</code> (exclusive) of the given band.
+		 */
+		void run(int band, int from, int to);
+	}
+
+	/**
+	 * Kernel for a range of rows (or elements), which returns a partial
+	 * sum.
+	 */
+	public interface RangeReduction {
+		/**
+		 * Processes the rows <code>from</code> (inclusive) to
+		 * <code>to</code> (exclusive) and returns their sum.
+		 */
+		double run(int from, int to);
+	}
+
+	protected static ForkJoinPool pool;
+	protected static int threads;
+	protected static volatile int threshold = THRESHOLD;
+	protected final static ThreadLocal<Boolean> serialThread = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+	static{
+		int n = Runtime.getRuntime().availableProcessors();
+		String property = System.getProperty("spass.threads");
+		if(property != null){
+			try{
+				n = Integer.parseInt(property.trim());
+			}
+			catch(NumberFormatException e){
+				System.err.println("Invalid value for spass.threads: "+property);
+			}
+		}
+		setThreads(n);
+	}
+
+	/**
+	 * Sets the number of threads for the kernels.  A value of 1 (or less)
+	 * disables the parallel processing.
+	 * <p>
+	 * The old pool is not shut down, since other threads may just be
+	 * about to use it; its worker threads (daemons) end, when they have
+	 * been idle for a while.
+	 * @param n number of threads
+	 */
+	public static synchronized void setThreads(int n){
+		n = Math.max(1, n);
+		if(n == threads) return;
+		threads = n;
+		pool = n > 1 ? new ForkJoinPool(n) : null;
+	}
+
+	/**
+	 * Returns the number of threads for the kernels.
+	 * @return number of threads
+	 */
+	public static synchronized int getThreads(){ return threads; }
+
+	/**
+	 * Sets the minimum number of elements, for which the kernels are
+	 * processed in parallel.
+	 * @param elements minimum number of elements
+	 */
+	public static void setThreshold(int elements){
+		threshold = elements;
+	}
+
+	public static int getThreshold(){ return threshold; }
+
+	/**
+	 * Runs a task, whose kernels are all processed in the calling thread
+	 * (for example, when the tasks themselves run in parallel).  Other
+	 * threads are not affected.
+	 * @param task task to run
+	 * @return result of the task
+	 */
+	public static <T> T serial(Supplier<T> task){
+		Boolean previous = serialThread.get();
+		serialThread.set(Boolean.TRUE);
+		try{
+			return task.get();
+		}
+		finally{
+			serialThread.set(previous);
+		}
+	}
+
+	/**
+	 * Number of rows in each band, for arrays with rows of the given
+	 * length.
+	 * @param cols number of elements in each row
+	 * @return rows per band
+	 */
+	public static int rowsPerBand(int cols){
+		return Math.max(1, BAND_SIZE / Math.max(1, cols));
+	}
+
+	/**
+	 * Number of bands, into which an array of the given dimensions is
+	 * divided.
+	 * @param rows number of rows
+	 * @param cols number of elements in each row
+	 * @return number of bands
+	 */
+	public static int bandCount(int rows, int cols){
+		int r = rowsPerBand(cols);
+		return (rows + r - 1) / r;
+	}
+
+	/**
+	 * Processes all rows with the given kernel.
+	 * @param rows number of rows
+	 * @param cols number of elements in each row (used to divide the rows
+	 * into bands)
+	 * @param kernel kernel to process a range of rows
+	 */
+	public static void forRows(int rows, int cols, final RangeKernel kernel){
+		forBands(rows, cols, (band, from, to) -> kernel.run(from, to));
+	}
+
+	/**
+	 * Processes all bands of rows with the given kernel.  The band numbers
+	 * go from 0 to <code>bandCount(rows, cols)-1</code>.
+	 * @param rows number of rows
+	 * @param cols number of elements in each row
+	 * @param kernel kernel to process one band of rows
+	 */
+	public static void forBands(int rows, int cols, BandKernel kernel){
+		int bands = bandCount(rows, cols);
+		int rowsPerBand = rowsPerBand(cols);
+		ForkJoinPool p;
+		synchronized(Parallel.class){ p = pool; }
+		if(p == null || bands < 2 || (long) rows*cols < threshold || serialThread.get()){
+			for(int band=0; band<bands; band++){
+				kernel.run(band, band*rowsPerBand, Math.min(rows, (band+1)*rowsPerBand));
+			}
+		}
+		else{
+			p.invoke(new BandTask(kernel, 0, bands, rowsPerBand, rows));
+		}
+	}
+
+	/**
+	 * Sums the results of the given reduction over all rows.  The partial
+	 * sums of the bands are added in the order of the bands, so the result
+	 * does not depend on the number of threads.
+	 * @param rows number of rows
+	 * @param cols number of elements in each row
+	 * @param reduction kernel to process a range of rows
+	 * @return sum over all rows
+	 */
+	public static double sumRows(int rows, int cols, final RangeReduction reduction){
+		final double[] partial = new double[bandCount(rows, cols)];
+		forBands(rows, cols, (band, from, to) -> partial[band] = reduction.run(from, to));
+		double sum = 0.0;
+		for(int band=0; band<partial.length; band++){
+			sum += partial[band];
+		}
+		return sum;
+	}
+
+	/**
+	 * Divides a range of bands until only one band is left.
+	 */
+	@SuppressWarnings("serial")
+	protected static class BandTask extends RecursiveAction {
+		protected final BandKernel kernel;
+		protected final int bandFrom, bandTo, rowsPerBand, rows;
+
+		protected BandTask(BandKernel kernel, int bandFrom, int bandTo, int rowsPerBand, int rows){
+			this.kernel = kernel;
+			this.bandFrom = bandFrom;
+			this.bandTo = bandTo;
+			this.rowsPerBand = rowsPerBand;
+			this.rows = rows;
+		}
+
+		@Override
+		protected void compute(){
+			if(bandTo - bandFrom == 1){
+				kernel.run(bandFrom, bandFrom*rowsPerBand, Math.min(rows, (bandFrom+1)*rowsPerBand));
+			}
+			else{
+				int mid = (bandFrom + bandTo) >>> 1;
+				invokeAll(new BandTask(kernel, bandFrom, mid, rowsPerBand, rows),
+						  new BandTask(kernel, mid, bandTo, rowsPerBand, rows));
+			}
+		}
+	}
+}
@@ -0,0 +1,255 @@
+package spass;
+
+import org.jtransforms.fft.DoubleFFT_2D;
+
+/**
+ * Calculates the spectrum of a SI pattern (see
+ * <code>Spass.createSIPattern</code>), or of its product with an image,
+ * for a new phase in O(N), without a new transform.
+ * <p>
+ * With the carrier <code>E = exp(i(kx*x + ky*y))</code>, the pattern is
+ * <code>P = 1/2 + c*E + conj(c*E)</code>, where only the factor
+ * <code>c = -i*exp(i*phi)/4</code> depends on the phase
+ * (<code>phi = k*(xm+phase) - kx*xm - ky*ym</code>).  For a real image
+ * <code>I</code>, the spectrum of the product is therefore
+ * <pre>
+ * F(I*P)(q) = F(I)(q)/2 + c*A(q) + conj(c*A(-q)),  A = F(I*E)
+ * </pre>
+ * The spectrum <code>F(I)</code> is calculated once for each image, the
+ * carrier spectrum <code>A</code> once for each angle and wavelength:
+ * <ul>
+ * <li>without an image (<code>I = 1</code>), <code>A</code> is a product
+ * of two geometric series, so no transform is needed at all;</li>
+ * <li>if the carrier has an integer number of cycles in both directions,
+ * <code>A</code> is <code>F(I)</code> shifted by the carrier
+ * frequency;</li>
+ * <li>otherwise <code>A</code> needs a complex FFT.  This is only done,
+ * when the same angle and wavelength are requested a second time (so the
+ * phase alone is changing); the first time, <code>update</code> returns
+ * <code>false</code> and the caller should do the usual transform.</li>
+ * </ul>
+ * The DHT is taken from the spectrum as <code>Re(F) - Im(F)</code>.
+ * Only double precision is supported.  A <code>PatternSpectrum</code>
+ * must not be used by several threads at the same time.
+ *
+ * @author Oliver Eickmeyer
+ */
+public class PatternSpectrum {
+	protected final PlanCache plans;
+	protected final Trafo imageTrafo; // spectrum of the image
+	protected int width;
+	protected int height;
+	protected double[] image; // or null for the pattern alone
+	protected boolean imageValid;
+	protected double[] carrier; // interleaved spectrum A
+	protected double angle, wvlen; // of the carrier
+	protected boolean carrierValid;
+	protected double requestedAngle, requestedWvlen;
+
+	/**
+	 * Constructs a spectrum, which takes its transform plans from the
+	 * given cache.
+	 * @param plans cache for transform plans
+	 */
+	public PatternSpectrum(PlanCache plans){
+		this.plans = plans;
+		imageTrafo = new Trafo(plans);
+		requestedAngle = requestedWvlen = Double.NaN;
+	}
+
+	/**
+	 * Sets the image and the carrier for the next <code>apply</code>.
+	 * @param image values of the image (row by row); or <code>null</code>
+	 * for the spectrum of the pattern alone.  The array is compared by
+	 * identity, so it must not be changed.
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @param angle angle of the SI pattern (in radians)
+	 * @param wvlen wavelength of the SI pattern (in pixels)
+	 * @return <code>true</code> if <code>apply</code> can be used;
+	 * <code>false</code> if a transform of the image is needed, which is
+	 * not done for the first request of a new angle or wavelength
+	 */
+	public boolean update(double[] image, int width, int height, double angle, double wvlen){
+		setImage(image, width, height);
+		if(carrierValid && angle == this.angle && wvlen == this.wvlen) return true;
+		boolean repeated = angle == requestedAngle && wvlen == requestedWvlen;
+		requestedAngle = angle;
+		requestedWvlen = wvlen;
+		if(image != null && !repeated && !isOnGrid(angle, wvlen)) return false;
+		setCarrier(angle, wvlen);
+		return true;
+	}
+
+	/**
+	 * Sets the image.  Its spectrum is calculated, when it is needed.
+	 */
+	protected void setImage(double[] image, int width, int height){
+		if(image == this.image && width == this.width && height == this.height) return;
+		this.image = image;
+		this.width = width;
+		this.height = height;
+		imageValid = false;
+		carrierValid = false;
+	}
+
+	/**
+	 * Calculates the spectrum of the image, if it is outdated.
+	 */
+	protected void validateImage(){
+		if(imageValid) return;
+		if(image != null) imageTrafo.transform(image, width, height, Trafo.Mode.FFT);
+		imageValid = true;
+	}
+
+	/**
+	 * Carrier frequency in cycles per width.
+	 */
+	protected double frequencyX(double angle, double wvlen){
+		return width*Math.cos(angle)/wvlen;
+	}
+
+	/**
+	 * Carrier frequency in cycles per height.
+	 */
+	protected double frequencyY(double angle, double wvlen){
+		return height*Math.sin(angle)/wvlen;
+	}
+
+	/**
+	 * Checks, whether the carrier has an integer number of cycles in both
+	 * directions.
+	 */
+	protected boolean isOnGrid(double angle, double wvlen){
+		double u = frequencyX(angle, wvlen), v = frequencyY(angle, wvlen);
+		return Math.abs(u - Math.rint(u)) < 1e-9 && Math.abs(v - Math.rint(v)) < 1e-9;
+	}
+
+	/**
+	 * Calculates the carrier spectrum <code>A</code>.
+	 */
+	protected void setCarrier(double angle, double wvlen){
+		int w = width, h = height;
+		carrier = Trafo.reuse(carrier, 2*w*h);
+		double[] a = carrier;
+		double k = 2.0*Math.PI/wvlen;
+		double kx = k*Math.cos(angle), ky = k*Math.sin(angle);
+		if(image == null){
+			// product of the geometric series in both directions:
+			double[] gx = geometricSeries(kx, w), gy = geometricSeries(ky, h);
+			Parallel.forRows(h, w, (from, to) -> {
+				for(int r=from; r<to; r++){
+					double yr = gy[2*r], yi = gy[2*r+1];
+					for(int c=0; c<w; c++){
+						int i = 2*(r*w + c);
+						a[i] = gx[2*c]*yr - gx[2*c+1]*yi;
+						a[i+1] = gx[2*c]*yi + gx[2*c+1]*yr;
+					}
+				}
+			});
+		}
+		else if(isOnGrid(angle, wvlen)){
+			validateImage();
+			double[] re = imageTrafo.getRealArray(), im = imageTrafo.getImagArray();
+			int u = Math.floorMod((int) Math.rint(frequencyX(angle, wvlen)), w);
+			int v = Math.floorMod((int) Math.rint(frequencyY(angle, wvlen)), h);
+			Parallel.forRows(h, w, (from, to) -> {
+				for(int r=from; r<to; r++){
+					int rs = (r - v + h) % h;
+					for(int c=0; c<w; c++){
+						int j = rs*w + (c - u + w) % w;
+						a[2*(r*w + c)] = re[j];
+						a[2*(r*w + c)+1] = im[j];
+					}
+				}
+			});
+		}
+		else{
+			Parallel.forRows(h, w, (from, to) -> {
+				for(int y=from; y<to; y++){
+					for(int x=0; x<w; x++){
+						int i = y*w + x;
+						double t = kx*x + ky*y;
+						a[2*i] = image[i]*Math.cos(t);
+						a[2*i+1] = image[i]*Math.sin(t);
+					}
+				}
+			});
+			DoubleFFT_2D plan = plans.getFFT(h, w);
+			plan.complexForward(a);
+		}
+		this.angle = angle;
+		this.wvlen = wvlen;
+		carrierValid = true;
+	}
+
+	/**
+	 * Calculates the DFT of <code>exp(i*k*x)</code> for
+	 * <code>x = 0..n-1</code>, as interleaved complex values:
+	 * <code>sum exp(i*a*x) = exp(i*a*(n-1)/2) * sin(n*a/2) / sin(a/2)</code>
+	 * with <code>a = k - 2*pi*u/n</code>.
+	 */
+	protected static double[] geometricSeries(double k, int n){
+		double[] g = new double[2*n];
+		for(int u=0; u<n; u++){
+			double a = k - 2.0*Math.PI*u/n;
+			double s = Math.sin(a/2.0);
+			double m = Math.abs(s) < 1e-12 ? n*Math.cos(n*a/2.0)/Math.cos(a/2.0) : Math.sin(n*a/2.0)/s;
+			g[2*u] = m*Math.cos(a*(n-1)/2.0);
+			g[2*u+1] = m*Math.sin(a*(n-1)/2.0);
+		}
+		return g;
+	}
+
+	/**
+	 * Calculates the spectrum for the given phase into a Trafo, as if it
+	 * had transformed the pattern (or the product with the image).
+	 * <code>update</code> must have returned <code>true</code> before.
+	 * @param phase phase of the SI pattern (in pixels)
+	 * @param trafo Trafo to hold the result
+	 * @param mode kind of transform
+	 */
+	public void apply(double phase, Trafo trafo, Trafo.Mode mode){
+		if(!carrierValid) throw new IllegalStateException("no carrier");
+		validateImage();
+		int w = width, h = height, xm = w/2, ym = h/2;
+		double k = 2.0*Math.PI/wvlen;
+		double phi = k*(xm + phase) - k*Math.cos(angle)*xm - k*Math.sin(angle)*ym;
+		double cr = Math.sin(phi)/4.0, ci = -Math.cos(phi)/4.0;
+		trafo.prepare(w, h, mode);
+		double[] a = carrier, real = trafo.real, imag = trafo.imag;
+		double[] baseRe = image != null ? imageTrafo.getRealArray() : null;
+		double[] baseIm = image != null ? imageTrafo.getImagArray() : null;
+		boolean dht = mode == Trafo.Mode.DHT;
+		Parallel.forRows(h, w, (from, to) -> {
+			for(int r=from; r<to; r++){
+				int rn = (h - r) % h;
+				for(int c=0; c<w; c++){
+					int i = r*w + c, j = rn*w + (w - c) % w;
+					// c*A(q) and c*A(-q):
+					double pr = cr*a[2*i] - ci*a[2*i+1], pi = cr*a[2*i+1] + ci*a[2*i];
+					double nr = cr*a[2*j] - ci*a[2*j+1], ni = cr*a[2*j+1] + ci*a[2*j];
+					double re = pr + nr, im = pi - ni;
+					if(baseRe != null){
+						re += baseRe[i]/2.0;
+						im += baseIm[i]/2.0;
+					}
+					else if(i == 0){
+						re += w*h/2.0;
+					}
+					if(dht){
+						real[i] = re - im;
+					}
+					else{
+						real[i] = re;
+						imag[i] = im;
+					}
+				}
+			}
+		});
+	}
+
+	public int getWidth(){ return width; }
+
+	public int getHeight(){ return height; }
+}
@@ -0,0 +1,569 @@
+package spass;
+
+import java.util.Arrays;
+
+/**
+ * Locates peaks in the spectrum with sub-pixel accuracy.
+ * <p>
+ * The FFT samples the spectrum only at integer frequencies (cycles per
+ * image), so the largest value gives the frequency of the SI-pattern
+ * only up to half a cycle.  Two refinements are available:
+ * <ul>
+ * <li>interpolation of the peak from its neighbors, with a parabola or a
+ * Gaussian, separately for both directions (no extra calculation);</li>
+ * <li>a zoom-DFT, which evaluates the Fourier coefficients on a fine grid
+ * only in a small neighborhood of the peak, without zero-padding the
+ * whole image.  It is separated into a DFT of the rows for each column
+ * frequency, and a DFT of the columns for each row frequency.</li>
+ * </ul>
+ * Frequencies are given as <code>{fx, fy}</code> in cycles per image
+ * (cycles per width and cycles per height for rectangular images),
+ * relative to (0, 0) like <code>Trafo.getCoords</code>.
+ * <p>
+ * <code>estimate</code> combines the search for the largest first-order
+ * peak with the interpolation, working only on the data the
+ * <code>Trafo</code> already holds.  <code>findPeaks</code> does the
+ * same for the strongest peaks of all orientations at once.
+ *
+ * @author Oliver Eickmeyer
+ */
+public class PeakFinder {
+
+	/**
+	 * Finds the largest peak in the first half of the spectrum (like
+	 * <code>Spass.findMaxInFirstHalf</code>), refines it with a Gaussian
+	 * interpolation, and converts it into SI-parameters.
+	 * It uses only the data of the <code>Trafo</code> (the cached absolute
+	 * values), so it needs no further transform and no further arrays of
+	 * the size of the image.
+	 * <p>
+	 * The phase is taken from the coefficient at the peak, corrected for
+	 * the distance to the refined frequency: for a sinusoid, the
+	 * coefficients of the neighboring frequencies differ only by the phase
+	 * of the Dirichlet kernel.
+	 * <p>
+	 * The confidence compares the peak with the mean absolute value of the
+	 * searched values: <code>(peak - mean) / (peak + mean)</code>.
+	 * @param trafo FFT of the image
+	 * @param mask determines which values are valid; or <code>null</code>
+	 * @return estimate of the SI-parameters
+	 */
+	public static SIPEstimate estimate(Trafo trafo, boolean[] mask){
+		return estimate(trafo, Mask.of(trafo.getWidth(), trafo.getHeight(), mask));
+	}
+
+	/**
+	 * Like <code>estimate(Trafo, boolean[])</code>, but masks all values
+	 * within the distance of <code>r</code> from the origin, like the
+	 * mask of <code>Spass.createMask(width, height, r)</code>.  The mask is
+	 * taken from the cache of <code>Mask.get</code>.
+	 * @param trafo FFT of the image
+	 * @param r radius of the masked area around the zero order
+	 * @return estimate of the SI-parameters
+	 */
+	public static SIPEstimate estimate(Trafo trafo, double r){
+		return estimate(trafo, Mask.get(trafo.getWidth(), trafo.getHeight(), r));
+	}
+
+	/**
+	 * Like <code>estimate(Trafo, boolean[])</code>, but searches only the
+	 * spans of valid values of the mask.
+	 * @param trafo FFT of the image
+	 * @param mask mask of the spectrum; or <code>null</code>
+	 * @return estimate of the SI-parameters
+	 */
+	public static SIPEstimate estimate(Trafo trafo, Mask mask){
+		int width = trafo.getWidth(), height = trafo.getHeight();
+		double[] abs = trafo.getAbsArray();
+		if(mask != null) mask.checkLength(abs.length);
+		double max = Double.MIN_VALUE, sum = 0.0;
+		int iMax = 0, count = 0;
+		int half = abs.length/2;
+		for(int row=0; row*width<half; row++){
+			int spans = mask != null ? mask.endSpan(row) : 1;
+			for(int s=mask != null ? mask.firstSpan(row) : 0; s<spans; s++){
+				int start = row*width + (mask != null ? mask.getStart(s) : 0);
+				int end = Math.min(row*width + (mask != null ? mask.getEnd(s) : width), half);
+				for(int i=start; i<end; i++){
+					sum += abs[i];
+					count++;
+					if(abs[i] > max){
+						max = abs[i];
+						iMax = i;
+					}
+				}
+			}
+		}
+		double mean = count > 0 ? sum / count : 0.0;
+		double confidence = max > 0.0 ? (max - mean) / (max + mean) : 0.0;
+		return toEstimate(trafo, iMax, max, confidence);
+	}
+
+	/**
+	 * Finds the <code>k</code> strongest first-order peaks (for example of
+	 * the three orientations of a SIM acquisition) in one pass over the
+	 * valid values of the first half of the spectrum, and converts each
+	 * of them like <code>estimate</code>.
+	 * <p>
+	 * A peak is a local maximum of the absolute values (compared with its
+	 * eight cyclic neighbors, masked or not).  The rows are searched in
+	 * parallel bands (see <code>Parallel.forBands</code>), each keeping
+	 * its strongest local maxima; the bands are merged in their order, so
+	 * the result does not depend on the number of threads.  The merged
+	 * candidates are then accepted from the strongest on.  Since the
+	 * spectrum of a real image is Hermitian, the mirror
+	 * <code>(-fx, -fy)</code> of an accepted peak is the same peak (in
+	 * the first row, both lie in the searched half), so it is always
+	 * skipped, and each pair of first orders is reported once.  Besides,
+	 * every candidate within <code>minDistance</code> of an accepted peak
+	 * or of its mirror is skipped.
+	 * <p>
+	 * The confidence is calculated like in <code>estimate</code>, with the
+	 * mean of all searched values.
+	 * @param trafo FFT of the image
+	 * @param mask mask of the spectrum; or <code>null</code>
+	 * @param k maximum number of peaks
+	 * @param minDistance minimum distance between two peaks (in cycles
+	 * per image, like the frequencies)
+	 * @return estimates of the peaks, the strongest first; fewer than
+	 * <code>k</code> if there are not enough separated peaks
+	 */
+	public static SIPEstimate[] findPeaks(Trafo trafo, Mask mask, int k, double minDistance){
+		double[] abs = trafo.getAbsArray();
+		double[] mean = new double[1];
+		int[] indices = findPeaks(abs, trafo.getWidth(), trafo.getHeight(), mask, k, minDistance, mean);
+		SIPEstimate[] peaks = new SIPEstimate[indices.length];
+		for(int p=0; p<peaks.length; p++){
+			double max = abs[indices[p]];
+			double confidence = max > 0.0 ? (max - mean[0]) / (max + mean[0]) : 0.0;
+			peaks[p] = toEstimate(trafo, indices[p], max, confidence);
+		}
+		return peaks;
+	}
+
+	/**
+	 * Finds the indices of the <code>k</code> strongest peaks of an array
+	 * of absolute values, like <code>findPeaks(Trafo, Mask, int,
+	 * double)</code>.  The array may hold any non-negative values of a
+	 * Hermitian spectrum, for example the sum of the absolute values of
+	 * several transforms.
+	 * @param abs absolute values of the spectrum (row by row)
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @param mask mask of the spectrum; or <code>null</code>
+	 * @param k maximum number of peaks
+	 * @param minDistance minimum distance between two peaks (in cycles
+	 * per image)
+	 * @param mean array to hold the mean of all searched values; or
+	 * <code>null</code>
+	 * @return indices of the peaks, the strongest first
+	 */
+	public static int[] findPeaks(double[] abs, int width, int height, Mask mask, int k, double minDistance, double[] mean){
+		if(k < 1) throw new IllegalArgumentException("k must be positive");
+		if(abs.length != width*height) throw new IllegalArgumentException("array has wrong length");
+		if(mask != null) mask.checkLength(abs.length);
+		final int half = abs.length/2;
+		final int rows = (half + width - 1) / width;
+		final int capacity = 4*k; // local maxima kept by each band
+		int bands = Parallel.bandCount(rows, width);
+		final int[][] found = new int[bands][capacity];
+		final int[] counts = new int[bands];
+		final double[] sums = new double[bands];
+		final int[] valid = new int[bands];
+		Parallel.forBands(rows, width, (band, from, to) -> {
+			int[] list = found[band];
+			int n = 0, count = 0;
+			double sum = 0.0;
+			for(int row=from; row<to; row++){
+				int spans = mask != null ? mask.endSpan(row) : 1;
+				for(int s=mask != null ? mask.firstSpan(row) : 0; s<spans; s++){
+					int start = row*width + (mask != null ? mask.getStart(s) : 0);
+					int end = Math.min(row*width + (mask != null ? mask.getEnd(s) : width), half);
+					for(int i=start; i<end; i++){
+						sum += abs[i];
+						count++;
+						if(n == capacity && abs[i] <= abs[list[n-1]]) continue;
+						if(!isLocalMax(abs, width, height, i)) continue;
+						// insert into the list, sorted by decreasing value:
+						int j = n < capacity ? n++ : n-1;
+						while(j > 0 && abs[list[j-1]] < abs[i]){
+							list[j] = list[j-1];
+							j--;
+						}
+						list[j] = i;
+					}
+				}
+			}
+			counts[band] = n;
+			sums[band] = sum;
+			valid[band] = count;
+		});
+		double sum = 0.0;
+		int count = 0, total = 0;
+		for(int band=0; band<bands; band++){
+			sum += sums[band];
+			count += valid[band];
+			total += counts[band];
+		}
+		if(mean != null) mean[0] = count > 0 ? sum / count : 0.0;
+
+		// merge the bands; equal values keep the order of the indices:
+		Integer[] candidates = new Integer[total];
+		for(int band=0, n=0; band<bands; band++){
+			for(int j=0; j<counts[band]; j++) candidates[n++] = found[band][j];
+		}
+		Arrays.sort(candidates, (a, b) -> Double.compare(abs[b], abs[a]));
+
+		int[] peaks = new int[Math.min(k, total)];
+		int n = 0;
+		for(int c=0; c<total && n<peaks.length; c++){
+			int i = candidates[c];
+			double fx = Trafo.toFrequency(i % width, width), fy = Trafo.toFrequency(i / width, height);
+			boolean separated = true;
+			for(int p=0; p<n && separated; p++){
+				int q = peaks[p], row = q / width, col = q % width;
+				// the mirror of an accepted peak (like in the first row) is the same peak:
+				int mirror = ((height - row) % height)*width + (width - col) % width;
+				double qx = Trafo.toFrequency(col, width), qy = Trafo.toFrequency(row, height);
+				separated = i != mirror && Math.min(Math.hypot(fx - qx, fy - qy), Math.hypot(fx + qx, fy + qy)) >= minDistance;
+			}
+			if(separated) peaks[n++] = i;
+		}
+		return n < peaks.length ? Arrays.copyOf(peaks, n) : peaks;
+	}
+
+	/**
+	 * Like <code>findPeaks(Trafo, Mask, int, double)</code>, but masks the
+	 * zero order with the radius <code>r</code> (see <code>Mask.get</code>).
+	 * @param trafo FFT of the image
+	 * @param r radius of the masked area around the zero order
+	 * @param k maximum number of peaks
+	 * @param minDistance minimum distance between two peaks (in cycles
+	 * per image)
+	 * @return estimates of the peaks, the strongest first
+	 */
+	public static SIPEstimate[] findPeaks(Trafo trafo, double r, int k, double minDistance){
+		return findPeaks(trafo, Mask.get(trafo.getWidth(), trafo.getHeight(), r), k, minDistance);
+	}
+
+	/**
+	 * Checks, whether the value at <code>index</code> is a local maximum:
+	 * larger than its preceding neighbors and not smaller than the
+	 * following ones (so a plateau gives only one maximum).  The
+	 * neighbors are taken cyclically.
+	 */
+	protected static boolean isLocalMax(double[] abs, int width, int height, int index){
+		int row = index / width, col = index % width;
+		double v = abs[index];
+		if(!(v > 0.0)) return false;
+		for(int dy=-1; dy<=1; dy++){
+			int r = (row + dy + height) % height;
+			for(int dx=-1; dx<=1; dx++){
+				if(dx == 0 && dy == 0) continue;
+				double u = abs[r*width + (col + dx + width) % width];
+				if(dy < 0 || (dy == 0 && dx < 0) ? u >= v : u > v) return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Refines the peak at <code>iMax</code> and converts it into an
+	 * estimate of the SI-parameters (see <code>estimate</code>).
+	 */
+	protected static SIPEstimate toEstimate(Trafo trafo, int iMax, double max, double confidence){
+		double[] f = refineGaussian(trafo, iMax);
+		double[] g = coefficient(trafo, iMax, f[0], f[1]);
+		SIParams params = toSIParams(trafo.getWidth(), trafo.getHeight(), f[0], f[1], g[0], g[1]);
+		return new SIPEstimate(iMax, f[0], f[1], max, confidence, params);
+	}
+
+	/**
+	 * Calculates the coefficient <code>G</code> at a refined frequency
+	 * near the peak at <code>index</code> from the FFT value at the peak
+	 * (see <code>estimate</code>).
+	 * @param trafo FFT of the image
+	 * @param index index of the peak
+	 * @param fx refined frequency in x-direction (cycles per width)
+	 * @param fy refined frequency in y-direction (cycles per height)
+	 * @return coefficient <code>{re, im}</code>
+	 */
+	public static double[] coefficient(Trafo trafo, int index, double fx, double fy){
+		int width = trafo.getWidth(), height = trafo.getHeight();
+		double dx = trafo.toFrequencyX(index % width) - fx;
+		double dy = trafo.toFrequencyY(index / width) - fy;
+		// G at the refined frequency (the FFT value is conjugated):
+		double shift = -Math.PI * (dx * (width - 1) / width + dy * (height - 1) / height);
+		double re = trafo.getReal(index), im = -trafo.getImag(index);
+		return new double[]{re*Math.cos(shift) - im*Math.sin(shift), re*Math.sin(shift) + im*Math.cos(shift)};
+	}
+
+	/**
+	 * Refines the peak at <code>index</code> by fitting a parabola through
+	 * the absolute values of the peak and its neighbors.
+	 * @param trafo FFT with the peak
+	 * @param index index of the peak (largest value)
+	 * @return refined frequency <code>{fx, fy}</code>
+	 */
+	public static double[] refineParabolic(Trafo trafo, int index){
+		return refine(trafo, index, false);
+	}
+
+	/**
+	 * Refines the peak at <code>index</code> by fitting a Gaussian
+	 * through the absolute values of the peak and its neighbors.
+	 * This is more accurate than the parabola for the typical peak shape,
+	 * but needs positive values.
+	 * @param trafo FFT with the peak
+	 * @param index index of the peak (largest value)
+	 * @return refined frequency <code>{fx, fy}</code>
+	 */
+	public static double[] refineGaussian(Trafo trafo, int index){
+		return refine(trafo, index, true);
+	}
+
+	/**
+	 * Like <code>refineGaussian(Trafo, int)</code>, but for an array of
+	 * absolute values (like the sum of the absolute values of several
+	 * transforms).
+	 * @param abs absolute values of the spectrum (row by row)
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @param index index of the peak (largest value)
+	 * @return refined frequency <code>{fx, fy}</code>
+	 */
+	public static double[] refineGaussian(double[] abs, int width, int height, int index){
+		return refine(abs, width, height, index, true);
+	}
+
+	protected static double[] refine(Trafo trafo, int index, boolean gaussian){
+		return refine(trafo.getAbsArray(), trafo.getWidth(), trafo.getHeight(), index, gaussian);
+	}
+
+	protected static double[] refine(double[] abs, int width, int height, int index, boolean gaussian){
+		int col = index % width, row = index / width;
+		int left = row*width + (col + width - 1) % width;
+		int right = row*width + (col + 1) % width;
+		int up = ((row + height - 1) % height)*width + col;
+		int down = ((row + 1) % height)*width + col;
+		double dx = offset(abs[left], abs[index], abs[right], gaussian);
+		double dy = offset(abs[up], abs[index], abs[down], gaussian);
+		return new double[]{Trafo.toFrequency(col, width) + dx, Trafo.toFrequency(row, height) + dy};
+	}
+
+	/**
+	 * Position of the vertex of a parabola through (-1, a), (0, b) and
+	 * (1, c); in case of a Gaussian through the logarithms of the values.
+	 * The result is limited to the range from -0.5 to 0.5.
+	 */
+	protected static double offset(double a, double b, double c, boolean gaussian){
+		if(gaussian){
+			if(a <= 0.0 || b <= 0.0 || c <= 0.0) return offset(a, b, c, false);
+			a = Math.log(a);
+			b = Math.log(b);
+			c = Math.log(c);
+		}
+		double denominator = a - 2.0*b + c;
+		if(denominator >= 0.0) return 0.0; // no maximum
+		double d = 0.5 * (a - c) / denominator;
+		return Math.max(-0.5, Math.min(0.5, d));
+	}
+
+	/**
+	 * Refines a peak with a zoom-DFT.  The absolute values of the
+	 * coefficients are calculated on a grid of <code>steps*steps</code>
+	 * frequencies within <code>radius</code> around the given frequency,
+	 * and the grid is moved to the largest value.  This is repeated
+	 * <code>levels</code> times, each time with a finer grid.
+	 * @param image quadratic array of image values
+	 * @param size size of the image in one dimension
+	 * @param fx frequency in x-direction to start with
+	 * @param fy frequency in y-direction to start with
+	 * @param radius half width of the first grid (in cycles per image)
+	 * @param steps number of grid points in each dimension (at least 3)
+	 * @param levels number of zoom levels
+	 * @return refined frequency and its coefficient
+	 * <code>{fx, fy, re, im}</code>, where the coefficient is
+	 * <code>G = sum(img(x, y) * exp(2*pi*i*(fx*x + fy*y)/size))</code>
+	 */
+	public static double[] refineZoom(double[] image, int size, double fx, double fy, double radius, int steps, int levels){
+		return refineZoom(image, size, size, fx, fy, radius, steps, levels);
+	}
+
+	/**
+	 * Refines a peak of a rectangular image with a zoom-DFT, see
+	 * <code>refineZoom(double[], int, ...)</code>.
+	 * @param image array of <code>width*height</code> image values
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @param fx frequency in x-direction to start with (cycles per width)
+	 * @param fy frequency in y-direction to start with (cycles per height)
+	 * @param radius half width of the first grid (in cycles per image)
+	 * @param steps number of grid points in each dimension (at least 3)
+	 * @param levels number of zoom levels
+	 * @return refined frequency and its coefficient
+	 * <code>{fx, fy, re, im}</code>
+	 */
+	public static double[] refineZoom(double[] image, int width, int height, double fx, double fy, double radius, int steps, int levels){
+		return refineZoom(new double[][]{image}, width, height, fx, fy, radius, steps, levels);
+	}
+
+	/**
+	 * Refines a peak, which is common to several images of the same size
+	 * (like the images of one orientation with different phases), with a
+	 * zoom-DFT.  The grid is moved to the largest sum of the absolute
+	 * values of the coefficients of all images.  The images are processed
+	 * in parallel.
+	 * @param images arrays of <code>width*height</code> image values
+	 * @param width width of the images
+	 * @param height height of the images
+	 * @param fx frequency in x-direction to start with (cycles per width)
+	 * @param fy frequency in y-direction to start with (cycles per height)
+	 * @param radius half width of the first grid (in cycles per image)
+	 * @param steps number of grid points in each dimension (at least 3)
+	 * @param levels number of zoom levels
+	 * @return refined frequency and the coefficients of the images
+	 * <code>{fx, fy, re_0, im_0, re_1, im_1, ...}</code>
+	 */
+	public static double[] refineZoom(double[][] images, int width, int height, double fx, double fy, double radius, int steps, int levels){
+		int n = images.length;
+		double[] best = new double[2 + 2*n];
+		best[0] = fx;
+		best[1] = fy;
+		double[][] re = new double[n][steps*steps], im = new double[n][steps*steps];
+		for(int level=0; level<levels; level++){
+			double step = 2.0 * radius / (steps - 1);
+			double u0 = best[0] - radius, v0 = best[1] - radius;
+			Parallel.forRows(n, width*height, (from, to) -> {
+				for(int j=from; j<to; j++) zoomDFT(images[j], width, height, u0, v0, step, steps, re[j], im[j]);
+			});
+			double max = -1.0;
+			for(int i=0; i<steps*steps; i++){
+				double a = 0.0;
+				for(int j=0; j<n; j++) a += Math.hypot(re[j][i], im[j][i]);
+				if(a > max){
+					max = a;
+					best[0] = u0 + (i % steps) * step;
+					best[1] = v0 + (i / steps) * step;
+					for(int j=0; j<n; j++){
+						best[2 + 2*j] = re[j][i];
+						best[3 + 2*j] = im[j][i];
+					}
+				}
+			}
+			radius = step;
+		}
+		return best;
+	}
+
+	/**
+	 * Calculates the coefficients
+	 * <code>G(u, v) = sum(img(x, y) * exp(2*pi*i*(u*x + v*y)/size))</code>
+	 * for <code>u = u0 + j*step</code> and <code>v = v0 + l*step</code>,
+	 * with <code>j, l</code> from 0 to <code>steps-1</code>.
+	 * The results are stored with the index <code>l*steps + j</code>.
+	 * @param image quadratic array of image values
+	 * @param size size of the image in one dimension
+	 * @param u0 first frequency in x-direction (cycles per image)
+	 * @param v0 first frequency in y-direction (cycles per image)
+	 * @param step distance of the frequencies
+	 * @param steps number of frequencies in each dimension
+	 * @param re will receive the real parts
+	 * @param im will receive the imaginary parts
+	 */
+	public static void zoomDFT(double[] image, int size, double u0, double v0, double step, int steps, double[] re, double[] im){
+		zoomDFT(image, size, size, u0, v0, step, steps, re, im);
+	}
+
+	/**
+	 * Calculates the coefficients of a rectangular image on a grid of
+	 * frequencies, see <code>zoomDFT(double[], int, ...)</code>.  The
+	 * frequencies are <code>u</code> cycles per width and <code>v</code>
+	 * cycles per height.
+	 * @param image array of <code>width*height</code> image values
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @param u0 first frequency in x-direction (cycles per width)
+	 * @param v0 first frequency in y-direction (cycles per height)
+	 * @param step distance of the frequencies
+	 * @param steps number of frequencies in each dimension
+	 * @param re will receive the real parts
+	 * @param im will receive the imaginary parts
+	 */
+	public static void zoomDFT(double[] image, int width, int height, double u0, double v0, double step, int steps, double[] re, double[] im){
+		// exp(2*pi*i*u*x/width) for all u and x:
+		double[] cosU = new double[steps*width], sinU = new double[steps*width];
+		for(int j=0; j<steps; j++){
+			double k = 2.0 * Math.PI * (u0 + j*step) / width;
+			for(int x=0; x<width; x++){
+				cosU[j*width + x] = Math.cos(k * x);
+				sinU[j*width + x] = Math.sin(k * x);
+			}
+		}
+		// DFT of the rows:
+		double[] rowRe = new double[height*steps], rowIm = new double[height*steps];
+		Parallel.forRows(height, width*steps, (from, to) -> {
+			for(int y=from; y<to; y++){
+				int offset = y*width;
+				for(int j=0; j<steps; j++){
+					double sRe = 0.0, sIm = 0.0;
+					for(int x=0; x<width; x++){
+						sRe += image[offset + x] * cosU[j*width + x];
+						sIm += image[offset + x] * sinU[j*width + x];
+					}
+					rowRe[y*steps + j] = sRe;
+					rowIm[y*steps + j] = sIm;
+				}
+			}
+		});
+		// DFT of the columns:
+		for(int l=0; l<steps; l++){
+			double k = 2.0 * Math.PI * (v0 + l*step) / height;
+			for(int j=0; j<steps; j++){
+				re[l*steps + j] = 0.0;
+				im[l*steps + j] = 0.0;
+			}
+			for(int y=0; y<height; y++){
+				double c = Math.cos(k * y), s = Math.sin(k * y);
+				for(int j=0; j<steps; j++){
+					double a = rowRe[y*steps + j], b = rowIm[y*steps + j];
+					re[l*steps + j] += a*c - b*s;
+					im[l*steps + j] += a*s + b*c;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Converts a frequency and the coefficient <code>G</code> at that
+	 * frequency into SI-parameters.  The phase is the one which fits best
+	 * to the image (see <code>SumMulEvaluator.bestPhase</code>).
+	 * @param size size of the quadratic image in one dimension
+	 * @param fx frequency in x-direction (cycles per image)
+	 * @param fy frequency in y-direction (cycles per image)
+	 * @param gRe real part of the coefficient <code>G</code>
+	 * @param gIm imaginary part of the coefficient <code>G</code>
+	 * @return SI-parameters
+	 */
+	public static SIParams toSIParams(int size, double fx, double fy, double gRe, double gIm){
+		return toSIParams(size, size, fx, fy, gRe, gIm);
+	}
+
+	/**
+	 * Converts a frequency of a rectangular image and the coefficient
+	 * <code>G</code> at that frequency into SI-parameters.
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @param fx frequency in x-direction (cycles per width)
+	 * @param fy frequency in y-direction (cycles per height)
+	 * @param gRe real part of the coefficient <code>G</code>
+	 * @param gIm imaginary part of the coefficient <code>G</code>
+	 * @return SI-parameters
+	 */
+	public static SIParams toSIParams(int width, int height, double fx, double fy, double gRe, double gIm){
+		double angle = Trafo.toAngle(fx, fy, width, height);
+		double wvlen = Trafo.toWavelength(fx, fy, width, height);
+		double phase = SumMulEvaluator.bestPhase(gRe, gIm, angle, wvlen, width, height);
+		return new SIParams(angle, phase, wvlen);
+	}
+}
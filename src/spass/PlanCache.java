@@ -0,0 +1,175 @@
+package spass;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jtransforms.dht.DoubleDHT_2D;
+import org.jtransforms.dht.FloatDHT_2D;
+import org.jtransforms.fft.DoubleFFT_2D;
+import org.jtransforms.fft.FloatFFT_2D;
+
+/**
+ * Cache for the transform plans of JTransforms.
+ * Creating a plan computes its twiddle tables, which costs about as much
+ * as the transform itself, so the plans are kept and reused for every
+ * transform of the same size, mode and precision.
+ * Plans for quadratic and rectangular arrays are cached the same way.
+ * A <code>PlanCache</code> may be shared by several <code>Trafo</code>s,
+ * also across threads.
+ *
+ * @author Oliver Eickmeyer
+ */
+public class PlanCache {
+	protected final static int FFT = 0;
+	protected final static int DHT = 1;
+	protected final static int FLOAT_FFT = 2;
+	protected final static int FLOAT_DHT = 3;
+	protected Map<Long, Object> plans;
+
+	/**
+	 * Constructs an empty cache.
+	 */
+	public PlanCache(){
+		plans = new HashMap<>();
+	}
+
+	/**
+	 * Returns the FFT plan for quadratic arrays of the given size.
+	 * The plan will be created, if it is not yet in the cache.
+	 *
+	 * @param size size of the quadratic array in one dimension
+	 * @return FFT plan
+	 */
+	public DoubleFFT_2D getFFT(int size){
+		return getFFT(size, size);
+	}
+
+	/**
+	 * Returns the FFT plan for rectangular arrays.
+	 * The plan will be created, if it is not yet in the cache.
+	 *
+	 * @param rows number of rows (height) of the array
+	 * @param columns number of columns (width) of the array
+	 * @return FFT plan
+	 */
+	public synchronized DoubleFFT_2D getFFT(int rows, int columns){
+		Long key = key(FFT, rows, columns);
+		DoubleFFT_2D plan = (DoubleFFT_2D) plans.get(key);
+		if(plan == null){
+			plan = new DoubleFFT_2D(rows, columns);
+			plans.put(key, plan);
+		}
+		return plan;
+	}
+
+	/**
+	 * Returns the DHT plan for quadratic arrays of the given size.
+	 * The plan will be created, if it is not yet in the cache.
+	 *
+	 * @param size size of the quadratic array in one dimension
+	 * @return DHT plan
+	 */
+	public DoubleDHT_2D getDHT(int size){
+		return getDHT(size, size);
+	}
+
+	/**
+	 * Returns the DHT plan for rectangular arrays.
+	 * The plan will be created, if it is not yet in the cache.
+	 *
+	 * @param rows number of rows (height) of the array
+	 * @param columns number of columns (width) of the array
+	 * @return DHT plan
+	 */
+	public synchronized DoubleDHT_2D getDHT(int rows, int columns){
+		Long key = key(DHT, rows, columns);
+		DoubleDHT_2D plan = (DoubleDHT_2D) plans.get(key);
+		if(plan == null){
+			plan = new DoubleDHT_2D(rows, columns);
+			plans.put(key, plan);
+		}
+		return plan;
+	}
+
+	/**
+	 * Returns the single precision FFT plan for quadratic arrays of the
+	 * given size.
+	 * The plan will be created, if it is not yet in the cache.
+	 *
+	 * @param size size of the quadratic array in one dimension
+	 * @return FFT plan
+	 */
+	public FloatFFT_2D getFloatFFT(int size){
+		return getFloatFFT(size, size);
+	}
+
+	/**
+	 * Returns the single precision FFT plan for rectangular arrays.
+	 * The plan will be created, if it is not yet in the cache.
+	 *
+	 * @param rows number of rows (height) of the array
+	 * @param columns number of columns (width) of the array
+	 * @return FFT plan
+	 */
+	public synchronized FloatFFT_2D getFloatFFT(int rows, int columns){
+		Long key = key(FLOAT_FFT, rows, columns);
+		FloatFFT_2D plan = (FloatFFT_2D) plans.get(key);
+		if(plan == null){
+			plan = new FloatFFT_2D(rows, columns);
+			plans.put(key, plan);
+		}
+		return plan;
+	}
+
+	/**
+	 * Returns the single precision DHT plan for quadratic arrays of the
+	 * given size.
+	 * The plan will be created, if it is not yet in the cache.
+	 *
+	 * @param size size of the quadratic array in one dimension
+	 * @return DHT plan
+	 */
+	public FloatDHT_2D getFloatDHT(int size){
+		return getFloatDHT(size, size);
+	}
+
+	/**
+	 * Returns the single precision DHT plan for rectangular arrays.
+	 * The plan will be created, if it is not yet in the cache.
+	 *
+	 * @param rows number of rows (height) of the array
+	 * @param columns number of columns (width) of the array
+	 * @return DHT plan
+	 */
+	public synchronized FloatDHT_2D getFloatDHT(int rows, int columns){
+		Long key = key(FLOAT_DHT, rows, columns);
+		FloatDHT_2D plan = (FloatDHT_2D) plans.get(key);
+		if(plan == null){
+			plan = new FloatDHT_2D(rows, columns);
+			plans.put(key, plan);
+		}
+		return plan;
+	}
+
+	/**
+	 * Removes all plans from the cache.
+	 */
+	public synchronized void clear(){
+		plans.clear();
+	}
+
+	/**
+	 * Number of plans in the cache.
+	 * @return number of cached plans
+	 */
+	public synchronized int size(){
+		return plans.size();
+	}
+
+	/**
+	 * Combines kind of plan and size to a key for the plan map.
+	 */
+	protected static Long key(int kind, int rows, int columns){
+		return ((long) kind << 62) | ((long) rows << 31) | columns;
+	}
+}
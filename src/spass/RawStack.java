@@ -0,0 +1,186 @@
+package spass;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads frames from a stack of raw images (as written by many cameras),
+ * without loading the stack into the heap.
+ * <p>
+ * The file consists of an optional header, followed by the frames one
+ * after another, each with <code>width*height</code> pixels of 8 or 16
+ * bit (unsigned).  The file is mapped into memory with
+ * <code>FileChannel.map</code>, in chunks of whole frames of at most 2 GB
+ * each, so stacks of any length can be read.  The chunks are mapped when
+ * they are first used.
+ * <p>
+ * <code>getFrame</code> returns a frame as a view of the mapped file,
+ * without copying; <code>getFrame(n, double[])</code> converts it into a
+ * reusable array of values.  The frames may be read from several threads
+ * at the same time.
+ *
+ * @author Oliver Eickmeyer
+ */
+public class RawStack implements Closeable {
+	protected final FileChannel channel;
+	protected final int width;
+	protected final int height;
+	protected final int bytesPerPixel;
+	protected final ByteOrder order;
+	protected final long header;
+	protected final int frameBytes;
+	protected final int frameCount;
+	protected final int framesPerChunk;
+	protected final MappedByteBuffer[] chunks;
+
+	/**
+	 * Opens a stack of raw frames in little endian byte order, without
+	 * header.
+	 * @param file file of the stack
+	 * @param width width of the frames in pixels
+	 * @param height height of the frames in pixels
+	 * @param bits bits per pixel (8 or 16)
+	 * @throws IOException if the file can not be opened
+	 */
+	public RawStack(File file, int width, int height, int bits) throws IOException {
+		this(file, width, height, bits, ByteOrder.LITTLE_ENDIAN, 0);
+	}
+
+	/**
+	 * Opens a stack of raw frames.  Bytes at the end of the file, which do
+	 * not make up a complete frame, are ignored.
+	 * @param file file of the stack
+	 * @param width width of the frames in pixels
+	 * @param height height of the frames in pixels
+	 * @param bits bits per pixel (8 or 16)
+	 * @param order byte order of 16 bit values
+	 * @param header number of bytes before the first frame
+	 * @throws IOException if the file can not be opened
+	 */
+	public RawStack(File file, int width, int height, int bits, ByteOrder order, long header) throws IOException {
+		if(bits != 8 && bits != 16) throw new IllegalArgumentException("bits must be 8 or 16");
+		if(width < 1 || height < 1) throw new IllegalArgumentException("invalid frame size");
+		long bytes = (long) width * height * (bits / 8);
+		if(bytes > Integer.MAX_VALUE) throw new IllegalArgumentException("frame too large");
+		this.width = width;
+		this.height = height;
+		this.bytesPerPixel = bits / 8;
+		this.order = order;
+		this.header = header;
+		this.frameBytes = (int) bytes;
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		long frames = Math.max(0, (channel.size() - header) / frameBytes);
+		if(frames > Integer.MAX_VALUE){
+			channel.close();
+			throw new IOException("too many frames");
+		}
+		frameCount = (int) frames;
+		framesPerChunk = Integer.MAX_VALUE / frameBytes;
+		chunks = new MappedByteBuffer[(frameCount + framesPerChunk - 1) / framesPerChunk];
+	}
+
+	/**
+	 * Returns a frame as a read-only view of the mapped file, without
+	 * copying.  The view has the byte order of the stack; its position is
+	 * 0 and its limit the number of bytes of a frame.
+	 * @param n number of the frame (starting with 0)
+	 * @return view of the frame
+	 * @throws IOException if the file can not be mapped
+	 */
+	public ByteBuffer getFrame(int n) throws IOException {
+		if(n < 0 || n >= frameCount) throw new IndexOutOfBoundsException("frame "+n+" of "+frameCount);
+		ByteBuffer chunk = getChunk(n / framesPerChunk).duplicate();
+		int offset = (n % framesPerChunk) * frameBytes;
+		chunk.position(offset);
+		chunk.limit(offset + frameBytes);
+		return chunk.slice().order(order);
+	}
+
+	/**
+	 * Converts a frame into an array of values.
+	 * @param n number of the frame (starting with 0)
+	 * @param values array to use, if it has the right length; or
+	 * <code>null</code>
+	 * @return values of the frame (row by row)
+	 * @throws IOException if the file can not be mapped
+	 */
+	public double[] getFrame(int n, double[] values) throws IOException {
+		final double[] v = Trafo.reuse(values, width*height);
+		final ByteBuffer frame = getFrame(n);
+		Parallel.forRows(height, width, (from, to) -> {
+			if(bytesPerPixel == 1){
+				for(int i=from*width; i<to*width; i++) v[i] = Byte.toUnsignedInt(frame.get(i));
+			}
+			else{
+				for(int i=from*width; i<to*width; i++) v[i] = Short.toUnsignedInt(frame.getShort(2*i));
+			}
+		});
+		return v;
+	}
+
+	/**
+	 * Converts a frame into an array of values in single precision.
+	 * @param n number of the frame (starting with 0)
+	 * @param values array to use, if it has the right length; or
+	 * <code>null</code>
+	 * @return values of the frame (row by row)
+	 * @throws IOException if the file can not be mapped
+	 */
+	public float[] getFrame(int n, float[] values) throws IOException {
+		final float[] v = Trafo.reuse(values, width*height);
+		final ByteBuffer frame = getFrame(n);
+		Parallel.forRows(height, width, (from, to) -> {
+			if(bytesPerPixel == 1){
+				for(int i=from*width; i<to*width; i++) v[i] = Byte.toUnsignedInt(frame.get(i));
+			}
+			else{
+				for(int i=from*width; i<to*width; i++) v[i] = Short.toUnsignedInt(frame.getShort(2*i));
+			}
+		});
+		return v;
+	}
+
+	/**
+	 * Returns the mapped chunk with the given number, and maps it, if
+	 * necessary.
+	 */
+	protected synchronized MappedByteBuffer getChunk(int c) throws IOException {
+		if(chunks[c] == null){
+			int frames = Math.min(framesPerChunk, frameCount - c*framesPerChunk);
+			long position = header + (long) c * framesPerChunk * frameBytes;
+			chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) frames * frameBytes);
+		}
+		return chunks[c];
+	}
+
+	public int getWidth(){ return width; }
+
+	public int getHeight(){ return height; }
+
+	/**
+	 * Bits per pixel (8 or 16).
+	 * @return bits per pixel
+	 */
+	public int getBits(){ return 8 * bytesPerPixel; }
+
+	/**
+	 * Number of complete frames in the stack.
+	 * @return number of frames
+	 */
+	public int getFrameCount(){ return frameCount; }
+
+	/**
+	 * Closes the file.  The mapped chunks stay valid, until they are
+	 * garbage collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,203 @@
+package spass;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Calculates results from parameters in a background thread, and
+ * publishes them through an <code>Executor</code> (like
+ * <code>SwingUtilities::invokeLater</code> for the event dispatch thread).
+ * <p>
+ * Requests, which arrive while a calculation is running, are coalesced:
+ * only the latest one is calculated next, the ones in between are
+ * dropped.  A running calculation is asked to stop (see
+ * <code>Computation.compute</code>) as soon as a newer request is
+ * waiting; but not, if the last result was published longer than
+ * <code>maxLatency</code> ago.  So the published results follow the
+ * requests with a bounded delay, even if new requests arrive faster than
+ * they can be calculated (like while the mouse wheel is turned).
+ * <p>
+ * The results are published in the order of their calculation.  A
+ * calculation, which fails with a <code>RuntimeException</code>, is
+ * reported to the failure handler through the same <code>Executor</code>.
+ *
+ * @author Oliver Eickmeyer
+ */
+public class Recomputer<P, R> {
+
+	/**
+	 * Default for the longest time (in milliseconds) between two
+	 * published results, while requests are coming in.
+	 */
+	public final static int MAX_LATENCY = 200;
+
+	/**
+	 * Calculates a result from parameters.
+	 */
+	public interface Computation<P, R> {
+		/**
+		 * Calculates the result.  Between expensive steps, the
+		 * calculation should check <code>cancelled</code>, and stop, if it
+		 * returns <code>true</code>.
+		 * @param params parameters of the request
+		 * @param cancelled tells, whether the result is no longer needed
+		 * @return result; or <code>null</code> if the calculation was
+		 * cancelled
+		 */
+		R compute(P params, BooleanSupplier cancelled);
+	}
+
+	/**
+	 * A request with its number.
+	 */
+	protected static class Request<P> {
+		final P params;
+		final long generation;
+
+		Request(P params, long generation){
+			this.params = params;
+			this.generation = generation;
+		}
+	}
+
+	protected final Computation<P, R> computation;
+	protected final Consumer<R> publisher;
+	protected final Consumer<RuntimeException> failure;
+	protected final Executor publishExecutor;
+	protected final ExecutorService worker;
+	protected final AtomicReference<Request<P>> pending;
+	protected final AtomicLong generation;
+	protected final AtomicBoolean running;
+	protected volatile long discardUpTo;
+	protected volatile long lastPublished;
+	protected volatile long maxLatency;
+
+	/**
+	 * Constructs a recomputer with its own worker thread.  Failed
+	 * calculations are printed to <code>System.err</code>.
+	 * @param computation calculates the results
+	 * @param publisher receives the results
+	 * @param publishExecutor runs the <code>publisher</code> (e.g.
+	 * <code>SwingUtilities::invokeLater</code>)
+	 */
+	public Recomputer(Computation<P, R> computation, Consumer<R> publisher, Executor publishExecutor){
+		this(computation, publisher, e -> System.err.println("Calculation failed: "+e), publishExecutor);
+	}
+
+	/**
+	 * Constructs a recomputer with its own worker thread.
+	 * @param computation calculates the results
+	 * @param publisher receives the results
+	 * @param failure receives the exceptions of failed calculations
+	 * @param publishExecutor runs the <code>publisher</code> and the
+	 * <code>failure</code> handler (e.g.
+	 * <code>SwingUtilities::invokeLater</code>)
+	 */
+	public Recomputer(Computation<P, R> computation, Consumer<R> publisher, Consumer<RuntimeException> failure,
+			Executor publishExecutor){
+		this.computation = computation;
+		this.publisher = publisher;
+		this.failure = failure;
+		this.publishExecutor = publishExecutor;
+		worker = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "spass-recompute");
+			t.setDaemon(true);
+			return t;
+		});
+		pending = new AtomicReference<>();
+		generation = new AtomicLong();
+		running = new AtomicBoolean();
+		lastPublished = System.nanoTime();
+		setMaxLatency(MAX_LATENCY);
+	}
+
+	/**
+	 * Requests a new result.  A request, which is still waiting, is
+	 * replaced.
+	 * @param params parameters of the request
+	 */
+	public void submit(P params){
+		pending.set(new Request<>(params, generation.incrementAndGet()));
+		if(running.compareAndSet(false, true)) worker.execute(this::drain);
+	}
+
+	/**
+	 * Drops the waiting request, and asks the running calculation to
+	 * stop.  Results of earlier requests are not published anymore.
+	 */
+	public void cancel(){
+		discardUpTo = generation.incrementAndGet();
+		pending.set(null);
+	}
+
+	/**
+	 * Calculates the waiting requests, until there are no more.
+	 */
+	protected void drain(){
+		while(true){
+			Request<P> request = pending.getAndSet(null);
+			if(request == null){
+				running.set(false);
+				// a request may have arrived after the last check:
+				if(pending.get() == null || !running.compareAndSet(false, true)) return;
+				continue;
+			}
+			if(request.generation <= discardUpTo) continue;
+			R result;
+			try{
+				result = computation.compute(request.params, () -> isStale(request));
+			}
+			catch(RuntimeException e){
+				if(request.generation > discardUpTo) publishExecutor.execute(() -> failure.accept(e));
+				continue;
+			}
+			if(result == null || request.generation <= discardUpTo) continue;
+			lastPublished = System.nanoTime();
+			publishExecutor.execute(() -> publisher.accept(result));
+		}
+	}
+
+	/**
+	 * Checks, whether the calculation of the request can be stopped.
+	 */
+	protected boolean isStale(Request<P> request){
+		if(request.generation <= discardUpTo) return true;
+		return generation.get() != request.generation && System.nanoTime() - lastPublished < maxLatency;
+	}
+
+	/**
+	 * Sets the longest time between two published results, while
+	 * requests are coming in.  Calculations are not cancelled, if the last
+	 * result is older.
+	 * @param millis time in milliseconds
+	 */
+	public void setMaxLatency(long millis){
+		maxLatency = TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	public long getMaxLatency(){ return TimeUnit.NANOSECONDS.toMillis(maxLatency); }
+
+	/**
+	 * Checks, whether there is neither a waiting nor a running
+	 * calculation.
+	 * @return <code>true</code> if idle
+	 */
+	public boolean isIdle(){
+		return !running.get() && pending.get() == null;
+	}
+
+	/**
+	 * Stops the worker thread.  Waiting requests are dropped.
+	 */
+	public void shutdown(){
+		cancel();
+		worker.shutdown();
+	}
+}
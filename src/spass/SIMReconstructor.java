@@ -0,0 +1,398 @@
+package spass;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jtransforms.fft.DoubleFFT_2D;
+
+/**
+ * Reconstructs a resolution enhanced image from a sequence of SIM-images,
+ * by separating, shifting and recombining the frequency bands.
+ * <p>
+ * An image taken with the SI-pattern <code>(1 + sin(k*r + c)) / 2</code>
+ * (see <code>Spass.createSIPattern</code>) has the spectrum
+ * <pre>
+ *   D(q) = OTF(q) * (S(q)/2 + m*exp(i*c)/(4i) * S(q-k) - m*exp(-i*c)/(4i) * S(q+k))
+ * </pre>
+ * where <code>S</code> is the spectrum of the sample and <code>m</code>
+ * the modulation depth.  The images of one orientation (same angle and
+ * wavelength, at least three different phases) give a linear system for
+ * the three bands, which is solved for every frequency with the same
+ * pseudo-inverse.  The side bands are moved to their true position by
+ * multiplying them with a phase ramp in real space, on a grid with twice
+ * the resolution (so shifts by fractions of a pixel are possible and the
+ * extended spectrum fits without wrap-around).  Finally the bands of all
+ * orientations are combined with a Wiener filter:
+ * <pre>
+ *   R(q) = A(q) * sum(conj(H_j(q)) * B_j(q)) / (sum(|H_j(q)|^2) + w^2)
+ * </pre>
+ * with the shifted transfer functions <code>H_j</code>, a triangular
+ * apodization <code>A</code> and the Wiener parameter <code>w</code>.
+ * The OTF is modeled as the OTF of an aberration free circular pupil,
+ * with a given cutoff frequency.
+ * <p>
+ * The transforms of the images and the processing of the bands run in
+ * parallel, and all transforms use the plans of one
+ * <code>PlanCache</code>.  The reconstructor does not need any GUI.
+ *
+ * @author Oliver Eickmeyer
+ */
+public class SIMReconstructor {
+	protected final PlanCache plans;
+	protected double wiener;
+	protected double modulation;
+	protected double cutoff;
+	protected boolean apodization;
+
+	/**
+	 * Constructs a reconstructor with its own plan cache.
+	 */
+	public SIMReconstructor(){
+		this(new PlanCache());
+	}
+
+	/**
+	 * Constructs a reconstructor, which takes the transform plans from the
+	 * given cache.
+	 * @param plans cache for the transform plans
+	 */
+	public SIMReconstructor(PlanCache plans){
+		this.plans = plans;
+		wiener = 0.1;
+		modulation = 1.0;
+		cutoff = 0.5;
+		apodization = true;
+	}
+
+	/**
+	 * Reconstructs the resolution enhanced image.  The images are grouped
+	 * into orientations by their angle and wavelength; each orientation
+	 * needs at least three images with different phases.
+	 * @param frames quadratic images, all of the same size
+	 * @param params SI-parameters of each image
+	 * @param size size of the images in one dimension
+	 * @return reconstructed image, of size <code>2*size</code> in one
+	 * dimension
+	 * @throws IllegalArgumentException if the phases of an orientation do
+	 * not allow to separate the bands
+	 */
+	public double[] reconstruct(double[][] frames, SIParams[] params, int size){
+		if(frames.length != params.length) throw new IllegalArgumentException("one SIParams per frame needed");
+		List<int[]> orientations = groupOrientations(params);
+		double[][] inverses = new double[orientations.size()][];
+		for(int o=0; o<orientations.size(); o++){
+			inverses[o] = pseudoInverse(mixingMatrix(orientations.get(o), params, size));
+		}
+
+		// spectra of the images:
+		Trafo[] spectra = new Trafo[frames.length];
+		Parallel.forRows(frames.length, size*size, (from, to) -> {
+			for(int i=from; i<to; i++){
+				spectra[i] = new Trafo(plans);
+				spectra[i].transform(frames[i], size, Trafo.Mode.FFT);
+			}
+		});
+
+		int n2 = 2*size;
+		double[] sum = new double[2*n2*n2];
+		double[] weight = new double[n2*n2];
+		double fc = cutoff * size;
+		double kMax = 0.0;
+		for(int o=0; o<orientations.size(); o++){
+			int[] group = orientations.get(o);
+			SIParams p = params[group[0]];
+			double u = size * Math.cos(p.getAngle()) / p.getWvlen(); // cycles per image
+			double v = size * Math.sin(p.getAngle()) / p.getWvlen();
+			kMax = Math.max(kMax, Math.hypot(u, v));
+			double[] inverse = inverses[o];
+			double[][] bands = new double[3][];
+			Parallel.forRows(3, n2*n2, (from, to) -> {
+				for(int j=from; j<to; j++){
+					bands[j] = separateBand(j, group, spectra, inverse, size);
+					if(j > 0) shiftBand(bands[j], j == 1 ? u : -u, j == 1 ? v : -v, size);
+				}
+			});
+			accumulate(sum, weight, bands, u, v, size, fc);
+		}
+
+		// Wiener filter and apodization:
+		double w2 = wiener * wiener;
+		double support = fc + kMax;
+		Parallel.forRows(n2, n2, (from, to) -> {
+			for(int row=from; row<to; row++){
+				double fy = frequency(row, n2);
+				for(int col=0; col<n2; col++){
+					int i = row*n2 + col;
+					double a = apodization ? Math.max(0.0, 1.0 - Math.hypot(frequency(col, n2), fy) / support) : 1.0;
+					double factor = a / (weight[i] + w2);
+					sum[2*i] *= factor;
+					sum[2*i+1] *= factor;
+				}
+			}
+		});
+		plans.getFFT(n2).complexInverse(sum, true);
+		double[] result = new double[n2*n2];
+		// the zero-padding to twice the size reduces the values by 4:
+		Parallel.forRows(n2, n2, (from, to) -> {
+			for(int i=from*n2; i<to*n2; i++) result[i] = 4.0 * sum[2*i];
+		});
+		return result;
+	}
+
+	/**
+	 * Groups the images by angle and wavelength.
+	 * @return for each orientation the indices of its images
+	 */
+	protected static List<int[]> groupOrientations(SIParams[] params){
+		List<int[]> groups = new ArrayList<>();
+		boolean[] used = new boolean[params.length];
+		for(int i=0; i<params.length; i++){
+			if(used[i]) continue;
+			List<Integer> group = new ArrayList<>();
+			for(int l=i; l<params.length; l++){
+				if(!used[l] && sameOrientation(params[i], params[l])){
+					used[l] = true;
+					group.add(l);
+				}
+			}
+			groups.add(group.stream().mapToInt(Integer::intValue).toArray());
+		}
+		return groups;
+	}
+
+	protected static boolean sameOrientation(SIParams a, SIParams b){
+		double da = Math.IEEEremainder(a.getAngle() - b.getAngle(), 2.0*Math.PI);
+		return Math.abs(da) < 1e-6 && Math.abs(a.getWvlen() - b.getWvlen()) < 1e-6 * a.getWvlen();
+	}
+
+	/**
+	 * Calculates the coefficients of the three bands (zero order, plus and
+	 * minus side band) in each image of an orientation.
+	 * @return complex matrix with one row per image and three columns,
+	 * stored as <code>{re, im}</code> pairs row by row
+	 */
+	protected double[] mixingMatrix(int[] group, SIParams[] params, int size){
+		double[] a = new double[group.length*6];
+		for(int n=0; n<group.length; n++){
+			SIParams p = params[group[n]];
+			double c = SumMulEvaluator.patternOffset(p.getAngle(), p.getPhase(), p.getWvlen(), size);
+			double s = modulation * Math.sin(c) / 4.0, k = modulation * Math.cos(c) / 4.0;
+			// 1/2, m*exp(i*c)/(4i) and -m*exp(-i*c)/(4i):
+			a[n*6]   = 0.5; a[n*6+1] = 0.0;
+			a[n*6+2] = s;   a[n*6+3] = -k;
+			a[n*6+4] = s;   a[n*6+5] = k;
+		}
+		return a;
+	}
+
+	/**
+	 * Calculates the pseudo-inverse <code>(A^H A)^-1 A^H</code> of a complex
+	 * matrix with three columns.
+	 * @param a complex matrix, see <code>mixingMatrix</code>
+	 * @return complex matrix with three rows and one column per image
+	 */
+	protected static double[] pseudoInverse(double[] a){
+		int rows = a.length / 6;
+		if(rows < 3) throw new IllegalArgumentException("at least three phases per orientation needed");
+		// G = A^H A, extended by the identity for the Gauss-Jordan elimination:
+		double[][] g = new double[3][12];
+		for(int j=0; j<3; j++){
+			for(int l=0; l<3; l++){
+				double re = 0.0, im = 0.0;
+				for(int n=0; n<rows; n++){
+					double ar = a[n*6+2*j], ai = -a[n*6+2*j+1]; // conjugated
+					double br = a[n*6+2*l], bi = a[n*6+2*l+1];
+					re += ar*br - ai*bi;
+					im += ar*bi + ai*br;
+				}
+				g[j][2*l] = re;
+				g[j][2*l+1] = im;
+			}
+			g[j][6+2*j] = 1.0;
+		}
+		for(int col=0; col<3; col++){
+			int pivot = col;
+			for(int r=col+1; r<3; r++){
+				if(Math.hypot(g[r][2*col], g[r][2*col+1]) > Math.hypot(g[pivot][2*col], g[pivot][2*col+1])) pivot = r;
+			}
+			double[] t = g[col]; g[col] = g[pivot]; g[pivot] = t;
+			double pr = g[col][2*col], pi = g[col][2*col+1];
+			double norm = pr*pr + pi*pi;
+			if(norm < 1e-12) throw new IllegalArgumentException("the phases do not allow to separate the bands");
+			// divide the row by the pivot:
+			for(int c=0; c<6; c++){
+				double re = g[col][2*c], im = g[col][2*c+1];
+				g[col][2*c] = (re*pr + im*pi) / norm;
+				g[col][2*c+1] = (im*pr - re*pi) / norm;
+			}
+			for(int r=0; r<3; r++){
+				if(r == col) continue;
+				double fr = g[r][2*col], fi = g[r][2*col+1];
+				for(int c=0; c<6; c++){
+					double re = g[col][2*c], im = g[col][2*c+1];
+					g[r][2*c] -= fr*re - fi*im;
+					g[r][2*c+1] -= fr*im + fi*re;
+				}
+			}
+		}
+		// P = G^-1 A^H:
+		double[] p = new double[3*rows*2];
+		for(int j=0; j<3; j++){
+			for(int n=0; n<rows; n++){
+				double re = 0.0, im = 0.0;
+				for(int l=0; l<3; l++){
+					double gr = g[j][6+2*l], gi = g[j][6+2*l+1];
+					double ar = a[n*6+2*l], ai = -a[n*6+2*l+1];
+					re += gr*ar - gi*ai;
+					im += gr*ai + gi*ar;
+				}
+				p[(j*rows + n)*2] = re;
+				p[(j*rows + n)*2+1] = im;
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * Separates one band from the spectra of an orientation and places it
+	 * into a complex array of twice the size (zero-padded).
+	 */
+	protected static double[] separateBand(int j, int[] group, Trafo[] spectra, double[] inverse, int size){
+		int n2 = 2*size;
+		int rows = group.length;
+		double[] band = new double[2*n2*n2];
+		Parallel.forRows(size, size, (from, to) -> {
+			for(int row=from; row<to; row++){
+				int row2 = (int) Math.floorMod((long) frequency(row, size), (long) n2);
+				for(int col=0; col<size; col++){
+					int col2 = (int) Math.floorMod((long) frequency(col, size), (long) n2);
+					int i = row*size + col;
+					double re = 0.0, im = 0.0;
+					for(int n=0; n<rows; n++){
+						Trafo t = spectra[group[n]];
+						double dr = t.getReal(i), di = t.getImag(i);
+						double pr = inverse[(j*rows + n)*2], pi = inverse[(j*rows + n)*2+1];
+						re += pr*dr - pi*di;
+						im += pr*di + pi*dr;
+					}
+					int i2 = row2*n2 + col2;
+					band[2*i2] = re;
+					band[2*i2+1] = im;
+				}
+			}
+		});
+		return band;
+	}
+
+	/**
+	 * Moves a side band by the frequency <code>(u, v)</code> (cycles per
+	 * image) towards the origin: <code>B(q) = X(q + k)</code>.  The band
+	 * is transformed back, multiplied with the phase ramp
+	 * <code>exp(-i*k*r)</code> and transformed again.
+	 */
+	protected void shiftBand(double[] band, double u, double v, int size){
+		int n2 = 2*size;
+		DoubleFFT_2D fft = plans.getFFT(n2);
+		fft.complexInverse(band, true);
+		// exp(-2*pi*i*(u*x + v*y)/n2), separated into x and y:
+		double[] rampX = new double[2*n2], rampY = new double[2*n2];
+		for(int x=0; x<n2; x++){
+			double a = -2.0 * Math.PI * u * x / n2, b = -2.0 * Math.PI * v * x / n2;
+			rampX[2*x] = Math.cos(a); rampX[2*x+1] = Math.sin(a);
+			rampY[2*x] = Math.cos(b); rampY[2*x+1] = Math.sin(b);
+		}
+		Parallel.forRows(n2, n2, (from, to) -> {
+			for(int y=from; y<to; y++){
+				double yr = rampY[2*y], yi = rampY[2*y+1];
+				for(int x=0; x<n2; x++){
+					double rr = rampX[2*x]*yr - rampX[2*x+1]*yi;
+					double ri = rampX[2*x]*yi + rampX[2*x+1]*yr;
+					int i = 2*(y*n2 + x);
+					double re = band[i], im = band[i+1];
+					band[i] = re*rr - im*ri;
+					band[i+1] = re*ri + im*rr;
+				}
+			}
+		});
+		fft.complexForward(band);
+	}
+
+	/**
+	 * Adds the bands of an orientation to the Wiener sums.
+	 */
+	protected static void accumulate(double[] sum, double[] weight, double[][] bands, double u, double v, int size, double fc){
+		int n2 = 2*size;
+		Parallel.forRows(n2, n2, (from, to) -> {
+			for(int row=from; row<to; row++){
+				double fy = frequency(row, n2);
+				for(int col=0; col<n2; col++){
+					double fx = frequency(col, n2);
+					int i = row*n2 + col;
+					double h0 = otf(Math.hypot(fx, fy), fc);
+					double hp = otf(Math.hypot(fx + u, fy + v), fc);
+					double hm = otf(Math.hypot(fx - u, fy - v), fc);
+					// the OTF is real, so conj(H) = H:
+					sum[2*i]   += h0*bands[0][2*i]   + hp*bands[1][2*i]   + hm*bands[2][2*i];
+					sum[2*i+1] += h0*bands[0][2*i+1] + hp*bands[1][2*i+1] + hm*bands[2][2*i+1];
+					weight[i] += h0*h0 + hp*hp + hm*hm;
+				}
+			}
+		});
+	}
+
+	/**
+	 * OTF of an aberration free circular pupil.
+	 * @param f absolute value of the frequency
+	 * @param fc cutoff frequency (in the same unit as <code>f</code>)
+	 * @return value of the OTF, from 1 (at 0) to 0 (at the cutoff)
+	 */
+	public static double otf(double f, double fc){
+		if(f >= fc) return 0.0;
+		double r = f / fc;
+		return 2.0 / Math.PI * (Math.acos(r) - r * Math.sqrt(1.0 - r*r));
+	}
+
+	/**
+	 * Frequency (cycles per image) of the index in an FFT array of the
+	 * given size in one dimension.
+	 */
+	protected static int frequency(int index, int size){
+		return index > size/2 ? index - size : index;
+	}
+
+	/**
+	 * Sets the Wiener parameter, which limits the amplification of noise
+	 * where the transfer functions are small.
+	 * @param wiener Wiener parameter
+	 */
+	public void setWiener(double wiener){ this.wiener = wiener; }
+
+	public double getWiener(){ return wiener; }
+
+	/**
+	 * Sets the modulation depth of the SI-pattern (from 0 to 1).
+	 * @param modulation modulation depth
+	 */
+	public void setModulation(double modulation){ this.modulation = modulation; }
+
+	public double getModulation(){ return modulation; }
+
+	/**
+	 * Sets the cutoff frequency of the OTF.
+	 * @param cutoff cutoff frequency in cycles per pixel (at most 0.5 for
+	 * images without aliasing)
+	 */
+	public void setCutoff(double cutoff){ this.cutoff = cutoff; }
+
+	public double getCutoff(){ return cutoff; }
+
+	/**
+	 * Enables the triangular apodization of the combined spectrum.
+	 * @param apodization <code>true</code> to apodize
+	 */
+	public void setApodization(boolean apodization){ this.apodization = apodization; }
+
+	public boolean isApodization(){ return apodization; }
+
+	public PlanCache getPlans(){ return plans; }
+}
@@ -0,0 +1,74 @@
+package spass;
+
+/**
+ * Result of the analysis of a spectrum: the SI-parameters of a peak,
+ * together with the position of the peak and a confidence score.
+ *
+ * @author Oliver Eickmeyer
+ */
+public class SIPEstimate {
+	protected int index;
+	protected double fx;
+	protected double fy;
+	protected double magnitude;
+	protected double confidence;
+	protected SIParams params;
+
+	/**
+	 * Constructs an estimate.
+	 * @param index index of the peak in the arrays of the transform
+	 * @param fx refined frequency in x-direction (cycles per image)
+	 * @param fy refined frequency in y-direction (cycles per image)
+	 * @param magnitude absolute value of the peak
+	 * @param confidence confidence score from 0 (none) to 1
+	 * @param params SI-parameters of the peak
+	 */
+	public SIPEstimate(int index, double fx, double fy, double magnitude, double confidence, SIParams params){
+		this.index = index;
+		this.fx = fx;
+		this.fy = fy;
+		this.magnitude = magnitude;
+		this.confidence = confidence;
+		this.params = params;
+	}
+
+	/**
+	 * Index of the peak in the arrays of the transform.
+	 * @return index of the peak
+	 */
+	public int getIndex(){ return index; }
+
+	/**
+	 * Refined frequency in x-direction.
+	 * @return frequency in cycles per image
+	 */
+	public double getFx(){ return fx; }
+
+	/**
+	 * Refined frequency in y-direction.
+	 * @return frequency in cycles per image
+	 */
+	public double getFy(){ return fy; }
+
+	/**
+	 * Absolute value of the transform at the peak.
+	 * @return magnitude of the peak
+	 */
+	public double getMagnitude(){ return magnitude; }
+
+	/**
+	 * Confidence score, from 0 (the peak does not stand out) to 1.
+	 * @return confidence score
+	 */
+	public double getConfidence(){ return confidence; }
+
+	/**
+	 * SI-parameters of the peak.
+	 * @return SI-parameters
+	 */
+	public SIParams getParams(){ return params; }
+
+	public String toString(){
+		return String.format("peak %d (%.3f, %.3f), confidence %.3f, %s", index, fx, fy, confidence, params);
+	}
+}
@@ -0,0 +1,274 @@
+package spass;
+
+/**
+ * Fits the SI-parameters to an image, by maximizing the pixelsum of the
+ * multiplication of the image with the SI-pattern (<code>sumMul</code>).
+ * <p>
+ * For a given angle and wavelength, the best phase and the largest sum
+ * are known analytically (see <code>SumMulEvaluator</code>), so only the
+ * frequency of the pattern has to be searched.  The search works in
+ * frequency coordinates <code>(u, v)</code> (cycles per image), where the
+ * peak of the spectrum has a width of about one cycle:
+ * <ol>
+ * <li>coarse-to-fine grid search around the seed, halving the step until
+ * it is small compared to the grid of the FFT, with the candidates of
+ * each level evaluated in parallel;</li>
+ * <li>Nelder-Mead simplex search, started at the best grid point.</li>
+ * </ol>
+ * The optimizer stops when the simplex is smaller than the tolerance, or
+ * when the iteration or time budget is used up.
+ * It does not need any GUI.
+ *
+ * @author Oliver Eickmeyer
+ */
+public class SIPOptimizer {
+
+	/**
+	 * Number of grid points on each side of the center, for the grid
+	 * search (the grid has <code>2*GRID_RADIUS+1</code> points in each
+	 * dimension).
+	 */
+	public final static int GRID_RADIUS = 2;
+
+	protected SumMulEvaluator evaluator;
+	protected OptimizerListener listener;
+	protected int maxIterations;
+	protected long maxMillis;
+	protected double tolerance;
+	protected int iterations;
+	protected double bestSum;
+	protected SIParams best;
+
+	/**
+	 * Constructs an optimizer for the image of the given evaluator.
+	 * @param evaluator evaluator for the image
+	 */
+	public SIPOptimizer(SumMulEvaluator evaluator){
+		this.evaluator = evaluator;
+		maxIterations = 200;
+		maxMillis = 2000;
+		tolerance = 1e-4;
+	}
+
+	/**
+	 * Finds a starting point for the optimization, by locating the largest
+	 * first-order peak in the spectrum (see <code>PeakFinder.estimate</code>).
+	 * @param trafo FFT of the image
+	 * @param mask mask for the spectrum (usually masking the zero order);
+	 * or <code>null</code>
+	 * @return SI-parameters of the peak
+	 */
+	public static SIParams seed(Trafo trafo, boolean[] mask){
+		return PeakFinder.estimate(trafo, mask).getParams();
+	}
+
+	/**
+	 * Optimizes the SI-parameters, starting at the given seed.  The phase
+	 * of the seed is not used.
+	 * @param seed SI-parameters to start with
+	 * @return best SI-parameters found
+	 */
+	public SIParams optimize(SIParams seed){
+		long deadline = System.currentTimeMillis() + maxMillis;
+		int width = evaluator.getWidth(), height = evaluator.getHeight();
+		iterations = 0;
+		double u = width * Math.cos(seed.getAngle()) / seed.getWvlen();
+		double v = height * Math.sin(seed.getAngle()) / seed.getWvlen();
+		bestSum = objective(u, v);
+		setBest(u, v);
+
+		// coarse-to-fine grid search:
+		int n = 2*GRID_RADIUS + 1;
+		double[] sums = new double[n*n];
+		double step = 0.5;
+		while(step > 1.0/64.0 && !budgetUsed(deadline)){
+			final double u0 = u, v0 = v, s = step;
+			Parallel.forRows(n*n, width*height, (from, to) -> {
+				for(int i=from; i<to; i++){
+					sums[i] = objective(u0 + (i % n - GRID_RADIUS) * s, v0 + (i / n - GRID_RADIUS) * s);
+				}
+			});
+			for(int i=0; i<n*n; i++){
+				if(sums[i] > bestSum){
+					bestSum = sums[i];
+					u = u0 + (i % n - GRID_RADIUS) * s;
+					v = v0 + (i / n - GRID_RADIUS) * s;
+				}
+			}
+			setBest(u, v);
+			iterationDone();
+			step /= 2.0;
+		}
+
+		// Nelder-Mead:
+		double[][] simplex = {{u, v}, {u + step, v}, {u, v + step}};
+		double[] values = new double[3];
+		values[0] = bestSum;
+		values[1] = objective(simplex[1][0], simplex[1][1]);
+		values[2] = objective(simplex[2][0], simplex[2][1]);
+		while(!budgetUsed(deadline)){
+			sortSimplex(simplex, values);
+			if(simplexSize(simplex) < tolerance) break;
+			nelderMeadStep(simplex, values);
+			sortSimplex(simplex, values);
+			if(values[0] > bestSum){
+				bestSum = values[0];
+				setBest(simplex[0][0], simplex[0][1]);
+			}
+			iterationDone();
+		}
+		return best;
+	}
+
+	/**
+	 * One step of the Nelder-Mead method (for maximization), with the
+	 * simplex sorted from best to worst.
+	 */
+	protected void nelderMeadStep(double[][] simplex, double[] values){
+		double cu = (simplex[0][0] + simplex[1][0]) / 2.0;
+		double cv = (simplex[0][1] + simplex[1][1]) / 2.0;
+		double[] worst = simplex[2];
+
+		// reflection:
+		double ru = cu + (cu - worst[0]), rv = cv + (cv - worst[1]);
+		double r = objective(ru, rv);
+		if(r > values[0]){
+			// expansion:
+			double eu = cu + 2.0*(cu - worst[0]), ev = cv + 2.0*(cv - worst[1]);
+			double e = objective(eu, ev);
+			if(e > r) replaceWorst(simplex, values, eu, ev, e);
+			else replaceWorst(simplex, values, ru, rv, r);
+			return;
+		}
+		if(r > values[1]){
+			replaceWorst(simplex, values, ru, rv, r);
+			return;
+		}
+		// contraction:
+		double ku, kv;
+		if(r > values[2]){
+			ku = cu + 0.5*(ru - cu);
+			kv = cv + 0.5*(rv - cv);
+		}
+		else{
+			ku = cu + 0.5*(worst[0] - cu);
+			kv = cv + 0.5*(worst[1] - cv);
+		}
+		double k = objective(ku, kv);
+		if(k > Math.max(r, values[2])){
+			replaceWorst(simplex, values, ku, kv, k);
+			return;
+		}
+		// shrink towards the best point:
+		for(int i=1; i<3; i++){
+			simplex[i][0] = simplex[0][0] + 0.5*(simplex[i][0] - simplex[0][0]);
+			simplex[i][1] = simplex[0][1] + 0.5*(simplex[i][1] - simplex[0][1]);
+			values[i] = objective(simplex[i][0], simplex[i][1]);
+		}
+	}
+
+	private static void replaceWorst(double[][] simplex, double[] values, double u, double v, double value){
+		simplex[2][0] = u;
+		simplex[2][1] = v;
+		values[2] = value;
+	}
+
+	/**
+	 * Sorts the simplex from the best (largest value) to the worst.
+	 */
+	private static void sortSimplex(double[][] simplex, double[] values){
+		for(int i=1; i<3; i++){
+			for(int j=i; j>0 && values[j] > values[j-1]; j--){
+				double t = values[j]; values[j] = values[j-1]; values[j-1] = t;
+				double[] p = simplex[j]; simplex[j] = simplex[j-1]; simplex[j-1] = p;
+			}
+		}
+	}
+
+	private static double simplexSize(double[][] simplex){
+		double size = 0.0;
+		for(int i=1; i<3; i++){
+			size = Math.max(size, Math.abs(simplex[i][0] - simplex[0][0]));
+			size = Math.max(size, Math.abs(simplex[i][1] - simplex[0][1]));
+		}
+		return size;
+	}
+
+	/**
+	 * Largest pixelsum of the multiplication for the frequency
+	 * <code>(u, v)</code> (in cycles per image).
+	 */
+	protected double objective(double u, double v){
+		if(u == 0.0 && v == 0.0) return evaluator.getImageSum() / 2.0;
+		return evaluator.maxOverPhase(toAngle(u, v), toWvlen(u, v));
+	}
+
+	protected void setBest(double u, double v){
+		double angle = toAngle(u, v), wvlen = toWvlen(u, v);
+		best = new SIParams(angle, evaluator.bestPhase(angle, wvlen), wvlen);
+	}
+
+	protected double toAngle(double u, double v){
+		return Trafo.toAngle(u, v, evaluator.getWidth(), evaluator.getHeight());
+	}
+
+	protected double toWvlen(double u, double v){
+		return Trafo.toWavelength(u, v, evaluator.getWidth(), evaluator.getHeight());
+	}
+
+	protected boolean budgetUsed(long deadline){
+		return iterations >= maxIterations || System.currentTimeMillis() >= deadline;
+	}
+
+	protected void iterationDone(){
+		iterations++;
+		if(listener != null) listener.iterationDone(iterations, best, bestSum);
+	}
+
+	/**
+	 * Sets a listener, which will be informed after each iteration.
+	 * @param listener listener; or <code>null</code>
+	 */
+	public void setListener(OptimizerListener listener){
+		this.listener = listener;
+	}
+
+	/**
+	 * Sets the maximum number of iterations (grid levels and simplex
+	 * steps).
+	 * @param maxIterations maximum number of iterations
+	 */
+	public void setMaxIterations(int maxIterations){
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * Sets the maximum time for one optimization.
+	 * @param maxMillis maximum time in milliseconds
+	 */
+	public void setMaxMillis(long maxMillis){
+		this.maxMillis = maxMillis;
+	}
+
+	/**
+	 * Sets the tolerance for the frequency (in cycles per image), at which
+	 * the simplex search stops.
+	 * @param tolerance tolerance in cycles per image
+	 */
+	public void setTolerance(double tolerance){
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Number of iterations of the last optimization.
+	 * @return number of iterations
+	 */
+	public int getIterations(){ return iterations; }
+
+	/**
+	 * Pixelsum of the multiplication for the result of the last
+	 * optimization.
+	 * @return best pixelsum
+	 */
+	public double getBestSum(){ return bestSum; }
+}
@@ -14,17 +14,17 @@ import java.awt.event.MouseMotionListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBuffer;
-import java.awt.image.Raster;
-import java.awt.image.SampleModel;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.Transferable;
 import java.awt.datatransfer.UnsupportedFlavorException;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BooleanSupplier;
 
-import javax.imageio.ImageIO;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
@@ -32,11 +32,11 @@ import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.Timer;
 import javax.swing.TransferHandler;
 
-import org.jtransforms.fft.DoubleFFT_2D;
-
 import spass.Trafo.Mode;
 
 /**
@@ -45,10 +45,24 @@ import spass.Trafo.Mode;
  * Analyzes images of Structured Illumination Microscopy (SIM), to
  * find the parameters of the structured illumination.
  *
- * TODO:
- * Cut stripes out of the images and compose them to an
- * resolution enhanced image.
- * (my Bachelor-Thesis)
+ * A sequence of images can be composed to a resolution enhanced
+ * image with the <code>SIMReconstructor</code>.
+ * <p>
+ * The values and the transform are calculated in the background by a
+ * <code>Recomputer</code>, so the GUI stays responsive.  Changes of the
+ * parameters, which come faster than the calculation (like from the mouse
+ * wheel), are coalesced to the latest one.  Each result is a
+ * <code>Frame</code>, which is shown on the event dispatch thread; the
+ * frames are reused, when they are no longer shown.
+ * <p>
+ * While the SI-parameters are changed, a preview is calculated from the
+ * image downsampled by <code>PREVIEW_FACTOR</code>; when there was no
+ * change for <code>REFINE_DELAY</code> milliseconds, the frame is
+ * calculated in full size.
+ * <p>
+ * The spectra of the SI-pattern and of the multiplication are taken
+ * from a <code>PatternSpectrum</code> where possible, so a change of the
+ * phase needs no new transform.
  * 
  * @author Oliver Eickmeyer
  */
@@ -77,6 +91,18 @@ implements ActionListener,
 	 */
 	public final static int MINSIZE = 4;
 	
+	/**
+	 * Factor of downsampling for the preview, while the parameters are
+	 * changed.
+	 */
+	public final static int PREVIEW_FACTOR = 4;
+	
+	/**
+	 * Milliseconds without a change of the parameters, before the preview
+	 * is refined to full size.
+	 */
+	public final static int REFINE_DELAY = 250;
+	
 	/**
 	 * Transform mode: Discrete Hartley Transform
 	 */
@@ -113,17 +139,148 @@ implements ActionListener,
 	 */
 	public static enum ValueMode {SI, IMAGE, MUL};
 	
+	/**
+	 * Settings of the GUI for the calculation of a <code>Frame</code>,
+	 * taken on the event dispatch thread.
+	 */
+	protected static class Settings {
+		final int width, height;
+		final double angle, phase, wvlen;
+		final ValueMode valueMode;
+		final int trafoMode;
+		final boolean singlePrecision;
+		final double[] valImg;
+		final float[] valImgFloat;
+		final int scale; // downsampling of a preview; 1 for full size
+		
+		Settings(int width, int height, double angle, double phase, double wvlen, ValueMode valueMode,
+				int trafoMode, boolean singlePrecision, double[] valImg, float[] valImgFloat, int scale){
+			this.width = width;
+			this.height = height;
+			this.angle = angle;
+			this.phase = phase;
+			this.wvlen = wvlen;
+			this.valueMode = valueMode;
+			this.trafoMode = trafoMode;
+			this.singlePrecision = singlePrecision;
+			this.valImg = valImg;
+			this.valImgFloat = valImgFloat;
+			this.scale = scale;
+		}
+		
+		boolean hasImage(){
+			return valImg != null || valImgFloat != null;
+		}
+	}
+	
+	/**
+	 * Values and transform for the displays, calculated from
+	 * <code>Settings</code>.  The arrays are reused for the next frame.
+	 */
+	protected static class Frame {
+		final Trafo trafo;
+		Settings settings;
+		double[] valSIP; // values of SI-pattern
+		double[] valMul; // values of multiplication
+		float[] valSIPFloat; // values of SI-pattern, single precision
+		float[] valMulFloat; // values of multiplication, single precision
+		double sumMul; // pixelsum of multiplication
+		
+		Frame(PlanCache plans){
+			trafo = new Trafo(plans);
+		}
+		
+		/**
+		 * Returns the array for the shown values.
+		 */
+		double[] getInputArray(){
+			switch(settings.valueMode){
+			case SI:
+				return valSIP;
+			case IMAGE:
+				return settings.valImg;
+			case MUL:
+				return valMul;
+			default:
+				return null;
+			}
+		}
+		
+		/**
+		 * Returns the array for the shown values in single precision.
+		 */
+		float[] getInputArrayFloat(){
+			switch(settings.valueMode){
+			case SI:
+				return valSIPFloat;
+			case IMAGE:
+				return settings.valImgFloat;
+			case MUL:
+				return valMulFloat;
+			default:
+				return null;
+			}
+		}
+		
+		/**
+		 * Returns the array of the transform for the display (calculating
+		 * it, if it is a derived array).
+		 */
+		double[] getTrafoArray(){
+			switch(settings.trafoMode){
+			case TRAFOMODE_FFT_ABS:
+				return trafo.getAbsArray();
+			case TRAFOMODE_FFT_IM:
+				return trafo.getImagArray();
+			case TRAFOMODE_FFT_PHASE:
+				return trafo.getPhaseArray();
+			default:
+				return trafo.getRealArray();
+			}
+		}
+		
+		/**
+		 * Returns the array of the transform in single precision for the
+		 * display.
+		 */
+		float[] getTrafoArrayFloat(){
+			switch(settings.trafoMode){
+			case TRAFOMODE_FFT_ABS:
+				return trafo.getAbsArrayFloat();
+			case TRAFOMODE_FFT_IM:
+				return trafo.getImagArrayFloat();
+			case TRAFOMODE_FFT_PHASE:
+				return trafo.getPhaseArrayFloat();
+			default:
+				return trafo.getRealArrayFloat();
+			}
+		}
+	}
+	
 	protected ValueMode valueMode;
 	protected ValueDisplay inValueDisp;
 	protected ValueDisplay outValueDisp;
 	protected Timer timer;
-	protected int size;
-	protected double[] valSIP; // values of SI-pattern
+	protected int width;
+	protected int height;
+	protected int imageWidth, imageHeight; // size of image file, before padding
 	protected double[] valImg; // values of image file
-	protected double[] valMul; // values of multiplication
-	protected double sumMul; // pixelsum of multiplication
+	protected float[] valImgFloat; // values of image file, single precision
+	protected boolean singlePrecision; // use the float arrays
 //	protected double[] trafos; // values of transform
-	protected Trafo trafo;
+	protected Trafo trafo; // transform of the shown frame
+	protected Frame frame; // shown frame
+	protected PlanCache plans;
+	protected final Deque<Frame> freeFrames = new ArrayDeque<>();
+	protected Recomputer<Settings, Frame> recomputer;
+	protected Timer refineTimer; // calculates the full size after a preview
+	protected boolean findPending; // find the SI-parameters, when the full size is shown
+	protected Frame fitFrame; // frame, whose spectrum is used by the running fit
+	protected Object previewSource; // image of the preview image
+	protected double[] previewImg; // downsampled image
+	protected float[] previewImgFloat; // downsampled image, single precision
+	protected PatternSpectrum spectrum; // used by the recomputer only
+	protected PatternSpectrum previewSpectrum; // used by the recomputer only
 	protected JPanel imagePanel;
 	protected JPanel sipPanel;
 	protected JLabel lblCursorValue;
@@ -137,13 +294,21 @@ implements ActionListener,
 	protected JCheckBox mask;
 	protected JTextField maskRange;
 	protected JCheckBox log;
+	protected JCheckBox single;
 
 	/**
 	 * Starts the application.
+	 * Without arguments the GUI is opened.  With arguments, the
+	 * SI-parameters of the given images are estimated without GUI, see
+	 * <code>BatchEstimator</code>.
 	 * 
-	 * @param args so far no command line arguments available
+	 * @param args options and images for the <code>BatchEstimator</code>
 	 */
 	public static void main(String[] args) {
+		if(args.length > 0){
+			BatchEstimator.main(args);
+			return;
+		}
 		new Spass();
 	}
 	
@@ -156,7 +321,12 @@ implements ActionListener,
 		valueMode = ValueMode.SI;
 		setDefaultCloseOperation(EXIT_ON_CLOSE);
 		setLayout(new BorderLayout());
-		trafo = new Trafo();
+		plans = new PlanCache();
+		spectrum = new PatternSpectrum(plans);
+		previewSpectrum = new PatternSpectrum(plans);
+		recomputer = new Recomputer<>(this::calculateFrame, this::showFrame, this::showFailure, SwingUtilities::invokeLater);
+		refineTimer = new Timer(REFINE_DELAY, this);
+		refineTimer.setRepeats(false);
 		
 		// Image Panel (SI-Pattern and Transformation)
 		
@@ -242,6 +412,10 @@ implements ActionListener,
 		log.setSelected(false);
 		optionsPanel.add(log);
 		log.addActionListener(this);
+		single = new JCheckBox("float");
+		single.setSelected(false);
+		optionsPanel.add(single);
+		single.addActionListener(this);
 		dataPanel.add(optionsPanel);
 		
 		sipPanel = new JPanel();
@@ -267,15 +441,11 @@ implements ActionListener,
 		
 		// Go Live
 		
-		size = 256;
+		width = height = 256;
 		angle.setNumber(Math.PI/4.0);
 		phase.setNumber(0.0);
 		wvlen.setNumber(8);
 		calculateValues();
-		if(mask.isSelected()){
-			double r = Double.parseDouble(maskRange.getText());
-			outValueDisp.setMask(createMask(size, r));
-		}
 		addKeyListener(this);
 		addMouseListener(this);
 		pack();
@@ -287,62 +457,56 @@ implements ActionListener,
 	/**
 	 * Loads image file and converts to <code>double</code>s.
 	 * So far only gray values are supported.
-	 * Images must be quadratic in size and the width and height
-	 * must be integer powers of 2.
+	 * Images may be rectangular.  If width or height is not a fast size
+	 * for the FFT (see <code>Trafo.fastSize</code>), the image is padded
+	 * with its mean value to the next fast size (shown in the size label).
 	 * 
 	 * @param file
 	 */
 	protected void loadImage(File file){
 		BufferedImage image = null;
 		try {
-			image = ImageIO.read(file);
+			image = ImageLoader.read(file);
 		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		if(image == null){
-			System.err.println("Loading of image failed: "+file);
+			System.err.println("Loading of image failed: "+e.getMessage());
 			return;
 		}
-		if(image.getWidth() != image.getHeight()){
-			System.err.println("Error: Width and height must be equal.");
+		int w = image.getWidth(), h = image.getHeight();
+		int fastWidth = Trafo.fastSize(w), fastHeight = Trafo.fastSize(h);
+		double[] values = null;
+		float[] valuesFloat = null;
+		try {
+			if(singlePrecision && fastWidth == w && fastHeight == h)
+				valuesFloat = ImageLoader.toFloatArray(image, null);
+			else
+				values = ImageLoader.toDoubleArray(image, null);
+		} catch (IOException e) {
+			System.err.println("Loading of image failed: "+e.getMessage());
 			return;
 		}
-		double logPrecise = Math.log(image.getWidth()) / Math.log(2);
-		double logRounded = (double)((int)logPrecise);
-		if(logPrecise != logRounded){
-			System.err.println("Width and height must be integer powers of 2");
-		}
-		size = image.getWidth();
-		Raster r = image.getRaster();
-		SampleModel sm = r.getSampleModel();
-		DataBuffer db = r.getDataBuffer();
-		int w = sm.getWidth();
-		int h = sm.getHeight();
-		byte[] bytes = (byte[]) sm.getDataElements(0, 0, w, h, null, db);
-		valImg = new double[size*size];
-		for(int i=0; i<bytes.length; i++){
-			valImg[i] = Byte.toUnsignedInt(bytes[i]);
+		if(fastWidth != w || fastHeight != h){
+			values = Trafo.pad(values, w, h, fastWidth, fastHeight);
+			if(singlePrecision){
+				valuesFloat = new float[values.length];
+				for(int i=0; i<values.length; i++) valuesFloat[i] = (float) values[i];
+				values = null;
+			}
 		}
+		width = fastWidth;
+		height = fastHeight;
+		imageWidth = w;
+		imageHeight = h;
+		valImg = values;
+		valImgFloat = valuesFloat;
 		valueMode = ValueMode.IMAGE;
-		updateValueDisplay();
-		transform();
-		updateTrafoDisplay();
-		updateMultiplication();
-	}
-	
-	/**
-	 * Does the multiplication and updates the data shown in the info
-	 * panel regarding the multiplication results.
-	 */
-	private void updateMultiplication(){
-		if(valMul == null) valMul = new double[size*size];
-		sumMul = multiply(valMul, valImg, valSIP);
-		lblSumMul.setText(String.format(locale, "sum: %.3f", sumMul));
+		recompute();
 	}
 	
 	/**
 	 * Multiplies two <code>double</code> arrays element-wise and stores
 	 * the result in <code>target</code>.
+	 * The sum is calculated in bands (in parallel for large arrays), which
+	 * are always added in the same order, so the result is deterministic.
 	 *
 	 * @param target will receive the result
 	 * @param val1 first array
@@ -350,84 +514,306 @@ implements ActionListener,
 	 * @return element-wise multiplication of first and second array
 	 */
 	public static double multiply(double[] target, double[] val1, double[] val2){
-		double sum = 0.0;
-		for(int i=0; i<val1.length; i++){
-			target[i] = val1[i] * val2[i];
-			sum += target[i];
-		}
-		return sum;
+		return Parallel.sumRows(val1.length, 1, (from, to) -> {
+			double sum = 0.0;
+			for(int i=from; i<to; i++){
+				target[i] = val1[i] * val2[i];
+				sum += target[i];
+			}
+			return sum;
+		});
+	}
+	
+	/**
+	 * Multiplies two <code>float</code> arrays element-wise and stores
+	 * the result in <code>target</code>.  The sum is accumulated in
+	 * double precision.
+	 *
+	 * @param target will receive the result
+	 * @param val1 first array
+	 * @param val2 second array
+	 * @return sum of the element-wise multiplication of first and second
+	 * array
+	 */
+	public static double multiply(float[] target, float[] val1, float[] val2){
+		return Parallel.sumRows(val1.length, 1, (from, to) -> {
+			double sum = 0.0;
+			for(int i=from; i<to; i++){
+				target[i] = val1[i] * val2[i];
+				sum += target[i];
+			}
+			return sum;
+		});
 	}
 	
 	/**
 	 * Updates the display showing the input values (the image, the SI-pattern
-	 * or the multiplication).
+	 * or the multiplication) of the shown frame.
 	 */
 	public void updateValueDisplay(){
-		switch(valueMode){
-		case SI:
-			inValueDisp.setValues(size, valSIP, null);
-			break;
-		case IMAGE:
-			inValueDisp.setValues(size, valImg, null);
-			break;
-		case MUL:
-			inValueDisp.setValues(size, valMul, null);
-			break;
-		}
-		repaint();
+		if(frame == null) return;
+		Settings settings = frame.settings;
+		if(settings.singlePrecision)
+			inValueDisp.setValues(settings.width, settings.height, frame.getInputArrayFloat());
+		else
+			inValueDisp.setValues(settings.width, settings.height, frame.getInputArray());
 	}
 	
 	/**
-	 * Updates the display for the transform result.
+	 * Updates the display for the transform result of the shown frame.
 	 */
 	public void updateTrafoDisplay(){
-		switch(trafoMode.getSelectedIndex()){
-		case TRAFOMODE_DHT:
-			outValueDisp.setValues(size, trafo.getRealArray());
-			break;
-		case TRAFOMODE_FFT_ABS:
-			outValueDisp.setValues(size, trafo.getAbsArray());
-			break;
-		case TRAFOMODE_FFT_RE:
-			outValueDisp.setValues(size, trafo.getRealArray());
-			break;
-		case TRAFOMODE_FFT_IM:
-			outValueDisp.setValues(size, trafo.getImagArray());
-			break;
-		case TRAFOMODE_FFT_PHASE:
-			outValueDisp.setValues(size, trafo.getPhaseArray());
-			break;
-		}
-		repaint();
+		if(frame == null) return;
+		Settings settings = frame.settings;
+		if(settings.singlePrecision)
+			outValueDisp.setValues(settings.width, settings.height, frame.getTrafoArrayFloat());
+		else
+			outValueDisp.setValues(settings.width, settings.height, frame.getTrafoArray());
 	}
 	
 	/**
 	 * Calculates the SI-pattern values.  The parameters will be read from
-	 * the GUI input elements.	 */
+	 * the GUI input elements.  In the image mode, the multiplication
+	 * will be shown.
+	 */
 	protected void calculateValues(){
 		if(valueMode == ValueMode.IMAGE){
-			if(valMul == null) valueMode = ValueMode.SI;
+			if(!hasImage()) valueMode = ValueMode.SI;
 			else valueMode = ValueMode.MUL;
 		}
-		lblSize.setText(String.format(locale, "size: %d", size));
-		valSIP = Spass.createSIPattern(size, angle.getNumber(), phase.getNumber(), wvlen.getNumber());
-		if(valImg != null){
-			updateMultiplication();
+		recompute();
+	}
+	
+	/**
+	 * Requests the calculation of a new frame with the actual settings of
+	 * the GUI.  The frame will be shown, when it is ready.
+	 */
+	protected void recompute(){
+		refineTimer.stop();
+		recomputer.setMaxLatency(Recomputer.MAX_LATENCY);
+		recomputer.submit(new Settings(width, height, angle.getNumber(), phase.getNumber(), wvlen.getNumber(),
+				valueMode, trafoMode.getSelectedIndex(), singlePrecision, valImg, valImgFloat, 1));
+	}
+	
+	/**
+	 * Requests the calculation of a preview, downsampled by
+	 * <code>PREVIEW_FACTOR</code>, and the calculation in full size after
+	 * <code>REFINE_DELAY</code>.  While previews are requested, a frame
+	 * is shown at least <code>animFPS</code> times per second.
+	 * If the size can not be downsampled, the full size is calculated.
+	 */
+	protected void recomputePreview(){
+		int f = PREVIEW_FACTOR;
+		if(width % (2*f) != 0 || height % (2*f) != 0 || Math.min(width, height)/f < MINSIZE){
+			recompute();
+			return;
 		}
-		transform();
+		if(hasImage() && previewSource != (singlePrecision ? valImgFloat : valImg)){
+			if(singlePrecision){
+				previewImg = null;
+				previewImgFloat = downsample(valImgFloat, width, height, f);
+				previewSource = valImgFloat;
+			}
+			else{
+				previewImgFloat = null;
+				previewImg = downsample(valImg, width, height, f);
+				previewSource = valImg;
+			}
+		}
+		double a = angle.getNumber();
+		recomputer.setMaxLatency(1000/animFPS);
+		recomputer.submit(new Settings(width/f, height/f, a, toPreviewPhase(a, phase.getNumber(), f), wvlen.getNumber()/f,
+				valueMode, trafoMode.getSelectedIndex(), singlePrecision,
+				hasImage() ? previewImg : null, hasImage() ? previewImgFloat : null, f));
+		refineTimer.restart();
+	}
+	
+	/**
+	 * Calculates a frame: the SI-pattern, the multiplication with the
+	 * image, the transform, and the array of the transform to display.
+	 * Runs in the background, so it must not use the GUI.  A frame, which
+	 * is not returned (cancelled or failed), is released for reuse.
+	 * @param settings settings of the GUI
+	 * @param cancelled tells, whether the frame is no longer needed
+	 * @return calculated frame; or <code>null</code> if cancelled
+	 */
+	protected Frame calculateFrame(Settings settings, BooleanSupplier cancelled){
+		Frame f = takeFrame();
+		try{
+			if(calculateFrame(f, settings, cancelled)) return f;
+		}
+		catch(RuntimeException e){
+			releaseFrame(f);
+			throw e;
+		}
+		releaseFrame(f);
+		return null;
+	}
+	
+	/**
+	 * Calculates the values of a frame (see
+	 * <code>calculateFrame(Settings, BooleanSupplier)</code>).
+	 * @param f frame to calculate
+	 * @param settings settings of the GUI
+	 * @param cancelled tells, whether the frame is no longer needed
+	 * @return <code>true</code> if calculated; <code>false</code> if
+	 * cancelled
+	 */
+	protected boolean calculateFrame(Frame f, Settings settings, BooleanSupplier cancelled){
+		f.settings = settings;
+		int w = settings.width, h = settings.height;
+		f.sumMul = Double.NaN;
+		if(settings.singlePrecision){
+			f.valSIPFloat = createSIPatternFloat(Trafo.reuse(f.valSIPFloat, w*h), w, h,
+					settings.angle, settings.phase, settings.wvlen);
+			if(settings.hasImage() && !cancelled.getAsBoolean()){
+				f.valMulFloat = Trafo.reuse(f.valMulFloat, w*h);
+				f.sumMul = multiply(f.valMulFloat, settings.valImgFloat, f.valSIPFloat);
+			}
+		}
+		else{
+			f.valSIP = createSIPattern(Trafo.reuse(f.valSIP, w*h), w, h,
+					settings.angle, settings.phase, settings.wvlen);
+			if(settings.hasImage() && !cancelled.getAsBoolean()){
+				f.valMul = Trafo.reuse(f.valMul, w*h);
+				f.sumMul = multiply(f.valMul, settings.valImg, f.valSIP);
+			}
+		}
+		if(cancelled.getAsBoolean()) return false;
+		Mode mode = settings.trafoMode == TRAFOMODE_DHT ? Mode.DHT : Mode.FFT;
+		if(updateSpectrum(f, mode)){
+			// calculated without transform
+		}
+		else if(settings.singlePrecision){
+			f.trafo.transform(f.getInputArrayFloat(), w, h, mode);
+		}
+		else{
+			f.trafo.transform(f.getInputArray(), w, h, mode);
+		}
+		if(cancelled.getAsBoolean()) return false;
+		// the derived arrays are calculated here, not on the GUI:
+		if(settings.singlePrecision) f.getTrafoArrayFloat();
+		else f.getTrafoArray();
+		return true;
+	}
+	
+	/**
+	 * Calculates the transform of a SI-pattern or a multiplication in double
+	 * precision with the <code>PatternSpectrum</code>, if this needs no
+	 * transform (like if only the phase has changed).
+	 * @param f frame with the settings, for the transform
+	 * @param mode kind of transform
+	 * @return <code>true</code> if calculated
+	 */
+	protected boolean updateSpectrum(Frame f, Mode mode){
+		Settings settings = f.settings;
+		if(settings.singlePrecision || settings.valueMode == ValueMode.IMAGE) return false;
+		PatternSpectrum ps = settings.scale > 1 ? previewSpectrum : spectrum;
+		double[] image = settings.valueMode == ValueMode.MUL ? settings.valImg : null;
+		if(!ps.update(image, settings.width, settings.height, settings.angle, settings.wvlen)) return false;
+		ps.apply(settings.phase, f.trafo, mode);
+		return true;
+	}
+	
+	/**
+	 * Shows a calculated frame in the displays.  The frame shown before
+	 * can then be reused.  Runs on the event dispatch thread.
+	 * @param f frame to show
+	 */
+	protected void showFrame(Frame f){
+		Frame shown = frame;
+		Settings settings = f.settings;
+		Mask m = outValueDisp.getMask();
+		if(mask.isSelected() && (m == null || m.getWidth() != settings.width || m.getHeight() != settings.height)){
+			// applied with the new values:
+			outValueDisp.setMask(Mask.get(settings.width, settings.height, Double.parseDouble(maskRange.getText())));
+		}
+		frame = f;
+		trafo = f.trafo;
+		if(settings.scale > 1)
+			lblSize.setText(String.format(locale, "size: %dx%d (preview)", settings.width, settings.height));
+		else if(settings.hasImage() && (imageWidth != settings.width || imageHeight != settings.height))
+			lblSize.setText(String.format(locale, "size: %dx%d (padded from %dx%d)", settings.width, settings.height,
+					imageWidth, imageHeight));
+		else
+			lblSize.setText(String.format(locale, "size: %dx%d", settings.width, settings.height));
+		lblSumMul.setText(settings.hasImage() ? String.format(locale, "sum: %.3f", f.sumMul) : "sum: ?");
 		updateValueDisplay();
 		updateTrafoDisplay();
-		repaint();
+		if(shown != null && shown != fitFrame) releaseFrame(shown);
+		if(findPending && settings.scale == 1){
+			findPending = false;
+			btnFindSIP.setEnabled(true);
+			findSIP();
+		}
+	}
+	
+	/**
+	 * Shows, that the calculation of a frame failed.  The shown frame
+	 * stays, and a pending search of the SI-parameters is dropped.  Runs
+	 * on the event dispatch thread.
+	 * @param e cause of the failure
+	 */
+	protected void showFailure(RuntimeException e){
+		System.err.println("Calculation failed: "+e);
+		lblSize.setText("calculation failed: "+e.getMessage());
+		if(findPending){
+			findPending = false;
+			btnFindSIP.setEnabled(true);
+		}
+	}
+	
+	/**
+	 * Takes a frame for reuse, or creates a new one.
+	 */
+	protected Frame takeFrame(){
+		synchronized(freeFrames){
+			Frame f = freeFrames.poll();
+			return f != null ? f : new Frame(plans);
+		}
 	}
 	
-	protected void transform(){
-		if(trafoMode.getSelectedIndex() == TRAFOMODE_DHT){
-			trafo.transform(getInputArray(), size, Mode.DHT);
+	/**
+	 * Returns a frame, which is no longer shown, for reuse.
+	 */
+	protected void releaseFrame(Frame f){
+		synchronized(freeFrames){
+			freeFrames.push(f);
+		}
+	}
+	
+	/**
+	 * Switches between double and single precision for the values and
+	 * the transform.  A loaded image will be converted, the other values
+	 * will be calculated again.
+	 * @param singlePrecision <code>true</code> to use <code>float</code>s
+	 */
+	public void setSinglePrecision(boolean singlePrecision){
+		if(this.singlePrecision == singlePrecision) return;
+		this.singlePrecision = singlePrecision;
+		if(singlePrecision && valImg != null){
+			valImgFloat = new float[valImg.length];
+			for(int i=0; i<valImg.length; i++) valImgFloat[i] = (float) valImg[i];
+		}
+		else if(!singlePrecision && valImgFloat != null){
+			valImg = new double[valImgFloat.length];
+			for(int i=0; i<valImgFloat.length; i++) valImg[i] = valImgFloat[i];
+		}
+		if(singlePrecision){
+			valImg = null;
 		}
 		else{
-			trafo.transform(getInputArray(), size, Mode.FFT);
+			valImgFloat = null;
 		}
-		
+		calculateValues();
+	}
+	
+	/**
+	 * Checks if an image has been loaded.
+	 * @return <code>true</code> if there are image values
+	 */
+	protected boolean hasImage(){
+		return valImg != null || valImgFloat != null;
 	}
 		
 	/**
@@ -435,6 +821,14 @@ implements ActionListener,
 	 * SI parameters.  The values will be stored in an one-dimensional array,
 	 * index of each element calculated with
 	 * <code>i = y * size + x</code>.
+	 * <p>
+	 * The pattern is rotated around the center <code>(xm, ym)</code>, so
+	 * its value is
+	 * <code>(1 + sin(kx*(x-xm) + ky*(y-ym) + c)) / 2</code> with
+	 * <code>kx = k*cos(angle)</code>, <code>ky = k*sin(angle)</code>,
+	 * <code>c = k*(xm+phase)</code> and <code>k = 2*pi/wavelength</code>.
+	 * The sine of the sum is separated into tables for the columns and
+	 * the rows, so each pixel needs only two multiplications and additions.
 	 * 
 	 * @param size - size of the quadratic pattern in one dimension
 	 * @param angle - angle of the SI pattern (in radians)
@@ -443,18 +837,144 @@ implements ActionListener,
 	 * @return array containing the values of the SI pattern
 	 */
 	public static double[] createSIPattern(int size, double angle, double phase, double wavelength){
-		double[] pattern = new double[size*size];
-		int xm = size / 2, ym = size / 2;
-		for(int y=0; y<size; y++){
-			for(int x=0; x<size; x++){
-				double r = Math.sqrt( (x-xm)*(x-xm) + (y-ym)*(y-ym) );
-				double x2 = xm + r * Math.cos(Math.atan2(y-ym, x-xm) - angle);
-				pattern[y*size+x] = (1.0 + Math.sin(2.0 * Math.PI * (x2+phase) / wavelength)) / 2.0;
+		return createSIPattern(size, size, angle, phase, wavelength);
+	}
+	
+	/**
+	 * Generates a rectangular SI pattern.  It is rotated around the center
+	 * <code>(xm, ym) = (width/2, height/2)</code>, otherwise it is like
+	 * the quadratic pattern of <code>createSIPattern</code>.
+	 * 
+	 * @param width - number of columns of the pattern
+	 * @param height - number of rows of the pattern
+	 * @param angle - angle of the SI pattern (in radians)
+	 * @param phase - phase of the SI pattern (in pixels)
+	 * @param wavelength - wavelength of the SI pattern (in pixels)
+	 * @return array containing the values of the SI pattern
+	 */
+	public static double[] createSIPattern(int width, int height, double angle, double phase, double wavelength){
+		return createSIPattern(new double[width*height], width, height, angle, phase, wavelength);
+	}
+	
+	/**
+	 * Generates a rectangular SI pattern into the given array.
+	 * See <code>createSIPattern(int, int, double, double, double)</code>.
+	 * 
+	 * @param pattern - array of at least <code>width*height</code> values
+	 * @param width - number of columns of the pattern
+	 * @param height - number of rows of the pattern
+	 * @param angle - angle of the SI pattern (in radians)
+	 * @param phase - phase of the SI pattern (in pixels)
+	 * @param wavelength - wavelength of the SI pattern (in pixels)
+	 * @return <code>pattern</code>
+	 */
+	public static double[] createSIPattern(double[] pattern, int width, int height, double angle, double phase, double wavelength){
+		double[] tables = createSIPatternTables(width, height, angle, phase, wavelength);
+		Parallel.forRows(height, width, (from, to) -> {
+			for(int y=from; y<to; y++){
+				double cosY = tables[2*width + y];
+				double sinY = tables[2*width + height + y];
+				int offset = y*width;
+				for(int x=0; x<width; x++){
+					pattern[offset+x] = 0.5 + tables[x]*cosY + tables[width + x]*sinY;
+				}
 			}
-		}
+		});
 		return pattern;
 	}
 	
+	/**
+	 * Generates a quadratic SI pattern in single precision.
+	 * See <code>createSIPattern</code>.
+	 * 
+	 * @param size - size of the quadratic pattern in one dimension
+	 * @param angle - angle of the SI pattern (in radians)
+	 * @param phase - phase of the SI pattern (in pixels)
+	 * @param wavelength - wavelength of the SI pattern (in pixels)
+	 * @return array containing the values of the SI pattern
+	 */
+	public static float[] createSIPatternFloat(int size, double angle, double phase, double wavelength){
+		return createSIPatternFloat(size, size, angle, phase, wavelength);
+	}
+	
+	/**
+	 * Generates a rectangular SI pattern in single precision.
+	 * See <code>createSIPattern(int, int, double, double, double)</code>.
+	 * 
+	 * @param width - number of columns of the pattern
+	 * @param height - number of rows of the pattern
+	 * @param angle - angle of the SI pattern (in radians)
+	 * @param phase - phase of the SI pattern (in pixels)
+	 * @param wavelength - wavelength of the SI pattern (in pixels)
+	 * @return array containing the values of the SI pattern
+	 */
+	public static float[] createSIPatternFloat(int width, int height, double angle, double phase, double wavelength){
+		return createSIPatternFloat(new float[width*height], width, height, angle, phase, wavelength);
+	}
+	
+	/**
+	 * Generates a rectangular SI pattern in single precision into the
+	 * given array.  See <code>createSIPattern(int, int, double, double,
+	 * double)</code>.
+	 * 
+	 * @param pattern - array of at least <code>width*height</code> values
+	 * @param width - number of columns of the pattern
+	 * @param height - number of rows of the pattern
+	 * @param angle - angle of the SI pattern (in radians)
+	 * @param phase - phase of the SI pattern (in pixels)
+	 * @param wavelength - wavelength of the SI pattern (in pixels)
+	 * @return <code>pattern</code>
+	 */
+	public static float[] createSIPatternFloat(float[] pattern, int width, int height, double angle, double phase, double wavelength){
+		double[] tables = createSIPatternTables(width, height, angle, phase, wavelength);
+		Parallel.forRows(height, width, (from, to) -> {
+			for(int y=from; y<to; y++){
+				double cosY = tables[2*width + y];
+				double sinY = tables[2*width + height + y];
+				int offset = y*width;
+				for(int x=0; x<width; x++){
+					pattern[offset+x] = (float) (0.5 + tables[x]*cosY + tables[width + x]*sinY);
+				}
+			}
+		});
+		return pattern;
+	}
+	
+	/**
+	 * Calculates the separable tables for <code>createSIPattern</code>,
+	 * stored one after another in one array:
+	 * <code>sin(a(x))</code>, <code>cos(a(x))</code> for the columns and
+	 * <code>cos(b(y))/2</code>, <code>sin(b(y))/2</code> for the rows, with
+	 * <code>a(x) = kx*(x-xm) + c</code> and <code>b(y) = ky*(y-ym)</code>.
+	 * 
+	 * @param width - number of columns of the pattern
+	 * @param height - number of rows of the pattern
+	 * @param angle - angle of the SI pattern (in radians)
+	 * @param phase - phase of the SI pattern (in pixels)
+	 * @param wavelength - wavelength of the SI pattern (in pixels)
+	 * @return array of the four tables, the column tables of length
+	 * <code>width</code>, the row tables of length <code>height</code>
+	 */
+	protected static double[] createSIPatternTables(int width, int height, double angle, double phase, double wavelength){
+		double[] tables = new double[2*width + 2*height];
+		int xm = width / 2, ym = height / 2;
+		double k = 2.0 * Math.PI / wavelength;
+		double kx = k * Math.cos(angle);
+		double ky = k * Math.sin(angle);
+		double c = k * (xm + phase);
+		for(int x=0; x<width; x++){
+			double a = kx * (x-xm) + c;
+			tables[x] = Math.sin(a);
+			tables[width + x] = Math.cos(a);
+		}
+		for(int y=0; y<height; y++){
+			double b = ky * (y-ym);
+			tables[2*width + y] = Math.cos(b) / 2.0;
+			tables[2*width + height + y] = Math.sin(b) / 2.0;
+		}
+		return tables;
+	}
+	
 	/**
 	 * Creates a boolean array for the purpose of masking the transform
 	 * array.
@@ -467,9 +987,21 @@ implements ActionListener,
 	 * @return boolean array
 	 */
 	public static boolean[] createMask(int size){
-		boolean[] mask = new boolean[size*size];
+		return createMask(size, size);
+	}
+	
+	/**
+	 * Creates a boolean array for masking the point <code>0, 0</code> of
+	 * a rectangular transform array.  See <code>createMask(int)</code>.
+	 *  
+	 * @param width number of columns of the array
+	 * @param height number of rows of the array
+	 * @return boolean array
+	 */
+	public static boolean[] createMask(int width, int height){
+		boolean[] mask = new boolean[width*height];
 		mask[0] = false;
-		for(int i=1; i<size*size; i++){
+		for(int i=1; i<width*height; i++){
 			mask[i] = true;
 		}
 		return mask;
@@ -485,24 +1017,98 @@ implements ActionListener,
 	 * @return quadratic boolean array
 	 */
 	public static boolean[] createMask(int size, double r){
-		boolean[] mask = new boolean[size*size];
-		for(int row=0; row<size; row++){
-			for(int col=0; col<size; col++){
-				int i = row*size+col;
-				if( Point.distance(col, row, 0, 0) <= r ||
-					Point.distance(col, row, size-1, 0) <= r ||
-					Point.distance(col, row, 0, size-1) <= r ||
-					Point.distance(col, row, size-1, size-1) <= r )
-				{
-					mask[i] = false;
+		return createMask(size, size, r);
+	}
+	
+	/**
+	 * Creates a boolean array for masking a rectangular transform array.
+	 * All values within the distance of <code>r</code> (in pixels) from
+	 * the origin (0, 0) will be masked.
+	 *  
+	 * @param width number of columns of the array
+	 * @param height number of rows of the array
+	 * @param r radius of sector mask
+	 * @return boolean array
+	 * @see Mask#get(int, int, double)
+	 */
+	public static boolean[] createMask(int width, int height, double r){
+		return Mask.get(width, height, r).toArray();
+	}
+
+	/**
+	 * Converts the phase of a SI pattern to the phase of the pattern
+	 * downsampled by <code>factor</code> (with the wavelength divided by
+	 * <code>factor</code>), so that the pattern is sampled at the centers
+	 * of the downsampled pixels.  Width and height of the pattern have to
+	 * be multiples of <code>2*factor</code>.
+	 * 
+	 * @param angle - angle of the SI pattern (in radians)
+	 * @param phase - phase of the SI pattern (in pixels)
+	 * @param factor - factor of downsampling
+	 * @return phase of the downsampled SI pattern (in downsampled pixels)
+	 */
+	public static double toPreviewPhase(double angle, double phase, int factor){
+		return (phase + 0.5*(factor-1)*(Math.cos(angle) + Math.sin(angle))) / factor;
+	}
+	
+	/**
+	 * Downsamples an array by averaging blocks of <code>factor*factor</code>
+	 * values.  Remaining rows and columns at the border are ignored.
+	 * 
+	 * @param values values (row by row)
+	 * @param width number of columns of the values
+	 * @param height number of rows of the values
+	 * @param factor size of the blocks
+	 * @return array of <code>(width/factor)*(height/factor)</code> values
+	 */
+	public static double[] downsample(double[] values, int width, int height, int factor){
+		int w = width/factor, h = height/factor;
+		double[] result = new double[w*h];
+		double norm = 1.0/(factor*factor);
+		Parallel.forRows(h, width*factor, (from, to) -> {
+			for(int row=from; row<to; row++){
+				for(int y=row*factor; y<(row+1)*factor; y++){
+					for(int col=0; col<w; col++){
+						double sum = 0.0;
+						int offset = y*width + col*factor;
+						for(int x=0; x<factor; x++) sum += values[offset + x];
+						result[row*w + col] += sum*norm;
+					}
 				}
-				else
-					mask[i] = true;
 			}
-		}
-		return mask;
+		});
+		return result;
 	}
-
+	
+	/**
+	 * Downsamples an array in single precision.
+	 * See <code>downsample(double[], int, int, int)</code>.
+	 * 
+	 * @param values values (row by row)
+	 * @param width number of columns of the values
+	 * @param height number of rows of the values
+	 * @param factor size of the blocks
+	 * @return array of <code>(width/factor)*(height/factor)</code> values
+	 */
+	public static float[] downsample(float[] values, int width, int height, int factor){
+		int w = width/factor, h = height/factor;
+		float[] result = new float[w*h];
+		float norm = 1.0f/(factor*factor);
+		Parallel.forRows(h, width*factor, (from, to) -> {
+			for(int row=from; row<to; row++){
+				for(int y=row*factor; y<(row+1)*factor; y++){
+					for(int col=0; col<w; col++){
+						float sum = 0.0f;
+						int offset = y*width + col*factor;
+						for(int x=0; x<factor; x++) sum += values[offset + x];
+						result[row*w + col] += sum*norm;
+					}
+				}
+			}
+		});
+		return result;
+	}
+	
 	/**
 	 * Handles <code>ActionEvent</code>s from the GUI.
 	 */
@@ -511,72 +1117,80 @@ implements ActionListener,
 		if(e.getSource() == timer){
 			repaint();
 		}
+		else if(e.getSource() == refineTimer){
+			recompute();
+		}
 		else if(e.getSource() == trafoMode){
-			transform();
-			updateTrafoDisplay();
-			repaint();
+			recompute();
 		}
 		else if(e.getSource() == mask){
 			if( ((JCheckBox) e.getSource()).isSelected() ){
 				double r = Double.parseDouble(maskRange.getText());
-				outValueDisp.setMask(createMask(size, r));
+				outValueDisp.setMask(Mask.get(getShownWidth(), getShownHeight(), r));
 			}
 			else{
-				outValueDisp.setMask(null);
+				outValueDisp.setMask((Mask) null);
 			}
-			repaint();
 		}
 		else if(e.getSource() == maskRange){
 			if( ((JCheckBox) mask).isSelected() ){
 				double r = Double.parseDouble(maskRange.getText());
-				outValueDisp.setMask(createMask(size, r));
-				repaint();
+				outValueDisp.setMask(Mask.get(getShownWidth(), getShownHeight(), r));
 			}
 		}
 		else if(e.getSource() == log){
 			outValueDisp.setLog(log.isSelected());
 			updateTrafoDisplay();
 		}
+		else if(e.getSource() == single){
+			setSinglePrecision(single.isSelected());
+		}
 		else if(e.getSource() == btnFindSIP){
 			findSIP();
 		}
 	}
 	
+	/**
+	 * Estimates the SI-parameters from the largest first-order peak of the
+	 * actual transform, ignoring the values masked in the display.
+	 * @return SI-parameters of the peak
+	 */
 	protected SIParams estimateSIP(){
-		boolean[] searchMask = outValueDisp.getMask();
-		
-		int iMax = findMaxInFirstHalf(trafo.getAbsArray(), searchMask);	
-		
-		DoubleFFT_2D transformerFFT = new DoubleFFT_2D(size, size);
-		double[] complex = new double[size*size*2];
-		double[] inputValues = getInputArray();
-		for(int i=0; i<size*size; i++){
-			complex[i*2] = inputValues[i];
-			complex[i*2+1] = 0.0;
-		}
-		transformerFFT.complexForward(complex);
-		
-		SIParams params = trafo.getSIParams(iMax);
-		System.out.println(params);
-		
-		System.out.println("max: "+iMax+" (coords "+(iMax % size)+", "+(iMax / size)+
-		") complex: "+trafo.getReal(iMax)+", "+trafo.getImag(iMax)+"i");
-		
-		return params;
+		SIPEstimate estimate = PeakFinder.estimate(trafo, outValueDisp.getMask());
+		System.out.println(estimate);
+		return estimate.getParams();
 	}
 	
 	/**
 	 * Finds SI-parameters automatically.
-	 * So far it just locates the first-order maximum in the spectrum.
-	 * It uses the actual trafo- and mask-setting.
+	 * It locates the first-order maximum in the spectrum, using the actual
+	 * trafo- and mask-setting.  If an image is loaded, the parameters are
+	 * then fitted to the image by the <code>SIPOptimizer</code> (see
+	 * <code>fitSIP</code>).
+	 * While a preview is shown, the full size is calculated first, and
+	 * the parameters are found, when it is shown (the button is disabled
+	 * until then).
 	 */
 	protected void findSIP(){
-		if(trafo.getMode() != Trafo.Mode.FFT) return;
+		if(trafo == null || trafo.getMode() != Trafo.Mode.FFT) return;
+		if(frame.settings.scale > 1){
+			findPending = true;
+			btnFindSIP.setEnabled(false);
+			recompute();
+			return;
+		}
 		
 		SIParams params = estimateSIP();
 		
-		// TODO: fit the SI-pattern
-		
+		if(hasImage()) fitSIP(params);
+		else setSIP(params);
+	}
+	
+	/**
+	 * Sets the SI-parameters in the GUI, and calculates the values.
+	 * @param params new SI-parameters
+	 */
+	protected void setSIP(SIParams params){
 		angle.setNumber(params.angle);
 		phase.setNumber(params.phase);
 		wvlen.setNumber(params.wvlen);
@@ -586,20 +1200,62 @@ implements ActionListener,
 	}
 	
 	/**
-	 * Returns the array for the actual shown values.
-	 * @return array for the actual shown values
+	 * Fits the SI-parameters to the loaded image in the background, and
+	 * sets them, when the fit is finished.  The button to find the
+	 * parameters is disabled until then.  If the spectrum of the shown
+	 * frame is used, the frame is kept from reuse while the fit runs.
+	 * @param seed SI-parameters to start with
 	 */
-	protected double[] getInputArray(){
-		switch(valueMode){
-		case SI:
-			return valSIP;
-		case IMAGE:
-			return valImg;
-		case MUL:
-			return valMul;
-		default:
-			return null;
-		}
+	protected void fitSIP(SIParams seed){
+		double[] image = valImg;
+		float[] imageFloat = valImgFloat;
+		int w = width, h = height;
+		// the spectrum can be used, if it is the FFT of the image:
+		boolean imageSpectrum = frame.settings.valueMode == ValueMode.IMAGE && frame.settings.valImg == valImg
+				&& !trafo.isSinglePrecision();
+		Trafo spectrum = imageSpectrum ? trafo : null;
+		fitFrame = imageSpectrum ? frame : null;
+		btnFindSIP.setEnabled(false);
+		new SwingWorker<SIParams, Void>(){
+			@Override
+			protected SIParams doInBackground(){
+				double[] values = image;
+				if(values == null){
+					values = new double[imageFloat.length];
+					for(int i=0; i<values.length; i++) values[i] = imageFloat[i];
+				}
+				SumMulEvaluator evaluator = new SumMulEvaluator(values, w, h, spectrum);
+				SIPOptimizer optimizer = new SIPOptimizer(evaluator);
+				return optimizer.optimize(seed);
+			}
+			
+			@Override
+			protected void done(){
+				if(fitFrame != null && fitFrame != frame) releaseFrame(fitFrame);
+				fitFrame = null;
+				btnFindSIP.setEnabled(true);
+				try {
+					// the fit is dropped, if another image was loaded meanwhile:
+					if(image == valImg && imageFloat == valImgFloat) setSIP(get());
+				} catch (InterruptedException | ExecutionException e) {
+					System.err.println("Fitting of SI-parameters failed: "+e);
+				}
+			}
+		}.execute();
+	}
+	
+	/**
+	 * Width of the shown frame (or of the settings, if there is none yet).
+	 */
+	protected int getShownWidth(){
+		return frame != null ? frame.settings.width : width;
+	}
+	
+	/**
+	 * Height of the shown frame (or of the settings, if there is none yet).
+	 */
+	protected int getShownHeight(){
+		return frame != null ? frame.settings.height : height;
 	}
 	
 	/**
@@ -612,14 +1268,43 @@ implements ActionListener,
 	 * @return index of the largest value
 	 */
 	public static int findMaxInFirstHalf(double[] trafos, boolean[] mask){
+		return findMaxInFirstHalf(trafos, Mask.of(trafos.length, 1, mask));
+	}
+	
+	/**
+	 * Finds the largest value in the first half of the array
+	 * <code>trafos</code>, searching only the spans of valid values of the
+	 * optional <code>mask</code>.
+	 * 
+	 * @param trafos where to search for the largest value
+	 * @param mask determines which values are valid; or <code>null</code>
+	 * @return index of the largest value
+	 */
+	public static int findMaxInFirstHalf(double[] trafos, Mask mask){
 		double max = Double.MIN_VALUE;
 		int iMax = 0;
-		for(int i=0; i<trafos.length/2; i++){
-			if(trafos[i] > max)
-				if(mask == null || mask[i]){
+		int half = trafos.length/2;
+		if(mask == null){
+			for(int i=0; i<half; i++){
+				if(trafos[i] > max){
 					max = trafos[i];
 					iMax = i;
 				}
+			}
+			return iMax;
+		}
+		mask.checkLength(trafos.length);
+		int width = mask.getWidth();
+		for(int row=0; row*width<half; row++){
+			for(int s=mask.firstSpan(row); s<mask.endSpan(row); s++){
+				int end = Math.min(row*width + mask.getEnd(s), half);
+				for(int i=row*width + mask.getStart(s); i<end; i++){
+					if(trafos[i] > max){
+						max = trafos[i];
+						iMax = i;
+					}
+				}
+			}
 		}
 		return iMax;
 	}
@@ -631,7 +1316,8 @@ implements ActionListener,
 	 */
 	@Override
 	public void numberChangedByUserInput(NumberEvent e){
-		calculateValues();
+		if(valueMode == ValueMode.IMAGE) valueMode = ValueMode.MUL;
+		recomputePreview();
 	}
 
 	@Override
@@ -642,9 +1328,10 @@ implements ActionListener,
 		if(e.getSource() == outValueDisp || e.getSource() == inValueDisp){
 			Point p = outValueDisp.getCoordinatesOf(e.getX(), e.getY());
 			String textV = "?", textT = "?";
-			if(p != null){
+			if(p != null && frame != null){
 				int index = outValueDisp.getIndexOf(e.getX(), e.getY());
-				textV = String.format(locale, "(%d, %d) value: %.3f", p.x, p.y, valSIP[index]);
+				double value = frame.settings.singlePrecision ? frame.valSIPFloat[index] : frame.valSIP[index];
+				textV = String.format(locale, "(%d, %d) value: %.3f", p.x, p.y, value);
 				textT = String.format(locale, "(%d, %d) trafo: %s", p.x, p.y, trafo.toString(index));
 			}
 			lblCursorValue.setText(textV);
@@ -663,12 +1350,15 @@ implements ActionListener,
 		
 		switch(e.getKeyChar()){
 		case '*':
-			size *= 2;
+			if(hasImage()) break; // the size is given by the image
+			width *= 2;
+			height *= 2;
 			calculateValues();
 			break;
 		case '/':
-			if(size > MINSIZE){
-				size /= 2;
+			if(!hasImage() && Math.min(width, height) > MINSIZE){
+				width /= 2;
+				height /= 2;
 				calculateValues();
 			}
 			break;
@@ -690,12 +1380,10 @@ implements ActionListener,
 	 * @param newMode new mode for the value display
 	 */
 	public void changeValueMode(ValueMode newMode){
-		if(newMode == ValueMode.IMAGE && valImg == null) return;
-		if(newMode == ValueMode.MUL && valImg == null) return;
+		if(newMode == ValueMode.IMAGE && !hasImage()) return;
+		if(newMode == ValueMode.MUL && !hasImage()) return;
 		valueMode = newMode;
-		updateValueDisplay();
-		transform();
-		updateTrafoDisplay();
+		recompute();
 	}
 
 	@Override
@@ -0,0 +1,327 @@
+package spass;
+
+/**
+ * Calculates the pixelsum of the multiplication of an image with an
+ * SI-pattern (<code>sumMul</code>), without creating the pattern or the
+ * multiplication.
+ * <p>
+ * The SI-pattern of <code>createSIPattern</code> is
+ * <code>(1 + sin(kx*x + ky*y + c)) / 2</code>, so the sum is
+ * <pre>
+ *   sumMul = S/2 + Im(exp(i*c) * G(kx, ky)) / 2
+ * </pre>
+ * with the sum <code>S</code> of all image values and the Fourier
+ * coefficient <code>G(kx, ky) = sum(img(x, y) * exp(i*(kx*x + ky*y)))</code>
+ * of the image at the pattern frequency.
+ * <code>G</code> is calculated with a single-frequency DFT in O(N), which
+ * is separated into rows and columns.  If the frequency lies on the grid
+ * of the FFT and the spectrum of the image is given, <code>G</code> is
+ * taken directly from the spectrum in O(1).
+ * The phase enters only into <code>c</code>, so the last coefficient is
+ * cached and any number of phases can be tested in O(1).
+ * <p>
+ * Images may be rectangular; the SI-pattern then has the center
+ * <code>(width/2, height/2)</code>.
+ * <p>
+ * The evaluator is thread-safe.
+ *
+ * @author Oliver Eickmeyer
+ */
+public class SumMulEvaluator {
+	protected final double[] image;
+	protected final int width;
+	protected final int height;
+	protected final double imageSum;
+	protected final Trafo spectrum;
+	protected volatile Coefficient cached;
+
+	/**
+	 * Fourier coefficient of the image at the frequency given by angle
+	 * and wavelength.
+	 */
+	protected static class Coefficient {
+		final double angle, wvlen, re, im;
+
+		Coefficient(double angle, double wvlen, double re, double im){
+			this.angle = angle;
+			this.wvlen = wvlen;
+			this.re = re;
+			this.im = im;
+		}
+	}
+
+	/**
+	 * Constructs an evaluator for the given image.
+	 * @param image quadratic array of image values
+	 * @param size size of the image in one dimension
+	 */
+	public SumMulEvaluator(double[] image, int size){
+		this(image, size, null);
+	}
+
+	/**
+	 * Constructs an evaluator for the given image, with its spectrum.
+	 * The spectrum must be the FFT of exactly this image; it is used for
+	 * frequencies on the grid of the FFT.  The evaluator does not change
+	 * the <code>Trafo</code>, but the <code>Trafo</code> must not be used
+	 * for other transforms while the evaluator is in use.
+	 * @param image quadratic array of image values
+	 * @param size size of the image in one dimension
+	 * @param spectrum FFT of the image; or <code>null</code>
+	 */
+	public SumMulEvaluator(double[] image, int size, Trafo spectrum){
+		this(image, size, size, spectrum);
+	}
+
+	/**
+	 * Constructs an evaluator for a rectangular image, with its spectrum
+	 * (see <code>SumMulEvaluator(double[], int, Trafo)</code>).
+	 * @param image array of <code>width*height</code> image values
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @param spectrum FFT of the image; or <code>null</code>
+	 */
+	public SumMulEvaluator(double[] image, int width, int height, Trafo spectrum){
+		this.image = image;
+		this.width = width;
+		this.height = height;
+		if(spectrum != null && (spectrum.getMode() != Trafo.Mode.FFT
+				|| spectrum.getWidth() != width || spectrum.getHeight() != height))
+			throw new IllegalArgumentException("spectrum must be the FFT of the image");
+		this.spectrum = spectrum;
+		this.imageSum = Parallel.sumRows(image.length, 1, (from, to) -> {
+			double sum = 0.0;
+			for(int i=from; i<to; i++) sum += image[i];
+			return sum;
+		});
+	}
+
+	/**
+	 * Calculates the pixelsum of the multiplication of the image with the
+	 * SI-pattern of the given parameters.
+	 * @param angle angle of the SI pattern (in radians)
+	 * @param phase phase of the SI pattern (in pixels)
+	 * @param wvlen wavelength of the SI pattern (in pixels)
+	 * @return pixelsum of the multiplication
+	 */
+	public double evaluate(double angle, double phase, double wvlen){
+		Coefficient g = getCoefficient(angle, wvlen);
+		double c = patternOffset(angle, phase, wvlen);
+		return 0.5*imageSum + 0.5*(Math.sin(c)*g.re + Math.cos(c)*g.im);
+	}
+
+	/**
+	 * Calculates the pixelsum of the multiplication of the image with the
+	 * SI-pattern of the given parameters.
+	 * @param params SI-parameters
+	 * @return pixelsum of the multiplication
+	 */
+	public double evaluate(SIParams params){
+		return evaluate(params.getAngle(), params.getPhase(), params.getWvlen());
+	}
+
+	/**
+	 * Finds the phase (in pixels), for which the pixelsum of the
+	 * multiplication is largest.  The phase is in the range from 0 to the
+	 * wavelength.
+	 * @param angle angle of the SI pattern (in radians)
+	 * @param wvlen wavelength of the SI pattern (in pixels)
+	 * @return best phase in pixels
+	 */
+	public double bestPhase(double angle, double wvlen){
+		Coefficient g = getCoefficient(angle, wvlen);
+		return bestPhase(g.re, g.im, angle, wvlen, width, height);
+	}
+	
+	/**
+	 * Calculates the phase (in pixels) of the SI-pattern, which fits best
+	 * to an image with the given coefficient <code>G</code> at the pattern
+	 * frequency.  The phase is in the range from 0 to the wavelength.
+	 * Note that the FFT uses <code>exp(-i...)</code>, so <code>G</code> is
+	 * the complex conjugate of the FFT value.
+	 * @param gRe real part of <code>G</code>
+	 * @param gIm imaginary part of <code>G</code>
+	 * @param angle angle of the SI pattern (in radians)
+	 * @param wvlen wavelength of the SI pattern (in pixels)
+	 * @param size size of the quadratic image in one dimension
+	 * @return best phase in pixels
+	 */
+	public static double bestPhase(double gRe, double gIm, double angle, double wvlen, int size){
+		return bestPhase(gRe, gIm, angle, wvlen, size, size);
+	}
+
+	/**
+	 * Calculates the best phase for a rectangular image, see
+	 * <code>bestPhase(double, double, double, double, int)</code>.
+	 * @param gRe real part of <code>G</code>
+	 * @param gIm imaginary part of <code>G</code>
+	 * @param angle angle of the SI pattern (in radians)
+	 * @param wvlen wavelength of the SI pattern (in pixels)
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @return best phase in pixels
+	 */
+	public static double bestPhase(double gRe, double gIm, double angle, double wvlen, int width, int height){
+		// maximum, if c + arg(G) = pi/2:
+		double c = Math.PI/2.0 - Math.atan2(gIm, gRe);
+		double phase = c - patternOffset(angle, 0.0, wvlen, width, height);
+		phase = phase / 2.0 / Math.PI * wvlen;
+		phase %= wvlen;
+		if(phase < 0.0) phase += wvlen;
+		return phase;
+	}
+
+	/**
+	 * Converts the phase of an SI-pattern of one image size into the phase
+	 * of the same pattern for another image size, with the same origin
+	 * (like an image and the image padded at the right and bottom
+	 * border).  The patterns differ only in their center.
+	 * @param angle angle of the SI pattern (in radians)
+	 * @param phase phase of the SI pattern (in pixels) for the first size
+	 * @param wvlen wavelength of the SI pattern (in pixels)
+	 * @param fromWidth width of the first image
+	 * @param fromHeight height of the first image
+	 * @param toWidth width of the second image
+	 * @param toHeight height of the second image
+	 * @return phase in pixels for the second size, in the range from 0 to
+	 * the wavelength
+	 */
+	public static double convertPhase(double angle, double phase, double wvlen,
+			int fromWidth, int fromHeight, int toWidth, int toHeight){
+		double c = patternOffset(angle, phase, wvlen, fromWidth, fromHeight);
+		phase = (c - patternOffset(angle, 0.0, wvlen, toWidth, toHeight)) / 2.0 / Math.PI * wvlen;
+		phase %= wvlen;
+		if(phase < 0.0) phase += wvlen;
+		return phase;
+	}
+
+	/**
+	 * Calculates the largest pixelsum of the multiplication over all
+	 * phases: <code>S/2 + |G|/2</code>.
+	 * @param angle angle of the SI pattern (in radians)
+	 * @param wvlen wavelength of the SI pattern (in pixels)
+	 * @return largest pixelsum for the given angle and wavelength
+	 */
+	public double maxOverPhase(double angle, double wvlen){
+		Coefficient g = getCoefficient(angle, wvlen);
+		return 0.5*imageSum + 0.5*Math.sqrt(g.re*g.re + g.im*g.im);
+	}
+
+	/**
+	 * Calculates the Fourier coefficient
+	 * <code>G = sum(img(x, y) * exp(i*(kx*x + ky*y)))</code>.
+	 * @param angle angle of the SI pattern (in radians)
+	 * @param wvlen wavelength of the SI pattern (in pixels)
+	 * @param result array of length 2, will receive real and imaginary
+	 * part
+	 */
+	public void coefficient(double angle, double wvlen, double[] result){
+		Coefficient g = getCoefficient(angle, wvlen);
+		result[0] = g.re;
+		result[1] = g.im;
+	}
+
+	/**
+	 * Returns the sum of all image values.
+	 * @return sum of the image
+	 */
+	public double getImageSum(){ return imageSum; }
+
+	/**
+	 * Size of the image in one dimension.
+	 * @return width of the image
+	 */
+	public int getSize(){ return width; }
+
+	public int getWidth(){ return width; }
+
+	public int getHeight(){ return height; }
+
+	/**
+	 * Returns the coefficient from the cache, or calculates it.
+	 */
+	protected Coefficient getCoefficient(double angle, double wvlen){
+		Coefficient g = cached;
+		if(g != null && g.angle == angle && g.wvlen == wvlen) return g;
+		g = calculateCoefficient(angle, wvlen);
+		cached = g;
+		return g;
+	}
+
+	/**
+	 * Calculates the coefficient, from the spectrum if possible, otherwise
+	 * with a single-frequency DFT.
+	 */
+	protected Coefficient calculateCoefficient(double angle, double wvlen){
+		double u = width * Math.cos(angle) / wvlen; // cycles per width
+		double v = height * Math.sin(angle) / wvlen; // cycles per height
+		if(spectrum != null){
+			long uRounded = Math.round(u), vRounded = Math.round(v);
+			if(Math.abs(u - uRounded) < 1e-9 && Math.abs(v - vRounded) < 1e-9){
+				// the FFT uses exp(-i...), so G is the conjugate:
+				int col = (int) Math.floorMod(uRounded, (long) width);
+				int row = (int) Math.floorMod(vRounded, (long) height);
+				int index = row*width + col;
+				return new Coefficient(angle, wvlen, spectrum.getReal(index), -spectrum.getImag(index));
+			}
+		}
+		double kx = 2.0 * Math.PI * u / width;
+		double ky = 2.0 * Math.PI * v / height;
+		double[] cosX = new double[width], sinX = new double[width];
+		for(int x=0; x<width; x++){
+			cosX[x] = Math.cos(kx * x);
+			sinX[x] = Math.sin(kx * x);
+		}
+		int bands = Parallel.bandCount(height, width);
+		double[] partRe = new double[bands], partIm = new double[bands];
+		Parallel.forBands(height, width, (band, from, to) -> {
+			double re = 0.0, im = 0.0;
+			for(int y=from; y<to; y++){
+				double rowRe = 0.0, rowIm = 0.0;
+				int offset = y*width;
+				for(int x=0; x<width; x++){
+					rowRe += image[offset+x] * cosX[x];
+					rowIm += image[offset+x] * sinX[x];
+				}
+				double cosY = Math.cos(ky * y), sinY = Math.sin(ky * y);
+				re += rowRe*cosY - rowIm*sinY;
+				im += rowRe*sinY + rowIm*cosY;
+			}
+			partRe[band] = re;
+			partIm[band] = im;
+		});
+		double re = 0.0, im = 0.0;
+		for(int band=0; band<bands; band++){
+			re += partRe[band];
+			im += partIm[band];
+		}
+		return new Coefficient(angle, wvlen, re, im);
+	}
+
+	/**
+	 * Calculates the offset <code>c</code> of the pattern
+	 * <code>sin(kx*x + ky*y + c)</code>, see
+	 * <code>Spass.createSIPattern</code>.
+	 */
+	protected double patternOffset(double angle, double phase, double wvlen){
+		return patternOffset(angle, phase, wvlen, width, height);
+	}
+	
+	/**
+	 * Calculates the offset <code>c</code> of the pattern of the given
+	 * size.
+	 */
+	protected static double patternOffset(double angle, double phase, double wvlen, int size){
+		return patternOffset(angle, phase, wvlen, size, size);
+	}
+	
+	/**
+	 * Calculates the offset <code>c</code> of the rectangular pattern of
+	 * the given size.
+	 */
+	protected static double patternOffset(double angle, double phase, double wvlen, int width, int height){
+		int xm = width / 2, ym = height / 2;
+		double k = 2.0 * Math.PI / wvlen;
+		return k * (xm + phase) - k * Math.cos(angle) * xm - k * Math.sin(angle) * ym;
+	}
+}
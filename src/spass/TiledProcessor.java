@@ -0,0 +1,360 @@
+package spass;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Processes large (also rectangular) images in overlapping quadratic
+ * tiles, whose size is a power of 2.
+ * <p>
+ * Each tile is multiplied with a Hann window before it is transformed, so
+ * the borders of the tile do not disturb the spectrum.  The tiles are
+ * processed in parallel; each thread needs only one tile buffer and one
+ * <code>Trafo</code> (all sharing one <code>PlanCache</code>), so the
+ * working set does not depend on the size of the image.
+ * <ul>
+ * <li><code>estimate</code> locates the SI-parameters in each tile.</li>
+ * <li><code>apply</code> calculates a result for each tile and stitches
+ * the results, weighted with the window, to one image.</li>
+ * </ul>
+ * The SI-parameters of a rectangular image are defined like those of
+ * <code>Spass.createSIPattern</code>, with the center
+ * <code>(width/2, height/2)</code>; <code>toTile</code> and
+ * <code>toImage</code> convert the phase between image and tile.
+ * <p>
+ * The overlap can be at most half of the tile size; the last tile of a
+ * row or column is aligned to the border of the image.
+ *
+ * @author Oliver Eickmeyer
+ */
+public class TiledProcessor {
+
+	/**
+	 * Calculates the result of one tile.
+	 */
+	public interface TileFunction {
+		/**
+		 * Calculates the result for one tile.
+		 * @param tile position of the tile
+		 * @param values values of the tile (not windowed), may be changed
+		 * @param size size of the tile in one dimension
+		 * @return result of the tile, with <code>size*size</code> values
+		 */
+		double[] apply(Tile tile, double[] values, int size);
+	}
+
+	/**
+	 * Position of a tile in the image.
+	 */
+	public static class Tile {
+		protected final int x, y, column, row;
+
+		protected Tile(int x, int y, int column, int row){
+			this.x = x;
+			this.y = y;
+			this.column = column;
+			this.row = row;
+		}
+
+		/** Left border of the tile in the image. */
+		public int getX(){ return x; }
+
+		/** Upper border of the tile in the image. */
+		public int getY(){ return y; }
+
+		/** Number of the column of tiles. */
+		public int getColumn(){ return column; }
+
+		/** Number of the row of tiles. */
+		public int getRow(){ return row; }
+
+		@Override
+		public String toString(){
+			return "tile "+column+", "+row+" at "+x+", "+y;
+		}
+	}
+
+	/**
+	 * Minimum weight of the window for the stitching, so that the border
+	 * of the image (covered by only one tile) keeps its values.
+	 */
+	protected final static double MIN_WEIGHT = 1e-6;
+
+	protected final int tileSize;
+	protected final int overlap;
+	protected final PlanCache plans;
+	protected final double[] window;
+	protected final ThreadLocal<Trafo> trafos;
+	protected final ThreadLocal<double[]> buffers;
+	protected double maskRadius;
+
+	/**
+	 * Constructs a processor with its own plan cache.
+	 * @param tileSize size of the tiles (a power of 2)
+	 * @param overlap overlap of neighboring tiles in pixels (at most
+	 * <code>tileSize/2</code>)
+	 */
+	public TiledProcessor(int tileSize, int overlap){
+		this(tileSize, overlap, new PlanCache());
+	}
+
+	/**
+	 * Constructs a processor.
+	 * @param tileSize size of the tiles (a power of 2)
+	 * @param overlap overlap of neighboring tiles in pixels (at most
+	 * <code>tileSize/2</code>)
+	 * @param plans cache for the transform plans
+	 */
+	public TiledProcessor(int tileSize, int overlap, PlanCache plans){
+		if(!Trafo.isPowerOf2(tileSize)) throw new IllegalArgumentException("tile size must be a power of 2");
+		if(overlap < 0 || overlap > tileSize/2) throw new IllegalArgumentException("overlap must be from 0 to tileSize/2");
+		this.tileSize = tileSize;
+		this.overlap = overlap;
+		this.plans = plans;
+		window = createWindow(tileSize);
+		trafos = ThreadLocal.withInitial(() -> new Trafo(plans));
+		buffers = ThreadLocal.withInitial(() -> new double[tileSize*tileSize]);
+		maskRadius = 3.0;
+	}
+
+	/**
+	 * Creates a symmetric Hann window (zero at the first and the last
+	 * value).  Being symmetric to <code>(size-1)/2</code>, it does not
+	 * change the phase of a peak against the rectangular window.
+	 * @param size length of the window
+	 * @return window values
+	 */
+	public static double[] createWindow(int size){
+		double[] w = new double[size];
+		for(int i=0; i<size; i++){
+			w[i] = size > 1 ? 0.5 - 0.5*Math.cos(2.0*Math.PI*i/(size-1)) : 1.0;
+		}
+		return w;
+	}
+
+	/**
+	 * Positions of the tiles in one dimension.
+	 */
+	protected int[] positions(int length){
+		if(length < tileSize) throw new IllegalArgumentException("image smaller than a tile");
+		int step = tileSize - overlap;
+		int n = 1 + (length - tileSize + step - 1) / step;
+		int[] p = new int[n];
+		for(int i=0; i<n; i++) p[i] = Math.min(i*step, length - tileSize);
+		return p;
+	}
+
+	/**
+	 * Divides an image into tiles, row by row.
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @return list of tiles
+	 */
+	public List<Tile> tiles(int width, int height){
+		int[] xs = positions(width), ys = positions(height);
+		List<Tile> tiles = new ArrayList<>(xs.length * ys.length);
+		for(int r=0; r<ys.length; r++){
+			for(int c=0; c<xs.length; c++){
+				tiles.add(new Tile(xs[c], ys[r], c, r));
+			}
+		}
+		return tiles;
+	}
+
+	/**
+	 * Copies a tile out of the image.
+	 * @param image values of the image (row by row)
+	 * @param width width of the image
+	 * @param tile position of the tile
+	 * @param values array for the values of the tile
+	 * @param windowed <code>true</code> to multiply the values with the
+	 * window
+	 */
+	public void extract(double[] image, int width, Tile tile, double[] values, boolean windowed){
+		for(int y=0; y<tileSize; y++){
+			int offset = (tile.y + y)*width + tile.x;
+			for(int x=0; x<tileSize; x++){
+				double v = image[offset + x];
+				values[y*tileSize + x] = windowed ? v * window[x] * window[y] : v;
+			}
+		}
+	}
+
+	/**
+	 * Estimates the SI-parameters of each tile (see
+	 * <code>PeakFinder.estimate</code>).  The phases of the results are
+	 * converted to the image.
+	 * @param image values of the image (row by row)
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @return estimates in the order of <code>tiles</code>
+	 */
+	public SIPEstimate[] estimate(double[] image, int width, int height){
+		List<Tile> tiles = tiles(width, height);
+		SIPEstimate[] estimates = new SIPEstimate[tiles.size()];
+		Parallel.forRows(tiles.size(), tileSize*tileSize, (from, to) -> {
+			double[] values = buffers.get();
+			Trafo trafo = trafos.get();
+			for(int i=from; i<to; i++){
+				Tile tile = tiles.get(i);
+				extract(image, width, tile, values, true);
+				trafo.transform(values, tileSize, Trafo.Mode.FFT);
+				SIPEstimate e = PeakFinder.estimate(trafo, maskRadius);
+				estimates[i] = new SIPEstimate(e.getIndex(), e.getFx(), e.getFy(), e.getMagnitude(),
+						e.getConfidence(), toImage(e.getParams(), tile, width, height));
+			}
+		});
+		return estimates;
+	}
+
+	/**
+	 * Calculates a result for each tile, and stitches them to an image of
+	 * the same size.  The results of overlapping tiles are weighted with
+	 * the window.  Tiles, which do not overlap, are calculated in
+	 * parallel.
+	 * @param image values of the image (row by row)
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @param function calculates the result of one tile
+	 * @return stitched result
+	 */
+	public double[] apply(double[] image, int width, int height, TileFunction function){
+		List<Tile> tiles = tiles(width, height);
+		double[] result = new double[width*height];
+		double[] weights = new double[width*height];
+		for(List<Tile> group : disjointGroups(tiles)){
+			Parallel.forRows(group.size(), tileSize*tileSize, (from, to) -> {
+				double[] values = buffers.get();
+				for(int i=from; i<to; i++){
+					Tile tile = group.get(i);
+					extract(image, width, tile, values, false);
+					double[] r = function.apply(tile, values, tileSize);
+					for(int y=0; y<tileSize; y++){
+						int offset = (tile.y + y)*width + tile.x;
+						for(int x=0; x<tileSize; x++){
+							double w = window[x]*window[y] + MIN_WEIGHT;
+							result[offset + x] += w * r[y*tileSize + x];
+							weights[offset + x] += w;
+						}
+					}
+				}
+			});
+		}
+		Parallel.forRows(height, width, (from, to) -> {
+			for(int i=from*width; i<to*width; i++) result[i] /= weights[i];
+		});
+		return result;
+	}
+
+	/**
+	 * Divides the tiles into groups of tiles, which do not overlap each
+	 * other.  Each tile is put into the first group, where it overlaps no
+	 * tile; so the groups do not depend on the number of threads.  (The
+	 * parity of the tiles is not enough, since the last tile of a row or
+	 * column is moved back to the border of the image, and may overlap
+	 * the tile two places before.)
+	 * @param tiles tiles of an image
+	 * @return groups of tiles
+	 */
+	protected List<List<Tile>> disjointGroups(List<Tile> tiles){
+		List<List<Tile>> groups = new ArrayList<>();
+		for(Tile t : tiles){
+			List<Tile> target = null;
+			for(List<Tile> group : groups){
+				boolean free = true;
+				for(Tile other : group){
+					if(overlaps(t, other)){
+						free = false;
+						break;
+					}
+				}
+				if(free){
+					target = group;
+					break;
+				}
+			}
+			if(target == null){
+				target = new ArrayList<>();
+				groups.add(target);
+			}
+			target.add(t);
+		}
+		return groups;
+	}
+
+	/**
+	 * Checks, whether two tiles have common pixels.
+	 */
+	protected boolean overlaps(Tile a, Tile b){
+		return Math.abs(a.x - b.x) < tileSize && Math.abs(a.y - b.y) < tileSize;
+	}
+
+	/**
+	 * Multiplies the image with the SI-pattern of the given parameters,
+	 * tile by tile (like the multiplication mode of <code>Spass</code>).
+	 * @param image values of the image (row by row)
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @param params SI-parameters of the image
+	 * @return multiplication of image and SI-pattern
+	 */
+	public double[] multiply(double[] image, int width, int height, SIParams params){
+		return apply(image, width, height, (tile, values, size) -> {
+			SIParams p = toTile(params, tile, width, height);
+			double[] pattern = Spass.createSIPattern(size, p.getAngle(), p.getPhase(), p.getWvlen());
+			for(int i=0; i<values.length; i++) pattern[i] *= values[i];
+			return pattern;
+		});
+	}
+
+	/**
+	 * Converts SI-parameters of the image into SI-parameters of a tile,
+	 * which describe the same pattern.
+	 * @param params SI-parameters of the image
+	 * @param tile position of the tile
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @return SI-parameters of the tile
+	 */
+	public SIParams toTile(SIParams params, Tile tile, int width, int height){
+		return new SIParams(params.getAngle(), params.getPhase() + phaseOffset(params, tile, width, height), params.getWvlen());
+	}
+
+	/**
+	 * Converts SI-parameters of a tile into SI-parameters of the image.
+	 * @param params SI-parameters of the tile
+	 * @param tile position of the tile
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @return SI-parameters of the image
+	 */
+	public SIParams toImage(SIParams params, Tile tile, int width, int height){
+		double phase = params.getPhase() - phaseOffset(params, tile, width, height);
+		phase %= params.getWvlen();
+		if(phase < 0.0) phase += params.getWvlen();
+		return new SIParams(params.getAngle(), phase, params.getWvlen());
+	}
+
+	/**
+	 * Difference of the phase of a tile to the phase of the image.  The
+	 * pattern is <code>sin(kx*(x-xm) + ky*(y-ym) + k*(xm+phase))</code>
+	 * with the center <code>(xm, ym)</code> of the image or the tile.
+	 */
+	protected double phaseOffset(SIParams params, Tile tile, int width, int height){
+		int xm = width/2, ym = height/2, tm = tileSize/2;
+		double a = params.getAngle();
+		return (xm - tm) + Math.cos(a)*(tile.x + tm - xm) + Math.sin(a)*(tile.y + tm - ym);
+	}
+
+	/**
+	 * Sets the radius of the masked zero order for <code>estimate</code>.
+	 * @param maskRadius radius in pixels of the spectrum of a tile
+	 */
+	public void setMaskRadius(double maskRadius){ this.maskRadius = maskRadius; }
+
+	public double getMaskRadius(){ return maskRadius; }
+
+	public int getTileSize(){ return tileSize; }
+
+	public int getOverlap(){ return overlap; }
+}
@@ -4,10 +4,36 @@ import java.awt.Point;
 import java.util.Locale;
 
 import org.jtransforms.dht.DoubleDHT_2D;
+import org.jtransforms.dht.FloatDHT_2D;
 import org.jtransforms.fft.DoubleFFT_2D;
+import org.jtransforms.fft.FloatFFT_2D;
 
 /**
  * Holds all transform relevant data and methods.
+ * The transform plans are taken from a <code>PlanCache</code>, and the
+ * arrays are owned by the Trafo and reused for the next transform of the
+ * same size, so repeated transforms do not allocate anything.
+ * Therefore the arrays returned by the getters are only valid until the
+ * next call of <code>transform</code>.
+ * <p>
+ * Since all inputs are real, the FFT is by default calculated as a
+ * real-to-complex transform, which exploits the Hermitian symmetry of
+ * the spectrum.  The results are the same as from the complex transform.
+ * <p>
+ * The input can be given in double or in single precision
+ * (<code>float</code>).  The results are held in the same precision as
+ * the input of the last transform, so the array getters of the other
+ * precision return <code>null</code>.  All getters for single values
+ * work in both cases.
+ * <p>
+ * The derived arrays (absolute values and phases) are calculated when
+ * they are requested for the first time after a transform, and are kept
+ * until the next transform.
+ * <p>
+ * The arrays may be rectangular (<code>width*height</code>, row by row)
+ * and of any size.  JTransforms is fastest for sizes, which are products
+ * of 2, 3 and 5 (see <code>fastSize</code>); other sizes work, but are
+ * considerably slower.
  * 
  * @author Oliver Eickmeyer
  */
@@ -16,18 +42,53 @@ public class Trafo {
 	protected Mode mode;
 	protected double[] real;
 	protected double[] imag;
-	protected int size;
+	protected double[] complex; // work buffer for the complex FFT
+	protected double[] packed; // work buffer for the real FFT
+	protected boolean realInput;
+	protected float[] realF;
+	protected float[] imagF;
+	protected float[] complexF;
+	protected float[] packedF;
+	protected boolean singlePrecision;
+	protected double[] abs;
+	protected double[] phase;
+	protected float[] absF;
+	protected float[] phaseF;
+	protected boolean absValid;
+	protected boolean phaseValid;
+	protected boolean absFValid;
+	protected boolean phaseFValid;
+	protected int width;
+	protected int height;
 	protected Locale locale;
+	protected PlanCache plans;
+	protected DoubleFFT_2D planFFT;
+	protected DoubleDHT_2D planDHT;
+	protected FloatFFT_2D planFloatFFT;
+	protected FloatDHT_2D planFloatDHT;
 	
 	/**
 	 * Constructs a new Trafo, with no content.
 	 */
 	public Trafo(){
+		this(new PlanCache());
+	}
+	
+	/**
+	 * Constructs a new Trafo, with no content, which takes its transform
+	 * plans from the given cache.
+	 * @param plans cache for transform plans, may be shared with other
+	 * Trafos
+	 */
+	public Trafo(PlanCache plans){
 		mode = Mode.FFT;
 		real = null;
 		imag = null;
-		size = 0;
+		width = 0;
+		height = 0;
 		locale = Locale.US;
+		realInput = true;
+		this.plans = plans;
 	}
 	
 	/**
@@ -37,76 +98,480 @@ public class Trafo {
 	 * @param mode kind of transform
 	 */
 	public void transform(double[] input, int size, Mode mode){
-		this.size = size;
+		transform(input, size, size, mode);
+	}
+	
+	/**
+	 * Calculates the transform of the rectangular <code>input</code>.
+	 * @param input array of <code>width*height</code> values, row by row
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @param mode kind of transform
+	 */
+	public void transform(double[] input, int width, int height, Mode mode){
+		prepare(width, height, mode);
+		int n = width*height;
+		switch(mode){
+		case FFT:
+			if(planFFT == null) planFFT = plans.getFFT(height, width);
+			if(realInput && isPowerOf2(width) && isPowerOf2(height)){
+				transformReal(input);
+			}
+			else if(realInput){
+				complex = reuse(complex, n*2);
+				System.arraycopy(input, 0, complex, 0, n);
+				planFFT.realForwardFull(complex);
+				splitComplex();
+			}
+			else{
+				complex = reuse(complex, n*2);
+				for(int i=0; i<n; i++){
+					complex[i*2] = input[i];
+					complex[i*2+1] = 0.0;
+				}
+				planFFT.complexForward(complex);
+				splitComplex();
+			}
+			break;
+		case DHT:
+			System.arraycopy(input, 0, real, 0, n);
+			if(planDHT == null) planDHT = plans.getDHT(height, width);
+			planDHT.forward(real);
+			break;
+		}
+	}
+	
+	/**
+	 * Calculates the transform of the <code>input</code> in single
+	 * precision.  The FFT is always calculated as real-to-complex
+	 * transform.
+	 * @param input quadratic array
+	 * @param size size of the input array in one dimension
+	 * @param mode kind of transform
+	 */
+	public void transform(float[] input, int size, Mode mode){
+		transform(input, size, size, mode);
+	}
+	
+	/**
+	 * Calculates the transform of the rectangular <code>input</code> in
+	 * single precision.
+	 * @param input array of <code>width*height</code> values, row by row
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @param mode kind of transform
+	 */
+	public void transform(float[] input, int width, int height, Mode mode){
+		setDimensions(width, height);
 		this.mode = mode;
-		real = new double[size*size];
+		singlePrecision = true;
+		real = imag = complex = packed = abs = phase = null;
+		int n = width*height;
+		realF = reuse(realF, n);
 		switch(mode){
 		case FFT:
-			imag = new double[size*size];
-			double[] complex = new double[size*size*2];
-			for(int i=0; i<size*size; i++){
-				complex[i*2] = input[i];
-				complex[i*2+1] = 0.0;
+			imagF = reuse(imagF, n);
+			if(planFloatFFT == null) planFloatFFT = plans.getFloatFFT(height, width);
+			if(isPowerOf2(width) && isPowerOf2(height)){
+				transformRealFloat(input);
 			}
-			DoubleFFT_2D transformerFFT = new DoubleFFT_2D(size, size);
-			transformerFFT.complexForward(complex);
-			for(int i=0; i<size*size; i++){
-				real[i] = complex[i*2];
-				imag[i] = complex[i*2+1];
+			else{
+				complexF = reuse(complexF, n*2);
+				System.arraycopy(input, 0, complexF, 0, n);
+				planFloatFFT.realForwardFull(complexF);
+				for(int i=0; i<n; i++){
+					realF[i] = complexF[i*2];
+					imagF[i] = complexF[i*2+1];
+				}
 			}
 			break;
 		case DHT:
-			imag = null;
-			System.arraycopy(input, 0, real, 0, size*size);
-			DoubleDHT_2D transformerDHT = new DoubleDHT_2D(size, size);
-			transformerDHT.forward(real);
+			System.arraycopy(input, 0, realF, 0, n);
+			if(planFloatDHT == null) planFloatDHT = plans.getFloatDHT(height, width);
+			planFloatDHT.forward(realF);
 			break;
 		}
 	}
 	
+	/**
+	 * Prepares the arrays in double precision for a transform of the given
+	 * size and mode.  Also used, if the transform is calculated outside of
+	 * the Trafo (see <code>PatternSpectrum</code>), which then fills
+	 * <code>real</code> (and <code>imag</code> for the FFT).
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @param mode kind of transform
+	 */
+	protected void prepare(int width, int height, Mode mode){
+		setDimensions(width, height);
+		this.mode = mode;
+		singlePrecision = false;
+		realF = imagF = complexF = packedF = absF = phaseF = null;
+		real = reuse(real, width*height);
+		if(mode == Mode.FFT) imag = reuse(imag, width*height);
+	}
+	
+	/**
+	 * Sets the dimensions for the next transform, forgets the plans if
+	 * they changed, and marks the derived arrays as outdated.
+	 */
+	protected void setDimensions(int width, int height){
+		if(width != this.width || height != this.height) resetPlans();
+		invalidate();
+		this.width = width;
+		this.height = height;
+	}
+	
+	/**
+	 * Marks the derived arrays as outdated.  Must be called whenever the
+	 * transform values change.
+	 */
+	protected void invalidate(){
+		absValid = false;
+		phaseValid = false;
+		absFValid = false;
+		phaseFValid = false;
+	}
+	
+	/**
+	 * Forgets the plans of the last size.
+	 */
+	protected void resetPlans(){
+		planFFT = null;
+		planDHT = null;
+		planFloatFFT = null;
+		planFloatDHT = null;
+	}
+	
+	/**
+	 * Copies the interleaved <code>complex</code> buffer into
+	 * <code>real</code> and <code>imag</code>.
+	 */
+	protected void splitComplex(){
+		for(int i=0; i<width*height; i++){
+			real[i] = complex[i*2];
+			imag[i] = complex[i*2+1];
+		}
+	}
+	
+	/**
+	 * Calculates the FFT of real input with <code>realForward</code>, which
+	 * needs only a buffer of <code>width*height</code> and computes only one
+	 * half of the spectrum.  The other half is filled in using the
+	 * Hermitian symmetry <code>F(-u, -v) = F*(u, v)</code>.
+	 * See the documentation of <code>DoubleFFT_2D.realForward</code> for
+	 * the packed format.  Works only if width and height are powers of 2.
+	 * @param input array of real values
+	 */
+	protected void transformReal(double[] input){
+		int n = width, m = height, h = width / 2, hm = height / 2;
+		packed = reuse(packed, n*m);
+		System.arraycopy(input, 0, packed, 0, n*m);
+		planFFT.realForward(packed);
+		
+		// general part, columns 1 to n/2-1 of all rows:
+		for(int r=0; r<m; r++){
+			int rMirror = (m - r) % m;
+			for(int c=1; c<h; c++){
+				double re = packed[r*n + 2*c];
+				double im = packed[r*n + 2*c + 1];
+				real[r*n + c] = re;
+				imag[r*n + c] = im;
+				real[rMirror*n + n - c] = re;
+				imag[rMirror*n + n - c] = -im;
+			}
+		}
+		
+		// columns 0 and n/2 of the rows 1 to m/2-1:
+		for(int r=1; r<hm; r++){
+			double re0 = packed[r*n];
+			double im0 = packed[r*n + 1];
+			double reH = packed[(m-r)*n + 1];
+			double imH = -packed[(m-r)*n];
+			real[r*n] = re0;
+			imag[r*n] = im0;
+			real[(m-r)*n] = re0;
+			imag[(m-r)*n] = -im0;
+			real[r*n + h] = reH;
+			imag[r*n + h] = imH;
+			real[(m-r)*n + h] = reH;
+			imag[(m-r)*n + h] = -imH;
+		}
+		
+		// purely real values:
+		real[0] = packed[0];
+		imag[0] = 0.0;
+		real[h] = packed[1];
+		imag[h] = 0.0;
+		real[hm*n] = packed[hm*n];
+		imag[hm*n] = 0.0;
+		real[hm*n + h] = packed[hm*n + 1];
+		imag[hm*n + h] = 0.0;
+	}
+	
+	/**
+	 * Single precision version of <code>transformReal</code>.
+	 * @param input array of real values
+	 */
+	protected void transformRealFloat(float[] input){
+		int n = width, m = height, h = width / 2, hm = height / 2;
+		packedF = reuse(packedF, n*m);
+		System.arraycopy(input, 0, packedF, 0, n*m);
+		planFloatFFT.realForward(packedF);
+		
+		for(int r=0; r<m; r++){
+			int rMirror = (m - r) % m;
+			for(int c=1; c<h; c++){
+				float re = packedF[r*n + 2*c];
+				float im = packedF[r*n + 2*c + 1];
+				realF[r*n + c] = re;
+				imagF[r*n + c] = im;
+				realF[rMirror*n + n - c] = re;
+				imagF[rMirror*n + n - c] = -im;
+			}
+		}
+		for(int r=1; r<hm; r++){
+			float re0 = packedF[r*n];
+			float im0 = packedF[r*n + 1];
+			float reH = packedF[(m-r)*n + 1];
+			float imH = -packedF[(m-r)*n];
+			realF[r*n] = re0;
+			imagF[r*n] = im0;
+			realF[(m-r)*n] = re0;
+			imagF[(m-r)*n] = -im0;
+			realF[r*n + h] = reH;
+			imagF[r*n + h] = imH;
+			realF[(m-r)*n + h] = reH;
+			imagF[(m-r)*n + h] = -imH;
+		}
+		realF[0] = packedF[0];
+		imagF[0] = 0.0f;
+		realF[h] = packedF[1];
+		imagF[h] = 0.0f;
+		realF[hm*n] = packedF[hm*n];
+		imagF[hm*n] = 0.0f;
+		realF[hm*n + h] = packedF[hm*n + 1];
+		imagF[hm*n + h] = 0.0f;
+	}
+	
+	/**
+	 * Checks if <code>n</code> is an integer power of 2.
+	 * @param n number to check
+	 * @return <code>true</code> if <code>n</code> is a power of 2
+	 */
+	public static boolean isPowerOf2(int n){
+		return n > 0 && (n & (n - 1)) == 0;
+	}
+	
+	/**
+	 * Checks if <code>n</code> is a product of only the factors 2, 3 and
+	 * 5, for which JTransforms has fast mixed radix transforms.
+	 * @param n number to check
+	 * @return <code>true</code> if <code>n = 2^a * 3^b * 5^c</code>
+	 */
+	public static boolean isFastSize(int n){
+		if(n < 1) return false;
+		for(int f : new int[]{2, 3, 5}){
+			while(n % f == 0) n /= f;
+		}
+		return n == 1;
+	}
+	
+	/**
+	 * Finds the smallest fast size (see <code>isFastSize</code>), which
+	 * is not smaller than <code>n</code>.  Padding to this size costs much
+	 * less than padding to the next power of 2.
+	 * @param n minimum size
+	 * @return smallest <code>2^a * 3^b * 5^c &gt;= n</code>
+	 */
+	public static int fastSize(int n){
+		int size = Math.max(1, n);
+		while(!isFastSize(size)) size++;
+		return size;
+	}
+	
+	/**
+	 * Pads a rectangular array to a larger size.  The new values are set
+	 * to the mean of the array, so the padding adds as little as possible
+	 * to the spectrum.
+	 * @param values array of <code>width*height</code> values, row by row
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @param newWidth number of columns of the result
+	 * @param newHeight number of rows of the result
+	 * @return padded array; or <code>values</code> if the size does not
+	 * change
+	 */
+	public static double[] pad(double[] values, int width, int height, int newWidth, int newHeight){
+		if(newWidth == width && newHeight == height) return values;
+		if(newWidth < width || newHeight < height) throw new IllegalArgumentException("new size must not be smaller");
+		double mean = Parallel.sumRows(height, width, (from, to) -> {
+			double sum = 0.0;
+			for(int i=from*width; i<to*width; i++) sum += values[i];
+			return sum;
+		}) / values.length;
+		double[] padded = new double[newWidth*newHeight];
+		java.util.Arrays.fill(padded, mean);
+		for(int y=0; y<height; y++){
+			System.arraycopy(values, y*width, padded, y*newWidth, width);
+		}
+		return padded;
+	}
+	
+	/**
+	 * Returns the given buffer, if it has the requested length, or a new
+	 * array otherwise.
+	 * @param buffer array to be reused; or <code>null</code>
+	 * @param length requested length
+	 * @return array of the requested length
+	 */
+	protected static double[] reuse(double[] buffer, int length){
+		if(buffer != null && buffer.length == length) return buffer;
+		return new double[length];
+	}
+	
+	/**
+	 * Returns the given buffer, if it has the requested length, or a new
+	 * array otherwise.
+	 * @param buffer array to be reused; or <code>null</code>
+	 * @param length requested length
+	 * @return array of the requested length
+	 */
+	protected static float[] reuse(float[] buffer, int length){
+		if(buffer != null && buffer.length == length) return buffer;
+		return new float[length];
+	}
+	
 	/**
 	 * Returns an array with the real parts of the transform.
-	 * @return array of the real parts
+	 * @return array of the real parts; or <code>null</code> if the
+	 * transform was calculated in single precision
 	 */
 	public double[] getRealArray(){ return real; }
 	
 	/**
 	 * Returns an array with the imaginary parts of the transform.
-	 * @return array of the imaginary parts
+	 * @return array of the imaginary parts; or <code>null</code> if the
+	 * transform has no imaginary parts (DHT) or was calculated in single
+	 * precision
+	 */
+	public double[] getImagArray(){ return mode == Mode.DHT ? null : imag; }
+	
+	/**
+	 * Returns an array with the real parts of the transform in single
+	 * precision.
+	 * @return array of the real parts; or <code>null</code> if the
+	 * transform was calculated in double precision
 	 */
-	public double[] getImagArray(){ return imag; }
+	public float[] getRealArrayFloat(){ return realF; }
+	
+	/**
+	 * Returns an array with the imaginary parts of the transform in single
+	 * precision.
+	 * @return array of the imaginary parts; or <code>null</code> if the
+	 * transform has no imaginary parts (DHT) or was calculated in double
+	 * precision
+	 */
+	public float[] getImagArrayFloat(){ return mode == Mode.DHT ? null : imagF; }
 	
 	/**
 	 * Returns an array with with the absolute value of the transform - only
 	 * allowed if there are imaginary parts.
+	 * The array is calculated only once per transform.
 	 * @return array of absolute values
 	 */
 	public double[] getAbsArray(){
-		double[] abs = new double[size*size];
-		for(int i=0; i<size*size; i++){
-			abs[i] = Math.sqrt(real[i]*real[i] + imag[i]*imag[i]);
+		if(absValid) return abs;
+		double[] a = abs = reuse(abs, width*height);
+		if(singlePrecision){
+			float[] re = realF, im = imagF;
+			Parallel.forRows(width*height, 1, (from, to) -> {
+				for(int i=from; i<to; i++){
+					a[i] = Math.sqrt(re[i]*re[i] + im[i]*im[i]);
+				}
+			});
+		}
+		else{
+			double[] re = real, im = imag;
+			Parallel.forRows(width*height, 1, (from, to) -> {
+				for(int i=from; i<to; i++){
+					a[i] = Math.sqrt(re[i]*re[i] + im[i]*im[i]);
+				}
+			});
 		}
+		absValid = true;
 		return abs;
 	}
 	
+	/**
+	 * Returns an array with with the absolute value of the transform in
+	 * single precision - only allowed if there are imaginary parts.
+	 * The array is calculated only once per transform.
+	 * @return array of absolute values
+	 */
+	public float[] getAbsArrayFloat(){
+		if(absFValid) return absF;
+		float[] a = absF = reuse(absF, width*height);
+		Parallel.forRows(width*height, 1, (from, to) -> {
+			for(int i=from; i<to; i++){
+				a[i] = (float) getAbs(i);
+			}
+		});
+		absFValid = true;
+		return absF;
+	}
+	
+	/**
+	 * Returns an array with the phases (in pixels) of the transform - only
+	 * allowed if there are imaginary parts.
+	 * The array is calculated only once per transform.
+	 * @return array of phases
+	 */
 	public double[] getPhaseArray(){
-		double[] phase = new double[size*size];
-		for(int i=0; i<size*size; i++){
-			phase[i] = getPhasePix(i);
+		if(phaseValid) return phase;
+		phase = reuse(phase, width*height);
+		for(int row=0; row<height; row++){
+			int fy = toFrequencyY(row);
+			for(int col=0; col<width; col++){
+				int i = row*width + col;
+				phase[i] = getPhasePix(i, col, fy);
+			}
 		}
+		phaseValid = true;
 		return phase;
 	}
 	
+	/**
+	 * Returns an array with the phases (in pixels) of the transform in
+	 * single precision - only allowed if there are imaginary parts.
+	 * The array is calculated only once per transform.
+	 * @return array of phases
+	 */
+	public float[] getPhaseArrayFloat(){
+		if(phaseFValid) return phaseF;
+		phaseF = reuse(phaseF, width*height);
+		for(int row=0; row<height; row++){
+			int fy = toFrequencyY(row);
+			for(int col=0; col<width; col++){
+				int i = row*width + col;
+				phaseF[i] = (float) getPhasePix(i, col, fy);
+			}
+		}
+		phaseFValid = true;
+		return phaseF;
+	}
+	
 	public double getReal(int index){
-		return real[index];
+		return singlePrecision ? realF[index] : real[index];
 	}
 	
 	public double getImag(int index){
-		return imag[index];
+		return singlePrecision ? imagF[index] : imag[index];
 	}
 	
 	public double getAbs(int index){
-		return Math.sqrt(real[index]*real[index] + imag[index]*imag[index]);
+		double re = getReal(index), im = getImag(index);
+		return Math.sqrt(re*re + im*im);
 	}
 	
 	/**
@@ -115,19 +580,80 @@ public class Trafo {
 	 * will be modified, so that they can be interpreted as to be
 	 * relative to (0, 0), for easier calculation of angle and
 	 * wavelength.
+	 * The coordinates are frequencies in cycles per width (x) and cycles
+	 * per height (y).
 	 * @param index index of the value in the arrays
 	 * @return coordinates relative to (0, 0)
 	 */
 	public Point getCoords(int index){
-		int x = index % size;
-		int y = index / size;
-		if(x > size/2) x -= size;
-		if(y > size/2) y -= size;
-		return new Point(x, y);
+		return new Point(toFrequencyX(index % width), toFrequencyY(index / width));
+	}
+	
+	/**
+	 * Converts a column number of the arrays into a frequency relative to
+	 * (0, 0), like <code>getCoords</code> does.
+	 * @param col column number
+	 * @return frequency in cycles per width
+	 */
+	protected int toFrequencyX(int col){
+		return toFrequency(col, width);
+	}
+	
+	/**
+	 * Converts a row number of the arrays into a frequency relative to
+	 * (0, 0), like <code>getCoords</code> does.
+	 * @param row row number
+	 * @return frequency in cycles per height
+	 */
+	protected int toFrequencyY(int row){
+		return toFrequency(row, height);
+	}
+	
+	/**
+	 * Converts a column or row number into a frequency relative to 0.
+	 * @param n column or row number
+	 * @param size number of columns or rows
+	 * @return frequency in cycles per width or height
+	 */
+	protected static int toFrequency(int n, int size){
+		return n > size/2 ? n - size : n;
+	}
+	
+	/**
+	 * Calculates the angle of a frequency of a rectangular array.
+	 * @param fx frequency in cycles per width
+	 * @param fy frequency in cycles per height
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @return angle in radians
+	 */
+	public static double toAngle(double fx, double fy, int width, int height){
+		return Math.atan2(scaleY(fy, width, height), fx);
+	}
+	
+	/**
+	 * Calculates the wavelength of a frequency of a rectangular array.
+	 * @param fx frequency in cycles per width
+	 * @param fy frequency in cycles per height
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @return wavelength in pixels
+	 */
+	public static double toWavelength(double fx, double fy, int width, int height){
+		double v = scaleY(fy, width, height);
+		return (double) width / Math.sqrt(fx*fx + v*v);
+	}
+	
+	/**
+	 * Converts a frequency in cycles per height into cycles per width, so
+	 * that both directions have the same scale.
+	 */
+	protected static double scaleY(double fy, int width, int height){
+		return width == height ? fy : fy * width / height;
 	}
 	
 	public double getAngle(int index){
-		return Math.atan2(getCoords(index).y, getCoords(index).x);
+		return toAngle(toFrequencyX(index % width), toFrequencyY(index / width), width, height);
 	}
 	
 	/**
@@ -136,7 +662,7 @@ public class Trafo {
 	 * @return
 	 */
 	public double getPhaseRad(int index){
-		return Math.atan2(imag[index], real[index]) + Math.PI/2.0;
+		return Math.atan2(getImag(index), getReal(index)) + Math.PI/2.0;
 	}
 	
 	/**
@@ -145,7 +671,16 @@ public class Trafo {
 	 * @return
 	 */
 	public double getPhasePix(int index){
-		return getPhaseRad(index) / Math.PI / 2.0 * getWavelength(index);
+		return getPhasePix(index, index % width, toFrequencyY(index / width));
+	}
+	
+	/**
+	 * Gets the phase in pixels, with the row already converted to a
+	 * frequency.
+	 */
+	private double getPhasePix(int index, int col, int fy){
+		double wavelength = toWavelength(toFrequencyX(col), fy, width, height);
+		return getPhaseRad(index) / Math.PI / 2.0 * wavelength;
 	}
 	
 	/**
@@ -168,16 +703,54 @@ public class Trafo {
 	}
 	
 	public double getWavelength(int index){
-		return (double) size / getCoords(index).distance(0, 0);
+		return toWavelength(toFrequencyX(index % width), toFrequencyY(index / width), width, height);
 	}
 	
 	/**
 	 * Size of the quadratic arrays in one dimension 
-	 * @return size of the quadratic arrays in one dimension
+	 * @return size of the quadratic arrays in one dimension (the width,
+	 * if the arrays are not quadratic)
+	 */
+	public int getSize(){ return width; }
+	
+	/**
+	 * Number of columns of the arrays.
+	 * @return width of the arrays
 	 */
-	public int getSize(){ return size; }
+	public int getWidth(){ return width; }
+	
+	/**
+	 * Number of rows of the arrays.
+	 * @return height of the arrays
+	 */
+	public int getHeight(){ return height; }
 	
 	public Mode getMode(){ return mode; }
+	
+	/**
+	 * Selects between the real-to-complex FFT (default) and the FFT of
+	 * the input packed into an interleaved complex array.
+	 * Both give the same results, but the real-to-complex FFT needs only
+	 * half of the arithmetic and of the buffer size.
+	 * @param realInput <code>true</code> for the real-to-complex FFT
+	 */
+	public void setRealInput(boolean realInput){
+		this.realInput = realInput;
+	}
+	
+	public boolean isRealInput(){ return realInput; }
+	
+	/**
+	 * Checks if the last transform was calculated in single precision.
+	 * @return <code>true</code> if the results are <code>float</code>s
+	 */
+	public boolean isSinglePrecision(){ return singlePrecision; }
+	
+	/**
+	 * Returns the cache, from which this Trafo takes its transform plans.
+	 * @return cache of transform plans
+	 */
+	public PlanCache getPlans(){ return plans; }
 
 	/**
 	 * Sets the Locale for locale-sensitive operations.
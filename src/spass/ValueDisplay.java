@@ -3,38 +3,99 @@ package spass;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Point;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBuffer;
-import java.awt.image.Raster;
-import java.awt.image.SampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 
 import javax.swing.JPanel;
 
 /**
  * A GUI display that shows a graphical representation of an quadratic
- * array of floating point numbers.  There are no limitations for the
+ * (or rectangular) array of floating point numbers.  There are no limitations for the
  * values in that array.  The ValueDisplay will normalize the values so
  * that the lowest value is mapped to zero, and the highest value is mapped
  * to 255.  The distribution of the values between the minimum and the maximum
  * can be either linear or logarithmic.
  * It is also possible to mask some values of the input array, so that they
  * will not be displayed (and not taken into account when determining the
- * minimum and maximum). 
+ * minimum and maximum); the mask is processed span by span (see
+ * <code>Mask</code>).  The masked values are drawn with an overlay
+ * image, which is created only when the mask changes.
+ * <p>
+ * Image and overlay are drawn zoomed into an image compatible with the
+ * screen, which is only redrawn when the values, the mask or the zoom
+ * change; a repaint just copies it.  The display repaints itself, when
+ * its content changes.
+ * <p>
+ * The display keeps the buffers of the conversion into bytes (see
+ * <code>Buffers</code>), so converting values of an unchanged size
+ * allocates no arrays.
+ * The values can be given in double or in single precision.
  * 
  * @author Oliver Eickmeyer
  */
 @SuppressWarnings("serial")
 public class ValueDisplay extends JPanel{
-	protected int size;
+	protected int width;
+	protected int height;
 	protected double[] values;
-	protected boolean[] mask;
+	protected float[] valuesFloat;
+	protected Mask mask;
 	protected BufferedImage image;
+	protected BufferedImage maskImage; // overlay of the masked values
+	protected BufferedImage scaled; // zoomed image with mask, for the screen
+	protected boolean scaledValid;
 	protected int zoom;
 	protected int borderWidth;
 	protected Color borderColor;
 	protected Color maskColor;
 	protected boolean log;
+	protected final Buffers buffers = new Buffers();
+
+	/**
+	 * Buffers of the conversion of values into bytes: the minima and
+	 * maxima of the bands, the found minimum and maximum, and the table of
+	 * the logarithmic thresholds (see <code>logThresholds</code>).  The
+	 * table is calculated again only, when the minimum or the largest
+	 * logarithm change.  A display keeps its buffers, so converting the
+	 * values again allocates no arrays.
+	 */
+	protected static class Buffers {
+		double min, max;
+		double[] mins = new double[0], maxs = new double[0];
+		final double[] thresholds = new double[255];
+		double thresholdMin = Double.NaN, thresholdGMax = Double.NaN;
+		boolean thresholdsValid;
+
+		/**
+		 * Makes room for the minima and maxima of the given number of
+		 * bands.
+		 */
+		void bands(int bands){
+			if(mins.length != bands){
+				mins = new double[bands];
+				maxs = new double[bands];
+			}
+		}
+
+		/**
+		 * Returns the thresholds of the logarithmic mapping, calculated
+		 * only if <code>min</code> or <code>gMax</code> have changed.
+		 * @return thresholds; or <code>null</code> if they can not be found
+		 */
+		double[] logThresholds(double min, double gMax){
+			if(min != thresholdMin || gMax != thresholdGMax){
+				thresholdMin = min;
+				thresholdGMax = gMax;
+				thresholdsValid = ValueDisplay.logThresholds(min, gMax, thresholds);
+			}
+			return thresholdsValid ? thresholds : null;
+		}
+	}
 
 	/**
 	 * Constructs display with no data.
@@ -50,7 +111,8 @@ public class ValueDisplay extends JPanel{
 	 * @param values quadratic array with values to be displayed 
 	 */
 	public ValueDisplay(int size, double[] values){
-		this.size = size;
+		this.width = size;
+		this.height = size;
 		this.values = values;
 		log = false;
 		zoom = 1;
@@ -68,8 +130,34 @@ public class ValueDisplay extends JPanel{
 	 * <code>null</code>
 	 */
 	public void setValues(int size, double[] values, boolean[] mask){
-		this.size = size;
+		setValues(size, size, values, mask);
+	}
+	
+	/**
+	 * Sets a new rectangular array which has to be displayed.
+	 * @param width number of columns of the array
+	 * @param height number of rows of the array
+	 * @param values the array with the values to be displayed
+	 * @param mask an boolean array of equal size; or
+	 * <code>null</code>
+	 */
+	public void setValues(int width, int height, double[] values, boolean[] mask){
+		setValues(width, height, values, Mask.of(width, height, mask));
+	}
+	
+	/**
+	 * Sets a new rectangular array which has to be displayed, with a mask.
+	 * @param width number of columns of the array
+	 * @param height number of rows of the array
+	 * @param values the array with the values to be displayed
+	 * @param mask mask of equal size; or <code>null</code>
+	 */
+	public void setValues(int width, int height, double[] values, Mask mask){
+		this.width = width;
+		this.height = height;
 		this.values = values;
+		this.valuesFloat = null;
+		if(mask != this.mask) maskImage = null;
 		this.mask = mask;
 		updateZoom();
 		createImage();
@@ -82,80 +170,197 @@ public class ValueDisplay extends JPanel{
 	 * <code>null</code>
 	 */
 	public void setValues(int size, double[] values){
-		this.size = size;
+		setValues(size, size, values);
+	}
+	
+	/**
+	 * Sets a new rectangular array which has to be displayed.
+	 * @param width number of columns of the array
+	 * @param height number of rows of the array
+	 * @param values the array with the values to be displayed
+	 */
+	public void setValues(int width, int height, double[] values){
+		this.width = width;
+		this.height = height;
 		this.values = values;
+		this.valuesFloat = null;
+		updateZoom();
+		createImage();
+	}
+	
+	/**
+	 * Sets a new array in single precision which has to be displayed.
+	 * @param size size of the quadratic array in one dimension
+	 * @param values the array with the values to be displayed
+	 */
+	public void setValues(int size, float[] values){
+		setValues(size, size, values);
+	}
+	
+	/**
+	 * Sets a new rectangular array in single precision which has to be
+	 * displayed.
+	 * @param width number of columns of the array
+	 * @param height number of rows of the array
+	 * @param values the array with the values to be displayed
+	 */
+	public void setValues(int width, int height, float[] values){
+		this.width = width;
+		this.height = height;
+		this.values = null;
+		this.valuesFloat = values;
 		updateZoom();
 		createImage();
 	}
 	
 	/**
-	 * Sets a new boolean quadratic array (has to be of same size as the
-	 * value array) to mask the values.
+	 * Sets a new boolean array (has to be of same size as the value array)
+	 * to mask the values.
 	 * @param mask quadratic boolean array
 	 */
 	public void setMask(boolean[] mask){
+		setMask(Mask.of(width, height, mask));
+	}
+	
+	/**
+	 * Sets a new mask (has to be of same size as the value array).
+	 * @param mask mask; or <code>null</code>
+	 */
+	public void setMask(Mask mask){
 		this.mask = mask;
-		createImage();
+		maskImage = null;
+		// a mask of another size is applied with the next values:
+		if(mask == null || fitsMask()) createImage();
+	}
+	
+	/**
+	 * Checks, whether the mask has the size of the values.
+	 */
+	protected boolean fitsMask(){
+		return mask != null && mask.getWidth() == width && mask.getHeight() == height;
 	}
 	
 	/**
-	 * Returns the quadratic boolean array which is used to mask the values.
-	 * @return boolean array or <code>null</code> if no mask is present 
+	 * Returns the mask of the values.
+	 * @return mask or <code>null</code> if no mask is present 
 	 */
-	public boolean[] getMask(){ return mask; }
+	public Mask getMask(){ return mask; }
 	
 	/**
 	 * Creates the <code>image</code> from the stored <code>values</code>.
 	 * Will apply the <code>mask</code>, if latter is not <code>null</code>.
 	 */
 	protected void createImage(){
-		image = doubleToImage(size, values, mask, log);
+		Mask m = fitsMask() ? mask : null;
+		if(m == null)
+			maskImage = null;
+		else if(maskImage == null || maskImage.getWidth() != width || maskImage.getHeight() != height)
+			maskImage = createMaskImage(m, maskColor);
+		if(!hasValues())
+			image = null;
+		else{
+			image = reuse(image, width, height);
+			if(valuesFloat != null)
+				floatToByteArray(valuesFloat, m, log, getBytes(image), buffers);
+			else
+				doubleToByteArray(values, m, log, getBytes(image), buffers);
+		}
+		scaledValid = false;
+		repaint();
+	}
+	
+	/**
+	 * Checks if there are values to display, in either precision.
+	 * @return <code>true</code> if values are present
+	 */
+	protected boolean hasValues(){
+		return values != null || valuesFloat != null;
 	}
 	
 	@Override
 	public Dimension getPreferredSize(){
-		int prefSize = Math.max(516+borderWidth*2, size+borderWidth*2);
-		return new Dimension(prefSize, prefSize);
+		int prefWidth = Math.max(516+borderWidth*2, width+borderWidth*2);
+		int prefHeight = width > 0 ? prefWidth * height / width : prefWidth;
+		return new Dimension(prefWidth, Math.max(prefHeight, height+borderWidth*2));
 	}
 	
 	@Override
 	protected void paintComponent(Graphics g){
 		g.setColor(Color.BLACK);
 		g.fillRect(0, 0, getWidth(), getHeight());
-		if(values != null){
+		if(hasValues()){
 			updateZoom();
 			g.setColor(borderColor);
 			g.drawRect(0, 0,
-					size*zoom + borderWidth*2 - 1,
-					size*zoom + borderWidth*2 - 1);
-			g.drawImage(image,
-					borderWidth, borderWidth, 
-					image.getWidth()*zoom, image.getHeight()*zoom,
-					Color.BLACK, null);
-		}
-		if(mask != null){
-			g.setColor(maskColor);
-			for(int row=0; row<size; row++){
-				for(int col=0; col<size; col++){
-					int i = row*size+col;
-					if(!mask[i]){
-						int x = borderWidth + col*zoom;
-						int y = borderWidth + row*zoom;
-						int s = zoom;
-						g.fillRect(x, y, s, s);
-					}
-				}
+					width*zoom + borderWidth*2 - 1,
+					height*zoom + borderWidth*2 - 1);
+			if(zoom > 0){
+				updateScaled();
+				g.drawImage(scaled, borderWidth, borderWidth, null);
 			}
 		}
 	}
 	
+	/**
+	 * Draws the image and the mask overlay zoomed into <code>scaled</code>,
+	 * if they or the zoom have changed.  The image is created compatible
+	 * with the screen, so copying it to the screen needs no conversion.
+	 */
+	protected void updateScaled(){
+		int w = width*zoom, h = height*zoom;
+		if(scaled == null || scaled.getWidth() != w || scaled.getHeight() != h){
+			GraphicsConfiguration gc = getGraphicsConfiguration();
+			scaled = gc != null ? gc.createCompatibleImage(w, h) : new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+			scaledValid = false;
+		}
+		if(scaledValid) return;
+		Graphics2D g = scaled.createGraphics();
+		g.drawImage(image, 0, 0, w, h, Color.BLACK, null);
+		if(maskImage != null){
+			g.drawImage(maskImage, 0, 0, w, h, null);
+		}
+		g.dispose();
+		scaledValid = true;
+	}
+	
+	/**
+	 * Creates an overlay, which has the given color at the masked values,
+	 * and is transparent elsewhere.
+	 * 
+	 * @param width number of columns of the mask
+	 * @param height number of rows of the mask
+	 * @param mask masking array (<code>false</code> for masked values)
+	 * @param color color of the masked values
+	 * @return overlay image
+	 */
+	public static BufferedImage createMaskImage(int width, int height, boolean[] mask, Color color){
+		return createMaskImage(Mask.of(width, height, mask), color);
+	}
+	
+	/**
+	 * Creates an overlay, which has the given color at the masked values,
+	 * and is transparent elsewhere.
+	 * 
+	 * @param mask mask
+	 * @param color color of the masked values
+	 * @return overlay image
+	 */
+	public static BufferedImage createMaskImage(Mask mask, Color color){
+		BufferedImage overlay = new BufferedImage(mask.getWidth(), mask.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		int[] argb = ((DataBufferInt) overlay.getRaster().getDataBuffer()).getData();
+		int masked = color.getRGB();
+		// the new image is transparent:
+		Mask.forRanges(mask, argb.length, (from, to) -> {}, (from, to) -> Arrays.fill(argb, from, to, masked));
+		return overlay;
+	}
+	
 	/**
 	 * Calculates a new zoom, so that the image will fit in the available
 	 * space, including the border.
 	 */
 	public void updateZoom(){
-		if(size != 0)
-			zoom = (Math.min(getWidth(), getHeight())-borderWidth*2) / size;
+		if(width != 0 && height != 0)
+			zoom = Math.min((getWidth()-borderWidth*2) / width, (getHeight()-borderWidth*2) / height);
 		else
 			zoom = 0;
 	}
@@ -176,14 +381,66 @@ public class ValueDisplay extends JPanel{
 	 * @return image created out of the array
 	 */
 	public static BufferedImage doubleToImage(int size, double[] values, boolean[] mask, boolean log){
-		BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_BYTE_GRAY);
-		Raster raster = image.getRaster();
-		SampleModel sm = raster.getSampleModel();
-		DataBuffer db = raster.getDataBuffer();
-		sm.setDataElements(0, 0, size, size, doubleToByteArray(values, mask, log), db);
+		return doubleToImage(size, size, values, mask, log);
+	}
+	
+	/**
+	 * Creates an image of gray values out of the given rectangular array.
+	 * See <code>doubleToImage(int, double[], boolean[], boolean)</code>.
+	 * 
+	 * @param width number of columns of the arrays
+	 * @param height number of rows of the arrays
+	 * @param values array of gray values
+	 * @param mask a masking array to be applied to the values before
+	 * normalizing
+	 * @param log <code>true</code> activates logarithmic mode
+	 * @return image created out of the array
+	 */
+	public static BufferedImage doubleToImage(int width, int height, double[] values, boolean[] mask, boolean log){
+		return doubleToImage(width, height, values, Mask.of(width, height, mask), log, null);
+	}
+	
+	/**
+	 * Writes the gray values of the given rectangular array into an image.
+	 * The bytes are written directly into the data buffer of the image,
+	 * so nothing is allocated, if the image can be reused.
+	 * See <code>doubleToImage(int, double[], boolean[], boolean)</code>.
+	 * 
+	 * @param width number of columns of the arrays
+	 * @param height number of rows of the arrays
+	 * @param values array of gray values
+	 * @param mask mask of the values, which are set to zero and not
+	 * normalized; or <code>null</code>
+	 * @param log <code>true</code> activates logarithmic mode
+	 * @param image image to reuse, if it is a gray image of the same size;
+	 * or <code>null</code>
+	 * @return image created out of the array
+	 */
+	public static BufferedImage doubleToImage(int width, int height, double[] values, Mask mask, boolean log,
+			BufferedImage image){
+		image = reuse(image, width, height);
+		doubleToByteArray(values, mask, log, getBytes(image));
 		return image;
 	}
 	
+	/**
+	 * Returns the given image, if it is a gray image of the given size;
+	 * otherwise a new one.
+	 */
+	protected static BufferedImage reuse(BufferedImage image, int width, int height){
+		if(image != null && image.getType() == BufferedImage.TYPE_BYTE_GRAY
+				&& image.getWidth() == width && image.getHeight() == height)
+			return image;
+		return new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+	}
+	
+	/**
+	 * Returns the array behind a gray image, row by row without gaps.
+	 */
+	protected static byte[] getBytes(BufferedImage image){
+		return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+	}
+	
 	/**
 	 * Converts an quadratic two-dimensional array of floating point values
 	 * into an equally sized array of unsigned bytes.
@@ -200,8 +457,32 @@ public class ValueDisplay extends JPanel{
 	 * @return quadratic byte array
 	 */
 	public static byte[] doubleToByteArray(double[] d, boolean[] mask, boolean log){
-		if(log) return doubleToByteArrayLog(d, mask);
-		else return doubleToByteArrayLin(d, mask);
+		return doubleToByteArray(d, Mask.of(d.length, 1, mask), log, new byte[d.length]);
+	}
+	
+	/**
+	 * Converts an array of floating point values into the given array of
+	 * unsigned bytes.  See <code>doubleToByteArray(double[], boolean[],
+	 * boolean)</code>.
+	 * @param d array of double precision values to be converted to bytes
+	 * @param mask mask of the values, which are set to zero; or
+	 * <code>null</code>
+	 * @param log <code>true</code> activates logarithmic mode
+	 * @param b array for the bytes, of the same length
+	 * @return <code>b</code>
+	 */
+	public static byte[] doubleToByteArray(double[] d, Mask mask, boolean log, byte[] b){
+		return doubleToByteArray(d, mask, log, b, new Buffers());
+	}
+	
+	/**
+	 * Converts the values into the given array of bytes, with the given
+	 * buffers (see <code>doubleToByteArray(double[], Mask, boolean,
+	 * byte[])</code>).
+	 */
+	protected static byte[] doubleToByteArray(double[] d, Mask mask, boolean log, byte[] b, Buffers buffers){
+		if(log) return doubleToByteArrayLog(d, mask, b, buffers);
+		else return doubleToByteArrayLin(d, mask, b, buffers);
 	}
 	
 	/**
@@ -217,26 +498,23 @@ public class ValueDisplay extends JPanel{
 	 * @return quadratic byte array
 	 */
 	public static byte[] doubleToByteArrayLin(double[] d, boolean[] mask){
-		double max = Double.MIN_VALUE;
-		double min = Double.MAX_VALUE;
-		
-		for(int i=0; i<d.length; i++){
-			if(mask == null || mask[i]){
-				if(d[i] < min) min = d[i];
-				if(d[i] > max) max = d[i];
-			}
-		}
-		double scale = 255.0 / (max-min);
+		return doubleToByteArrayLin(d, Mask.of(d.length, 1, mask), new byte[d.length], new Buffers());
+	}
+	
+	/**
+	 * Linear version of <code>doubleToByteArray(double[], Mask,
+	 * boolean, byte[])</code>.
+	 */
+	protected static byte[] doubleToByteArrayLin(double[] d, Mask mask, byte[] b, Buffers buffers){
+		minMax(d, mask, buffers);
+		double min = buffers.min;
+		double scale = 255.0 / (linearMax(buffers.max)-min);
 
-		byte[] b = new byte[d.length];
-		for(int i=0; i<b.length; i++){
-			if(mask != null && !mask[i])
-				b[i] = 0;
-			else{
+		Mask.forRanges(mask, d.length, (from, to) -> {
+			for(int i=from; i<to; i++){
 				b[i] = (byte) ((d[i]-min) * scale);
 			}
-				
-		}
+		}, (from, to) -> Arrays.fill(b, from, to, (byte) 0));
 		return b;
 	}
 	
@@ -254,29 +532,401 @@ public class ValueDisplay extends JPanel{
 	 * @return quadratic byte array
 	 */
 	public static byte[] doubleToByteArrayLog(double[] d, boolean[] mask){
-		double dMin = Double.MAX_VALUE;
-		for(int i=0; i<d.length; i++){
-			if(mask == null || mask[i])
-				if(d[i] < dMin) dMin = d[i];
-		}
-		
-		double[] g = new double[d.length];
-		double gMax = Double.MIN_VALUE;
-		for(int i=0; i<d.length; i++){
-			g[i] = Math.log(d[i] - dMin + Math.E) - 1.0;
-			if(mask == null || mask[i])
-				if(g[i] > gMax) gMax = g[i];
+		return doubleToByteArrayLog(d, Mask.of(d.length, 1, mask), new byte[d.length], new Buffers());
+	}
+	
+	/**
+	 * Logarithmic version of <code>doubleToByteArray(double[], Mask,
+	 * boolean, byte[])</code>.  The byte of a value is looked up in the
+	 * table of <code>logThresholds</code>, so the logarithm is not
+	 * calculated for each value.
+	 */
+	protected static byte[] doubleToByteArrayLog(double[] d, Mask mask, byte[] b, Buffers buffers){
+		minMax(d, mask, buffers);
+		double dMin = buffers.min;
+		double gMax = logMax(dMin, buffers.max);
+		double[] t = buffers.logThresholds(dMin, gMax);
+		Mask.forRanges(mask, d.length, (from, to) -> {
+			for(int i=from; i<to; i++){
+				if(t != null)
+					b[i] = (byte) lookUp(t, d[i]);
+				else
+					b[i] = (byte) ((Math.log(d[i] - dMin + Math.E) - 1.0) / gMax * 255.0);
+			}
+		}, (from, to) -> Arrays.fill(b, from, to, (byte) 0));
+		return b;
+	}
+	
+	/**
+	 * Maximum for the linear mapping, like the search over the array
+	 * starting with <code>Double.MIN_VALUE</code>.
+	 * @param max largest value
+	 */
+	protected static double linearMax(double max){
+		return Math.max(max, Double.MIN_VALUE);
+	}
+	
+	/**
+	 * Largest logarithm for the logarithmic mapping,
+	 * <code>log(max - min + e) - 1</code>, but at least
+	 * <code>Double.MIN_VALUE</code>.
+	 * @param min smallest value
+	 * @param max largest value
+	 */
+	protected static double logMax(double min, double max){
+		if(max < min) return Double.MIN_VALUE; // all values masked
+		return Math.max(Math.log(max - min + Math.E) - 1.0, Double.MIN_VALUE);
+	}
+	
+	/**
+	 * Byte of a value in the logarithmic mapping.
+	 */
+	protected static int logByte(double d, double min, double gMax){
+		return (int) ((Math.log(d - min + Math.E) - 1.0) / gMax * 255.0);
+	}
+	
+	/**
+	 * Calculates the smallest value for each byte 1 to 255 of the
+	 * logarithmic mapping.  The mapping is monotonic, so the byte of a value
+	 * is the number of thresholds not larger than the value.  The thresholds
+	 * are first estimated by the inverse (<code>exp</code>), and then moved
+	 * by single steps of the floating point numbers, so the lookup gives
+	 * exactly the same bytes as <code>logByte</code>.
+	 * @param min smallest value
+	 * @param gMax largest logarithm (see <code>logMax</code>)
+	 * @param t array for the 255 thresholds
+	 * @return <code>true</code> if found; <code>false</code> if they can
+	 * not be found (like for infinite values)
+	 */
+	protected static boolean logThresholds(double min, double gMax, double[] t){
+		if(Double.isInfinite(min) || Double.isNaN(gMax) || Double.isInfinite(gMax)) return false;
+		for(int j=1; j<=255; j++){
+			double x = min - Math.E + Math.exp(1.0 + j*gMax/255.0);
+			if(j > 1 && x < t[j-2]) x = t[j-2];
+			int steps = 0;
+			while(logByte(x, min, gMax) < j){
+				x = Math.nextUp(x);
+				if(++steps > 64) return false;
+			}
+			while(logByte(Math.nextDown(x), min, gMax) >= j){
+				x = Math.nextDown(x);
+				if(++steps > 64) return false;
+			}
+			t[j-1] = x;
 		}
-		byte[] b = new byte[d.length];
-		for(int i=0; i<d.length; i++){
-			if(mask == null || mask[i])
-				b[i] = (byte) (g[i] / gMax * 255.0);
-			else
-				b[i] = 0;
+		return true;
+	}
+	
+	/**
+	 * Counts the thresholds, which are not larger than the value, by
+	 * binary search.
+	 */
+	protected static int lookUp(double[] t, double d){
+		int lo = 0, hi = t.length;
+		while(lo < hi){
+			int mid = (lo + hi) >>> 1;
+			if(t[mid] <= d) lo = mid + 1;
+			else hi = mid;
 		}
+		return lo;
+	}
+	
+	/**
+	 * Creates an image of gray values out of the given array in single
+	 * precision.  See <code>doubleToImage</code>.
+	 * 
+	 * @param size size of one dimension of the quadratic arrays
+	 * @param values array of gray values
+	 * @param mask a masking array to be applied to the values before
+	 * normalizing
+	 * @param log <code>true</code> activates logarithmic mode
+	 * @return image created out of the array
+	 */
+	public static BufferedImage floatToImage(int size, float[] values, boolean[] mask, boolean log){
+		return floatToImage(size, size, values, mask, log);
+	}
+	
+	/**
+	 * Creates an image of gray values out of the given rectangular array
+	 * in single precision.  See <code>doubleToImage</code>.
+	 * 
+	 * @param width number of columns of the arrays
+	 * @param height number of rows of the arrays
+	 * @param values array of gray values
+	 * @param mask a masking array to be applied to the values before
+	 * normalizing
+	 * @param log <code>true</code> activates logarithmic mode
+	 * @return image created out of the array
+	 */
+	public static BufferedImage floatToImage(int width, int height, float[] values, boolean[] mask, boolean log){
+		return floatToImage(width, height, values, Mask.of(width, height, mask), log, null);
+	}
+	
+	/**
+	 * Writes the gray values of the given rectangular array in single
+	 * precision into an image.  See <code>doubleToImage(int, int,
+	 * double[], Mask, boolean, BufferedImage)</code>.
+	 * 
+	 * @param width number of columns of the arrays
+	 * @param height number of rows of the arrays
+	 * @param values array of gray values
+	 * @param mask mask of the values, which are set to zero and not
+	 * normalized; or <code>null</code>
+	 * @param log <code>true</code> activates logarithmic mode
+	 * @param image image to reuse, if it is a gray image of the same size;
+	 * or <code>null</code>
+	 * @return image created out of the array
+	 */
+	public static BufferedImage floatToImage(int width, int height, float[] values, Mask mask, boolean log,
+			BufferedImage image){
+		image = reuse(image, width, height);
+		floatToByteArray(values, mask, log, getBytes(image));
+		return image;
+	}
+	
+	/**
+	 * Converts an quadratic two-dimensional array of single precision
+	 * values into an equally sized array of unsigned bytes.
+	 * See <code>doubleToByteArray</code>.
+	 * @param d array of single precision values to be converted to bytes
+	 * @param mask a masking array to be applied to the array before
+	 * @param log <code>true</code> activates logarithmic mode
+	 * @return quadratic byte array
+	 */
+	public static byte[] floatToByteArray(float[] d, boolean[] mask, boolean log){
+		return floatToByteArray(d, Mask.of(d.length, 1, mask), log, new byte[d.length]);
+	}
+	
+	/**
+	 * Converts an array of single precision values into the given array of
+	 * unsigned bytes.  See <code>doubleToByteArray</code>.
+	 * @param d array of single precision values to be converted to bytes
+	 * @param mask mask of the values, which are set to zero; or
+	 * <code>null</code>
+	 * @param log <code>true</code> activates logarithmic mode
+	 * @param b array for the bytes, of the same length
+	 * @return <code>b</code>
+	 */
+	public static byte[] floatToByteArray(float[] d, Mask mask, boolean log, byte[] b){
+		return floatToByteArray(d, mask, log, b, new Buffers());
+	}
+	
+	/**
+	 * Converts the values into the given array of bytes, with the given
+	 * buffers (see <code>floatToByteArray(float[], Mask, boolean,
+	 * byte[])</code>).
+	 */
+	protected static byte[] floatToByteArray(float[] d, Mask mask, boolean log, byte[] b, Buffers buffers){
+		if(log) return floatToByteArrayLog(d, mask, b, buffers);
+		else return floatToByteArrayLin(d, mask, b, buffers);
+	}
+	
+	/**
+	 * Single precision version of <code>doubleToByteArrayLin</code>.
+	 * The normalization is calculated in double precision.
+	 * @param d array of single precision values to be converted to bytes
+	 * @param mask a masking array to be applied to the array before
+	 * @return quadratic byte array
+	 */
+	public static byte[] floatToByteArrayLin(float[] d, boolean[] mask){
+		return floatToByteArrayLin(d, Mask.of(d.length, 1, mask), new byte[d.length], new Buffers());
+	}
+	
+	/**
+	 * Single precision version of <code>doubleToByteArrayLin(double[],
+	 * Mask, byte[])</code>.
+	 */
+	protected static byte[] floatToByteArrayLin(float[] d, Mask mask, byte[] b, Buffers buffers){
+		minMax(d, mask, buffers);
+		double min = buffers.min;
+		double scale = 255.0 / (linearMax(buffers.max)-min);
+
+		Mask.forRanges(mask, d.length, (from, to) -> {
+			for(int i=from; i<to; i++){
+				b[i] = (byte) ((d[i]-min) * scale);
+			}
+		}, (from, to) -> Arrays.fill(b, from, to, (byte) 0));
+		return b;
+	}
+	
+	/**
+	 * Single precision version of <code>doubleToByteArrayLog</code>.
+	 * The normalization is calculated in double precision.
+	 * @param d array of single precision values to be converted to bytes
+	 * @param mask a masking array to be applied to the array before
+	 * @return quadratic byte array
+	 */
+	public static byte[] floatToByteArrayLog(float[] d, boolean[] mask){
+		return floatToByteArrayLog(d, Mask.of(d.length, 1, mask), new byte[d.length], new Buffers());
+	}
+	
+	/**
+	 * Single precision version of <code>doubleToByteArrayLog(double[],
+	 * Mask, byte[])</code>.
+	 */
+	protected static byte[] floatToByteArrayLog(float[] d, Mask mask, byte[] b, Buffers buffers){
+		minMax(d, mask, buffers);
+		double dMin = buffers.min;
+		double gMax = logMax(dMin, buffers.max);
+		double[] t = buffers.logThresholds(dMin, gMax);
+		Mask.forRanges(mask, d.length, (from, to) -> {
+			for(int i=from; i<to; i++){
+				if(t != null)
+					b[i] = (byte) lookUp(t, d[i]);
+				else
+					b[i] = (byte) ((Math.log(d[i] - dMin + Math.E) - 1.0) / gMax * 255.0);
+			}
+		}, (from, to) -> Arrays.fill(b, from, to, (byte) 0));
 		return b;
 	}
 	
+	/**
+	 * Finds the minimum and the maximum of the values, which are not
+	 * masked, in one pass.  The bands of the array are searched in
+	 * parallel.  If all values are masked, the minimum is larger than the
+	 * maximum.
+	 * @param d array of values
+	 * @param mask a masking array; or <code>null</code>
+	 * @return array with minimum and maximum
+	 */
+	protected static double[] minMax(double[] d, boolean[] mask){
+		return minMax(d, Mask.of(d.length, 1, mask));
+	}
+	
+	/**
+	 * Finds the minimum and the maximum of the valid values, span by span.
+	 * @param d array of values
+	 * @param mask mask; or <code>null</code>
+	 * @return array with minimum and maximum
+	 */
+	protected static double[] minMax(double[] d, Mask mask){
+		Buffers buffers = new Buffers();
+		minMax(d, mask, buffers);
+		return new double[]{buffers.min, buffers.max};
+	}
+	
+	/**
+	 * Finds the minimum and the maximum of the valid values (see
+	 * <code>minMax(double[], Mask)</code>) into the buffers.
+	 * @param d array of values
+	 * @param mask mask; or <code>null</code>
+	 * @param buffers buffers for the bands and the result
+	 */
+	protected static void minMax(double[] d, Mask mask, Buffers buffers){
+		if(mask != null) mask.checkLength(d.length);
+		int rows = mask != null ? mask.getHeight() : d.length;
+		int cols = mask != null ? mask.getWidth() : 1;
+		buffers.bands(Parallel.bandCount(rows, cols));
+		double[] mins = buffers.mins;
+		double[] maxs = buffers.maxs;
+		Parallel.forBands(rows, cols, (band, from, to) -> {
+			double max = -Double.MAX_VALUE;
+			double min = Double.MAX_VALUE;
+			if(mask == null){
+				for(int i=from; i<to; i++){
+					if(d[i] < min) min = d[i];
+					if(d[i] > max) max = d[i];
+				}
+			}
+			else{
+				for(int row=from; row<to; row++){
+					for(int s=mask.firstSpan(row); s<mask.endSpan(row); s++){
+						for(int i=row*cols+mask.getStart(s); i<row*cols+mask.getEnd(s); i++){
+							if(d[i] < min) min = d[i];
+							if(d[i] > max) max = d[i];
+						}
+					}
+				}
+			}
+			mins[band] = min;
+			maxs[band] = max;
+		});
+		buffers.min = min(mins);
+		buffers.max = max(maxs);
+	}
+	
+	/**
+	 * Single precision version of <code>minMax</code>.
+	 * @param d array of values
+	 * @param mask a masking array; or <code>null</code>
+	 * @return array with minimum and maximum
+	 */
+	protected static double[] minMax(float[] d, boolean[] mask){
+		return minMax(d, Mask.of(d.length, 1, mask));
+	}
+	
+	/**
+	 * Single precision version of <code>minMax(double[], Mask)</code>.
+	 * @param d array of values
+	 * @param mask mask; or <code>null</code>
+	 * @return array with minimum and maximum
+	 */
+	protected static double[] minMax(float[] d, Mask mask){
+		Buffers buffers = new Buffers();
+		minMax(d, mask, buffers);
+		return new double[]{buffers.min, buffers.max};
+	}
+	
+	/**
+	 * Single precision version of <code>minMax(double[], Mask,
+	 * Buffers)</code>.
+	 * @param d array of values
+	 * @param mask mask; or <code>null</code>
+	 * @param buffers buffers for the bands and the result
+	 */
+	protected static void minMax(float[] d, Mask mask, Buffers buffers){
+		if(mask != null) mask.checkLength(d.length);
+		int rows = mask != null ? mask.getHeight() : d.length;
+		int cols = mask != null ? mask.getWidth() : 1;
+		buffers.bands(Parallel.bandCount(rows, cols));
+		double[] mins = buffers.mins;
+		double[] maxs = buffers.maxs;
+		Parallel.forBands(rows, cols, (band, from, to) -> {
+			double max = -Double.MAX_VALUE;
+			double min = Double.MAX_VALUE;
+			if(mask == null){
+				for(int i=from; i<to; i++){
+					if(d[i] < min) min = d[i];
+					if(d[i] > max) max = d[i];
+				}
+			}
+			else{
+				for(int row=from; row<to; row++){
+					for(int s=mask.firstSpan(row); s<mask.endSpan(row); s++){
+						for(int i=row*cols+mask.getStart(s); i<row*cols+mask.getEnd(s); i++){
+							if(d[i] < min) min = d[i];
+							if(d[i] > max) max = d[i];
+						}
+					}
+				}
+			}
+			mins[band] = min;
+			maxs[band] = max;
+		});
+		buffers.min = min(mins);
+		buffers.max = max(maxs);
+	}
+	
+	/**
+	 * Combines the maxima of the bands.
+	 */
+	private static double max(double[] maxs){
+		double max = -Double.MAX_VALUE;
+		for(int band=0; band<maxs.length; band++)
+			if(maxs[band] > max) max = maxs[band];
+		return max;
+	}
+	
+	/**
+	 * Combines the minima of the bands.
+	 */
+	private static double min(double[] mins){
+		double min = Double.MAX_VALUE;
+		for(int band=0; band<mins.length; band++)
+			if(mins[band] < min) min = mins[band];
+		return min;
+	}
+	
 	public void setBorderWidth(int borderWidth){
 		this.borderWidth = borderWidth;
 	}
@@ -292,8 +942,8 @@ public class ValueDisplay extends JPanel{
 	 * <code>null</code> if position is outside the image
 	 */
 	public Point getCoordinatesOf(int x, int y){
-		if(x < borderWidth || x >= size*zoom+borderWidth ||
-		   y < borderWidth || y >= size*zoom+borderWidth){
+		if(x < borderWidth || x >= width*zoom+borderWidth ||
+		   y < borderWidth || y >= height*zoom+borderWidth){
 			return null;
 		}
 		Point p = new Point();
@@ -313,7 +963,7 @@ public class ValueDisplay extends JPanel{
 	public int getIndexOf(int x, int y){		
 		Point p = getCoordinatesOf(x, y);
 		if(p == null) return -1;
-		int i =  p.y * size + p.x;
+		int i =  p.y * width + p.x;
 		
 		return i;
 	}
@@ -0,0 +1,144 @@
+package spass;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the class <code>AcquisitionSet</code>.
+ */
+public class AcquisitionSetTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Creates the frames of 3 orientations with the given number of
+	 * phases, with noise.
+	 */
+	protected static double[][] createFrames(int width, int height, SIParams[] truth, long seed){
+		Random random = new Random(seed);
+		double[][] frames = new double[truth.length][];
+		for(int n=0; n<frames.length; n++){
+			double[] frame = Spass.createSIPattern(width, height, truth[n].getAngle(), truth[n].getPhase(), truth[n].getWvlen());
+			for(int i=0; i<frame.length; i++) frame[i] = frame[i] * 200.0 + random.nextDouble() * 60.0;
+			frames[n] = frame;
+		}
+		return frames;
+	}
+
+	/**
+	 * Parameters of 3 orientations with equally spaced phases.
+	 */
+	protected static SIParams[] createParams(int phases, double wvlen){
+		SIParams[] params = new SIParams[3*phases];
+		for(int o=0; o<3; o++){
+			double angle = 0.3 + o*Math.PI/3.0;
+			for(int p=0; p<phases; p++){
+				params[o*phases + p] = new SIParams(angle, 0.7*o + p*wvlen/phases, wvlen);
+			}
+		}
+		return params;
+	}
+
+	protected static double phaseError(double expected, double actual, double wvlen){
+		double error = Math.abs(expected - actual) % wvlen;
+		return Math.min(error, wvlen - error);
+	}
+
+	protected static void check(String name, SIParams[] truth, AcquisitionSet set, double tolerance){
+		AcquisitionSet.Result result = set.analyze();
+		assertEquals(name+" orientations", 3, result.getOrientations());
+		SIParams[] params = result.getParams();
+		assertEquals(name+" params", truth.length, params.length);
+		for(int n=0; n<truth.length; n++){
+			assertEquals(name+" angle "+n, truth[n].getAngle(), params[n].getAngle(), 0.01);
+			assertEquals(name+" wvlen "+n, truth[n].getWvlen(), params[n].getWvlen(), 0.05);
+			assertEquals(name+" phase "+n, 0.0, phaseError(truth[n].getPhase(), params[n].getPhase(), truth[n].getWvlen()), tolerance);
+		}
+		for(int o=0; o<3; o++){
+			AcquisitionSet.Orientation orientation = result.getOrientation(o);
+			assertTrue(name+" confidence "+o, orientation.getConfidence() > 0.9);
+			assertTrue(name+" residual "+o, orientation.getResidual() < 0.05);
+			int phases = orientation.getPhases();
+			assertEquals(name+" step "+o, 2.0*Math.PI/phases, Math.abs(orientation.getPhaseStep()), 0.05);
+		}
+	}
+
+	@Test
+	public void testAnalyze(){
+		int width = 96, height = 80;
+		for(int phases : new int[]{3, 5}){
+			SIParams[] truth = createParams(phases, 5.7);
+			AcquisitionSet set = new AcquisitionSet(createFrames(width, height, truth, phases), width, height, 3);
+			set.setMaskRadius(3.0);
+			assertEquals("phases", phases, set.getPhases());
+			check(phases+" phases", truth, set, 0.1);
+
+			// the frames are transformed only once:
+			Trafo spectrum = set.getSpectrum(0);
+			set.analyze();
+			assertSame("spectrum", spectrum, set.getSpectrum(0));
+
+			// the joint estimate fits to the estimate of the single frames:
+			for(int n=0; n<truth.length; n++){
+				SIParams single = PeakFinder.estimate(set.getSpectrum(n), 3.0).getParams();
+				assertEquals("single angle "+n, truth[n].getAngle(), single.getAngle(), 0.05);
+			}
+		}
+	}
+
+	@Test
+	public void testPadding(){
+		// 97 is no fast size, so the frames are padded:
+		int width = 97, height = 81;
+		SIParams[] truth = createParams(3, 6.3);
+		AcquisitionSet set = new AcquisitionSet(createFrames(width, height, truth, 4), width, height, 3);
+		set.setMaskRadius(3.0);
+		assertEquals("padded", Trafo.fastSize(width), set.getSpectrum(0).getWidth());
+		check("padded", truth, set, 0.15);
+
+		// without zoom, only interpolated from the padded spectra (the
+		// error of the frequency shifts the phase by up to a pixel):
+		set.setZoomLevels(0);
+		SIParams[] params = set.analyze().getParams();
+		for(int n=0; n<truth.length; n++){
+			assertEquals("interpolated angle "+n, truth[n].getAngle(), params[n].getAngle(), 0.05);
+			assertEquals("interpolated wvlen "+n, truth[n].getWvlen(), params[n].getWvlen(), 0.2);
+			assertEquals("interpolated phase "+n, 0.0, phaseError(truth[n].getPhase(), params[n].getPhase(), truth[n].getWvlen()), 1.0);
+		}
+	}
+
+	@Test
+	public void testRawStack() throws IOException {
+		int width = 64, height = 64;
+		SIParams[] truth = createParams(3, 5.2);
+		double[][] frames = createFrames(width, height, truth, 6);
+		File file = folder.newFile("set.raw");
+		ByteBuffer buffer = ByteBuffer.allocate(frames.length*width*height*2).order(ByteOrder.LITTLE_ENDIAN);
+		for(double[] frame : frames){
+			for(double v : frame) buffer.putShort((short) Math.round(v));
+		}
+		Files.write(file.toPath(), buffer.array());
+		try(RawStack stack = new RawStack(file, width, height, 16)){
+			AcquisitionSet set = AcquisitionSet.read(stack, 0, 3, 3, new PlanCache());
+			set.setMaskRadius(3.0);
+			assertEquals("frames", 9, set.getFrameCount());
+			check("raw", truth, set, 0.1);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOrientations(){
+		new AcquisitionSet(new double[4][16], 4, 4, 3);
+	}
+}
@@ -8,7 +8,20 @@ import org.junit.runners.Suite.SuiteClasses;
 @SuiteClasses({
 	TrafoTest.class,
 	SpassTest.class,
-	ValueDisplayTest.class
+	ValueDisplayTest.class,
+	ParallelTest.class,
+	SumMulEvaluatorTest.class,
+	SIPOptimizerTest.class,
+	PeakFinderTest.class,
+	BatchEstimatorTest.class,
+	RawStackTest.class,
+	ImageStackTest.class,
+	SIMReconstructorTest.class,
+	TiledProcessorTest.class,
+	RecomputerTest.class,
+	PatternSpectrumTest.class,
+	MaskTest.class,
+	AcquisitionSetTest.class
 })
 
 public class AllTests {
@@ -0,0 +1,203 @@
+package spass;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the class <code>BatchEstimator</code>.
+ */
+public class BatchEstimatorTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	protected static void writeImage(File file, double[] values, int size) throws IOException {
+		writeImage(file, values, size, size);
+	}
+	
+	protected static void writeImage(File file, double[] values, int width, int height) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		for(int i=0; i<values.length; i++){
+			image.getRaster().setSample(i % width, i / width, 0, (int) values[i]);
+		}
+		ImageIO.write(image, "png", file);
+	}
+	
+	@Test
+	public void testRun() throws IOException {
+		int size = 64;
+		double[] wvlens = {5.5, 7.25, 9.0};
+		for(int i=0; i<wvlens.length; i++){
+			double[] image = TestImages.createImage(size, 0.4, 1.0, wvlens[i], i);
+			writeImage(folder.newFile("frame"+i+".png"), image, size);
+		}
+		folder.newFile("notes.txt");
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ByteArrayOutputStream errors = new ByteArrayOutputStream();
+		String dir = folder.getRoot().getPath();
+		int kernelThreads = Parallel.getThreads();
+		int transformThreads = org.jtransforms.utils.ConcurrencyUtils.getNumberOfThreads();
+		int code = BatchEstimator.run(new String[]{"--threads", "2", "--mask", "3", "--millis", "500", dir},
+				new PrintStream(bytes), new PrintStream(errors));
+		assertEquals("exit code", 0, code);
+		// the global settings of the threads are not changed:
+		assertEquals("kernel threads", kernelThreads, Parallel.getThreads());
+		assertEquals("transform threads", transformThreads, org.jtransforms.utils.ConcurrencyUtils.getNumberOfThreads());
+		// if allowed, the transforms are set back after the batch:
+		BatchEstimator estimator = new BatchEstimator();
+		estimator.setThreads(2);
+		estimator.setFit(false);
+		estimator.setSerialTransforms(true);
+		assertEquals("failed", 0, estimator.process(BatchEstimator.expand(dir), new PrintStream(new ByteArrayOutputStream())));
+		assertEquals("transform threads restored", transformThreads, org.jtransforms.utils.ConcurrencyUtils.getNumberOfThreads());
+		String[] lines = bytes.toString().split("\\R");
+		assertEquals("lines", wvlens.length + 1, lines.length);
+		assertEquals("header", BatchEstimator.CSV_HEADER, lines[0]);
+		for(int i=0; i<wvlens.length; i++){
+			String[] fields = lines[i+1].split(",", -1);
+			assertTrue("order", fields[0].endsWith("frame"+i+".png"));
+			assertEquals("frame", "", fields[1]);
+			assertEquals("width", size, Integer.parseInt(fields[2]));
+			assertEquals("height", size, Integer.parseInt(fields[3]));
+			assertEquals("wvlen", wvlens[i], Double.parseDouble(fields[6]), 0.05);
+			assertEquals("no error", "", fields[9]);
+		}
+		
+		// JSON, with a glob and a file, which is not an image:
+		bytes.reset();
+		code = BatchEstimator.run(new String[]{"--format", "json", "--mask", "3", "--no-fit", dir+File.separator+"*.{png,txt}"},
+				new PrintStream(bytes), new PrintStream(errors));
+		assertEquals("exit code", 1, code);
+		lines = bytes.toString().split("\\R");
+		assertEquals("lines", wvlens.length + 1, lines.length);
+		assertTrue(lines[0], lines[0].matches("\\{\"file\":\".*frame0.png\",\"frame\":null,\"width\":64,\"height\":64,.*\"sumMul\":null\\}"));
+		assertTrue(lines[3], lines[3].matches("\\{\"file\":\".*notes.txt\",\"frame\":null,\"error\":\".+\"\\}"));
+		assertEquals("message", "1 of "+(wvlens.length + 1)+" images failed.", errors.toString().trim());
+		
+		assertEquals("invalid option", 2, BatchEstimator.run(new String[]{"--foo", dir},
+				new PrintStream(bytes), new PrintStream(errors)));
+	}
+	
+	@Test
+	public void testRaw() throws IOException {
+		int size = 32;
+		double[] wvlens = {4.5, 6.0, 3.5};
+		File file = folder.newFile("stack.raw");
+		java.nio.ByteBuffer bytes = java.nio.ByteBuffer.allocate(16 + wvlens.length*size*size*2);
+		bytes.order(java.nio.ByteOrder.BIG_ENDIAN).position(16);
+		for(int i=0; i<wvlens.length; i++){
+			double[] image = TestImages.createImage(size, 1.1, 0.0, wvlens[i], i);
+			for(double v : image) bytes.putShort((short) (v * 200.0));
+		}
+		java.nio.file.Files.write(file.toPath(), bytes.array());
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int code = BatchEstimator.run(new String[]{"--raw", "32x32x16", "--big-endian", "--header", "16",
+				"--mask", "3", "--millis", "500", file.getPath()}, new PrintStream(out), System.err);
+		assertEquals("exit code", 0, code);
+		String[] lines = out.toString().split("\\R");
+		assertEquals("lines", wvlens.length + 1, lines.length);
+		for(int i=0; i<wvlens.length; i++){
+			String[] fields = lines[i+1].split(",", -1);
+			assertEquals("frame", i, Integer.parseInt(fields[1]));
+			assertEquals("wvlen", wvlens[i], Double.parseDouble(fields[6]), 0.05);
+		}
+		
+		// a directory gives all files, or the files with the given suffix:
+		java.nio.file.Files.write(folder.newFile("stack.bin").toPath(), bytes.array());
+		String dir = folder.getRoot().getPath();
+		String[] options = {"--raw", "32x32x16", "--big-endian", "--header", "16", "--mask", "3", "--no-fit"};
+		for(String[] extra : new String[][]{{dir}, {"--suffix", "raw,dat", dir}}){
+			String[] args = java.util.Arrays.copyOf(options, options.length + extra.length);
+			System.arraycopy(extra, 0, args, options.length, extra.length);
+			out.reset();
+			assertEquals("exit code "+extra.length, 0, BatchEstimator.run(args, new PrintStream(out), System.err));
+			lines = out.toString().split("\\R");
+			int files = extra.length == 1 ? 2 : 1;
+			assertEquals("lines "+extra.length, files*wvlens.length + 1, lines.length);
+		}
+	}
+	
+	@Test
+	public void testTiffStack() throws IOException {
+		int size = 32;
+		double[] wvlens = {4.5, 6.0};
+		BufferedImage[] pages = new BufferedImage[wvlens.length];
+		for(int i=0; i<wvlens.length; i++){
+			double[] image = TestImages.createImage(size, -0.7, 0.0, wvlens[i], i);
+			for(int j=0; j<image.length; j++) image[j] *= 250.0;
+			pages[i] = ImageStackTest.createImage16(size, size, image);
+		}
+		File file = folder.newFile("stack.tif");
+		ImageStackTest.writeTiff(file, pages);
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int code = BatchEstimator.run(new String[]{"--threads", "2", "--mask", "3", "--millis", "500", file.getPath()},
+				new PrintStream(out), System.err);
+		assertEquals("exit code", 0, code);
+		String[] lines = out.toString().split("\\R");
+		assertEquals("lines", wvlens.length + 1, lines.length);
+		for(int i=0; i<wvlens.length; i++){
+			String[] fields = lines[i+1].split(",", -1);
+			assertEquals("frame", i, Integer.parseInt(fields[1]));
+			assertEquals("wvlen", wvlens[i], Double.parseDouble(fields[6]), 0.05);
+		}
+	}
+	
+	@Test
+	public void testRectangular() throws IOException {
+		// 37x29 is padded to 40x30 for the FFT:
+		int width = 37, height = 29;
+		SIParams truth = new SIParams(0.9, 2.0, 6.0);
+		double[] image = Spass.createSIPattern(width, height, truth.getAngle(), truth.getPhase(), truth.getWvlen());
+		for(int i=0; i<image.length; i++) image[i] = Math.round(image[i] * 250.0);
+		File file = folder.newFile("rectangle.png");
+		writeImage(file, image, width, height);
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int code = BatchEstimator.run(new String[]{"--mask", "3", "--millis", "500", file.getPath()},
+				new PrintStream(out), System.err);
+		assertEquals("exit code", 0, code);
+		String[] fields = out.toString().split("\\R")[1].split(",", -1);
+		assertEquals("width", width, Integer.parseInt(fields[2]));
+		assertEquals("height", height, Integer.parseInt(fields[3]));
+		assertEquals("angle", truth.getAngle(), Double.parseDouble(fields[4]), 0.01);
+		assertEquals("wvlen", truth.getWvlen(), Double.parseDouble(fields[6]), 0.05);
+		double error = Math.abs(truth.getPhase() - Double.parseDouble(fields[5])) % truth.getWvlen();
+		assertEquals("phase of the original image", 0.0, Math.min(error, truth.getWvlen() - error), 0.2);
+	}
+	
+	@Test
+	public void testExpand() throws IOException {
+		folder.newFile("b.png");
+		folder.newFile("a.png");
+		folder.newFile("c.gif");
+		folder.newFolder("sub");
+		folder.newFile("sub/d.png");
+		String dir = folder.getRoot().getPath();
+		
+		List<File> files = BatchEstimator.expand(dir);
+		assertEquals("directory", 3, files.size());
+		assertEquals("sorted", "a.png", files.get(0).getName());
+		
+		files = BatchEstimator.expand(dir+File.separator+"*.png");
+		assertEquals("glob", 2, files.size());
+		assertEquals("sorted", "b.png", files.get(1).getName());
+		
+		files = BatchEstimator.expand(dir+File.separator+"**.png");
+		assertEquals("recursive glob", 3, files.size());
+	}
+}
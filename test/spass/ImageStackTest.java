@@ -0,0 +1,109 @@
+package spass;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the classes <code>ImageStack</code> and
+ * <code>ImageLoader</code>.
+ */
+public class ImageStackTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	protected static BufferedImage createImage16(int w, int h, double[] values){
+		BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_USHORT_GRAY);
+		for(int i=0; i<w*h; i++){
+			image.getRaster().setSample(i % w, i / w, 0, (int) values[i]);
+		}
+		return image;
+	}
+	
+	/**
+	 * Writes the images as pages of a TIFF file.
+	 */
+	protected static void writeTiff(File file, BufferedImage... pages) throws IOException {
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("tiff");
+		Assume.assumeTrue("TIFF writer available", writers.hasNext());
+		ImageWriter writer = writers.next();
+		try(ImageOutputStream output = ImageIO.createImageOutputStream(file)){
+			writer.setOutput(output);
+			writer.prepareWriteSequence(null);
+			for(BufferedImage page : pages){
+				writer.writeToSequence(new IIOImage(page, null, null), null);
+			}
+			writer.endWriteSequence();
+		}
+		finally{
+			writer.dispose();
+		}
+	}
+	
+	@Test
+	public void testLoad16Bit() throws IOException {
+		int w = 6, h = 4;
+		double[] values = new double[w*h];
+		for(int i=0; i<values.length; i++) values[i] = 65535 - i*2500;
+		File file = folder.newFile("image16.png");
+		ImageIO.write(createImage16(w, h, values), "png", file);
+		
+		BufferedImage image = ImageLoader.read(file);
+		assertArrayEquals("double", values, ImageLoader.toDoubleArray(image, null), 0.0);
+		float[] valuesFloat = ImageLoader.toFloatArray(image, null);
+		for(int i=0; i<values.length; i++) assertEquals("float "+i, values[i], valuesFloat[i], 0.0f);
+		
+		// part of an image, with a translated raster:
+		double[] part = ImageLoader.toDoubleArray(image.getSubimage(2, 1, 3, 2), null);
+		for(int y=0; y<2; y++){
+			for(int x=0; x<3; x++){
+				assertEquals("subimage", values[(y+1)*w + x+2], part[y*3 + x], 0.0);
+			}
+		}
+	}
+	
+	@Test
+	public void testStack() throws IOException {
+		int size = 8, pages = 3;
+		BufferedImage[] images = new BufferedImage[pages];
+		double[][] values = new double[pages][size*size];
+		for(int n=0; n<pages; n++){
+			for(int i=0; i<size*size; i++) values[n][i] = (i*997 + n*31) % 65536;
+			images[n] = createImage16(size, size, values[n]);
+		}
+		File file = folder.newFile("stack.tif");
+		writeTiff(file, images);
+		
+		try(ImageStack stack = new ImageStack(file)){
+			assertEquals("pages", pages, stack.getPageCount());
+			double[] buffer = null;
+			BufferedImage first = stack.readPage(0);
+			for(int n=pages-1; n>=0; n--){
+				double[] result = stack.getPage(n, buffer);
+				if(buffer != null) assertSame("buffer reused", buffer, result);
+				buffer = result;
+				assertArrayEquals("page "+n, values[n], result, 0.0);
+			}
+			assertSame("image reused", first, stack.readPage(1));
+			float[] valuesFloat = stack.getPage(2, (float[]) null);
+			assertEquals("float", values[2][size*size-1], valuesFloat[size*size-1], 0.0f);
+		}
+		
+		// the first page is loaded as single image:
+		assertArrayEquals("first page", values[0], ImageLoader.toDoubleArray(ImageLoader.read(file), null), 0.0);
+	}
+}
@@ -0,0 +1,83 @@
+package spass;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the class <code>Mask</code>.
+ */
+public class MaskTest {
+
+	/**
+	 * Mask of the corners, tested value by value.
+	 */
+	protected static boolean[] reference(int width, int height, double r){
+		boolean[] valid = new boolean[width*height];
+		for(int row=0; row<height; row++){
+			for(int col=0; col<width; col++){
+				valid[row*width+col] = !(Point.distance(col, row, 0, 0) <= r ||
+						Point.distance(col, row, width-1, 0) <= r ||
+						Point.distance(col, row, 0, height-1) <= r ||
+						Point.distance(col, row, width-1, height-1) <= r);
+			}
+		}
+		return valid;
+	}
+
+	@Test
+	public void testCorners(){
+		int[][] sizes = {{64, 64}, {37, 29}, {8, 40}, {5, 5}};
+		double[] radii = {0.0, 1.0, 3.0, 5.0, Math.sqrt(50.0), 20.0, 100.0};
+		for(int[] s : sizes){
+			for(double r : radii){
+				boolean[] expected = reference(s[0], s[1], r);
+				Mask mask = Mask.corners(s[0], s[1], r);
+				assertArrayEquals("mask "+s[0]+"x"+s[1]+", r "+r, expected, mask.toArray());
+				assertArrayEquals("createMask "+s[0]+"x"+s[1]+", r "+r, expected, Spass.createMask(s[0], s[1], r));
+				for(int i=0; i<expected.length; i++){
+					assertEquals("valid "+i, expected[i], mask.isValid(i));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCache(){
+		Mask mask = Mask.get(64, 32, 5.0);
+		assertSame("cached", mask, Mask.get(64, 32, 5.0));
+		assertNotSame("other radius", mask, Mask.get(64, 32, 6.0));
+		assertNotSame("other size", mask, Mask.get(32, 64, 5.0));
+		assertEquals("span of row 5", 5, mask.firstSpan(5));
+		assertEquals("start of row 0", 6, mask.getStart(0));
+		assertEquals("end of row 0", 64 - 6, mask.getEnd(0));
+	}
+
+	@Test
+	public void testOf(){
+		Random random = new Random(11);
+		int width = 23, height = 7;
+		boolean[] valid = new boolean[width*height];
+		for(int i=0; i<valid.length; i++) valid[i] = random.nextInt(3) > 0;
+		Mask mask = Mask.of(width, height, valid);
+		assertArrayEquals("round trip", valid, mask.toArray());
+		assertNull("null", Mask.of(width, height, null));
+
+		double[] values = new double[valid.length];
+		for(int i=0; i<values.length; i++) values[i] = random.nextDouble();
+		assertEquals("max", Spass.findMaxInFirstHalf(values, valid), Spass.findMaxInFirstHalf(values, mask));
+
+		int[] counts = new int[2];
+		Mask.forRanges(mask, valid.length, (from, to) -> {
+			for(int i=from; i<to; i++) assertTrue("valid "+i, valid[i]);
+			synchronized(counts){ counts[0] += to - from; }
+		}, (from, to) -> {
+			for(int i=from; i<to; i++) assertFalse("masked "+i, valid[i]);
+			synchronized(counts){ counts[1] += to - from; }
+		});
+		assertEquals("all values", valid.length, counts[0] + counts[1]);
+	}
+}
@@ -0,0 +1,95 @@
+package spass;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests for the class <code>Parallel</code>.
+ */
+public class ParallelTest {
+	
+	@After
+	public void restore(){
+		Parallel.setThreads(Runtime.getRuntime().availableProcessors());
+		Parallel.setThreshold(Parallel.THRESHOLD);
+	}
+	
+	@Test
+	public void testForRows(){
+		Parallel.setThreads(4);
+		Parallel.setThreshold(0);
+		int rows = 1000, cols = 100;
+		int[] count = new int[rows];
+		Parallel.forRows(rows, cols, (from, to) -> {
+			for(int row=from; row<to; row++) count[row]++;
+		});
+		for(int row=0; row<rows; row++){
+			assertEquals("row "+row, 1, count[row]);
+		}
+	}
+	
+	@Test
+	public void testDeterministicResults(){
+		int size = 512;
+		double[] img = Spass.createSIPattern(size, 0.2, 0.3, 7.7);
+		for(int i=0; i<img.length; i++) img[i] = img[i] * 1000.0 + i % 13;
+		
+		Parallel.setThreads(1);
+		double[] sip1 = Spass.createSIPattern(size, 1.1, 0.5, 5.3);
+		double sum1 = Spass.multiply(new double[size*size], img, sip1);
+		byte[] bytes1 = ValueDisplay.doubleToByteArray(img, null, true);
+		
+		for(int threads : new int[]{2, 3, 8}){
+			Parallel.setThreads(threads);
+			Parallel.setThreshold(0);
+			double[] sip = Spass.createSIPattern(size, 1.1, 0.5, 5.3);
+			assertArrayEquals("pattern, threads "+threads, sip1, sip, 0.0);
+			double sum = Spass.multiply(new double[size*size], img, sip);
+			assertEquals("sum, threads "+threads, sum1, sum, 0.0);
+			assertArrayEquals("bytes, threads "+threads, bytes1, ValueDisplay.doubleToByteArray(img, null, true));
+		}
+	}
+	
+	@Test
+	public void testSetThreadsWhileRunning() throws InterruptedException {
+		Parallel.setThreshold(0);
+		int rows = 1000, cols = 100;
+		Throwable[] error = new Throwable[1];
+		Thread worker = new Thread(() -> {
+			try{
+				for(int run=0; run<2000; run++){
+					double sum = Parallel.sumRows(rows, cols, (from, to) -> to - from);
+					assertEquals("sum", rows, sum, 0.0);
+				}
+			}
+			catch(Throwable t){
+				error[0] = t;
+			}
+		});
+		worker.start();
+		for(int n=0; worker.isAlive(); n++){
+			Parallel.setThreads(2 + n % 3);
+			Thread.sleep(1);
+		}
+		worker.join();
+		assertNull("error: "+error[0], error[0]);
+	}
+	
+	@Test
+	public void testSerial(){
+		Parallel.setThreads(4);
+		Parallel.setThreshold(0);
+		Thread caller = Thread.currentThread();
+		boolean[] other = new boolean[1];
+		int bands = Parallel.serial(() -> {
+			Parallel.forRows(1000, 100, (from, to) -> {
+				if(Thread.currentThread() != caller) other[0] = true;
+			});
+			return Parallel.bandCount(1000, 100);
+		});
+		assertTrue("bands", bands > 1);
+		assertFalse("only the calling thread", other[0]);
+	}
+}
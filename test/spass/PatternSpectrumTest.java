@@ -0,0 +1,74 @@
+package spass;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the class <code>PatternSpectrum</code>.
+ */
+public class PatternSpectrumTest {
+
+	/**
+	 * Compares the spectrum from <code>apply</code> with the transform of
+	 * the pattern (or the product with the image).
+	 */
+	protected static void check(String name, PatternSpectrum spectrum, double[] image, int width, int height,
+			double angle, double phase, double wvlen, Trafo.Mode mode){
+		double[] values = Spass.createSIPattern(width, height, angle, phase, wvlen);
+		if(image != null) Spass.multiply(values, image, values);
+		Trafo expected = new Trafo();
+		expected.transform(values, width, height, mode);
+		Trafo trafo = new Trafo();
+		spectrum.apply(phase, trafo, mode);
+		double delta = 1e-9*width*height;
+		assertEquals(name+" width", width, trafo.getWidth());
+		assertEquals(name+" height", height, trafo.getHeight());
+		assertEquals(name+" mode", mode, trafo.getMode());
+		for(int i=0; i<width*height; i++){
+			assertEquals(name+" real "+i, expected.getReal(i), trafo.getReal(i), delta);
+			if(mode == Trafo.Mode.FFT) assertEquals(name+" imag "+i, expected.getImag(i), trafo.getImag(i), delta);
+		}
+	}
+
+	@Test
+	public void testPattern(){
+		PatternSpectrum spectrum = new PatternSpectrum(new PlanCache());
+		int[][] sizes = {{64, 64}, {48, 30}};
+		double[][] params = {{0.37, 2.5, 5.3}, {Math.PI/4.0, 0.0, 8.0}, {-2.1, -7.0, 13.7}};
+		for(int[] s : sizes){
+			for(double[] p : params){
+				assertTrue("update", spectrum.update(null, s[0], s[1], p[0], p[2]));
+				for(double phase : new double[]{p[1], p[1] + 1.7, -3.2}){
+					check("pattern", spectrum, null, s[0], s[1], p[0], phase, p[2], Trafo.Mode.FFT);
+					check("pattern DHT", spectrum, null, s[0], s[1], p[0], phase, p[2], Trafo.Mode.DHT);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMultiplication(){
+		PatternSpectrum spectrum = new PatternSpectrum(new PlanCache());
+		Random random = new Random(3);
+		int width = 40, height = 32;
+		double[] image = new double[width*height];
+		for(int i=0; i<image.length; i++) image[i] = random.nextDouble();
+
+		// off the grid, the carrier is only transformed for a repeated request:
+		double angle = 0.37, wvlen = 5.3;
+		assertFalse("first", spectrum.update(image, width, height, angle, wvlen));
+		assertTrue("repeated", spectrum.update(image, width, height, angle, wvlen));
+		check("off grid", spectrum, image, width, height, angle, 2.5, wvlen, Trafo.Mode.FFT);
+		check("off grid DHT", spectrum, image, width, height, angle, -1.2, wvlen, Trafo.Mode.DHT);
+
+		// 4 cycles per width, 3 per height, shifts the image spectrum:
+		angle = Math.atan2(3.0/height, 4.0/width);
+		wvlen = 1.0/Math.hypot(3.0/height, 4.0/width);
+		assertTrue("on grid", spectrum.update(image, width, height, angle, wvlen));
+		check("on grid", spectrum, image, width, height, angle, 0.8, wvlen, Trafo.Mode.FFT);
+		check("on grid DHT", spectrum, image, width, height, angle, 3.3, wvlen, Trafo.Mode.DHT);
+	}
+}
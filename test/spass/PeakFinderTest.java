@@ -0,0 +1,252 @@
+package spass;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the class <code>PeakFinder</code>.
+ */
+public class PeakFinderTest {
+	
+	@Test
+	public void testRefine(){
+		int size = 64;
+		double angle = 0.45, phase = 2.0, wvlen = 6.2;
+		double fx = size * Math.cos(angle) / wvlen, fy = size * Math.sin(angle) / wvlen;
+		double[] image = TestImages.createImage(size, angle, phase, wvlen, 6);
+		Trafo trafo = new Trafo();
+		trafo.transform(image, size, Trafo.Mode.FFT);
+		int iMax = Spass.findMaxInFirstHalf(trafo.getAbsArray(), Spass.createMask(size, 3.0));
+		double[] coords = {trafo.getCoords(iMax).x, trafo.getCoords(iMax).y};
+		
+		// the frequency may point into the opposite direction:
+		double sign = Math.signum(coords[0] * fx + coords[1] * fy);
+		double errorGrid = Math.hypot(sign*coords[0] - fx, sign*coords[1] - fy);
+		
+		double[] parabolic = PeakFinder.refineParabolic(trafo, iMax);
+		double errorParabolic = Math.hypot(sign*parabolic[0] - fx, sign*parabolic[1] - fy);
+		assertTrue("parabolic better than grid", errorParabolic < errorGrid);
+		
+		double[] gaussian = PeakFinder.refineGaussian(trafo, iMax);
+		double errorGaussian = Math.hypot(sign*gaussian[0] - fx, sign*gaussian[1] - fy);
+		assertTrue("gaussian better than grid", errorGaussian < errorGrid);
+		
+		double[] zoom = PeakFinder.refineZoom(image, size, parabolic[0], parabolic[1], 0.5, 9, 4);
+		assertEquals("zoom fx", fx, sign*zoom[0], 0.01);
+		assertEquals("zoom fy", fy, sign*zoom[1], 0.01);
+		
+		// the coefficient fits to the SumMulEvaluator:
+		SIParams params = PeakFinder.toSIParams(size, zoom[0], zoom[1], zoom[2], zoom[3]);
+		SumMulEvaluator evaluator = new SumMulEvaluator(image, size);
+		double[] g = new double[2];
+		evaluator.coefficient(params.getAngle(), params.getWvlen(), g);
+		assertEquals("re", g[0], zoom[2], 1e-6 * Math.abs(g[0]));
+		assertEquals("im", g[1], zoom[3], 1e-6 * Math.abs(g[1]));
+		assertEquals("phase", evaluator.bestPhase(params.getAngle(), params.getWvlen()), params.getPhase(), 1e-6);
+		assertEquals("wvlen", wvlen, params.getWvlen(), 0.01);
+	}
+	
+	@Test
+	public void testZoomDFT(){
+		// on the grid of the FFT, the zoom-DFT gives the conjugated FFT:
+		int size = 16;
+		double[] image = TestImages.createImage(size, 1.0, 0.0, 4.0, 7);
+		Trafo trafo = new Trafo();
+		trafo.transform(image, size, Trafo.Mode.FFT);
+		int steps = 5;
+		double[] re = new double[steps*steps], im = new double[steps*steps];
+		PeakFinder.zoomDFT(image, size, -2.0, 1.0, 1.0, steps, re, im);
+		for(int l=0; l<steps; l++){
+			for(int j=0; j<steps; j++){
+				int col = (-2 + j + size) % size, row = (1 + l) % size;
+				int index = row*size + col;
+				assertEquals("re "+j+", "+l, trafo.getReal(index), re[l*steps + j], 1e-9);
+				assertEquals("im "+j+", "+l, -trafo.getImag(index), im[l*steps + j], 1e-9);
+			}
+		}
+	}
+	
+	@Test
+	public void testEstimate(){
+		int size = 64;
+		double angle = 2.0, phase = 1.0, wvlen = 5.6;
+		double[] image = TestImages.createImage(size, angle, phase, wvlen, 8);
+		Trafo trafo = new Trafo();
+		trafo.transform(image, size, Trafo.Mode.FFT);
+		boolean[] mask = Spass.createMask(size, 3.0);
+		SIPEstimate estimate = PeakFinder.estimate(trafo, mask);
+		
+		assertEquals("index", Spass.findMaxInFirstHalf(trafo.getAbsArray(), mask), estimate.getIndex());
+		assertEquals("magnitude", trafo.getAbs(estimate.getIndex()), estimate.getMagnitude(), 0.0);
+		assertTrue("confidence "+estimate.getConfidence(), estimate.getConfidence() > 0.9);
+		SIParams params = estimate.getParams();
+		assertEquals("wvlen", wvlen, params.getWvlen(), 0.1);
+		
+		// phase fits to the image at the estimated frequency:
+		SumMulEvaluator evaluator = new SumMulEvaluator(image, size);
+		double best = evaluator.bestPhase(params.getAngle(), params.getWvlen());
+		double error = Math.abs(best - params.getPhase()) % params.getWvlen();
+		error = Math.min(error, params.getWvlen() - error);
+		assertEquals("phase", 0.0, error, 0.2);
+		
+		// noise only:
+		java.util.Random random = new java.util.Random(9);
+		for(int i=0; i<image.length; i++) image[i] = random.nextDouble();
+		trafo.transform(image, size, Trafo.Mode.FFT);
+		assertTrue("confidence of noise", PeakFinder.estimate(trafo, mask).getConfidence() < 0.7);
+	}
+	
+	@Test
+	public void testEstimateRadius(){
+		for(int size : new int[]{16, 17, 32}){
+			double[] image = TestImages.createImage(size, 0.8, 0.0, 4.5, 10);
+			Trafo trafo = new Trafo();
+			trafo.transform(image, size, Trafo.Mode.FFT);
+			for(double r : new double[]{0.0, 1.0, 2.5, 3.0, Math.sqrt(13.0), 7.9, 100.0}){
+				SIPEstimate expected = PeakFinder.estimate(trafo, Spass.createMask(size, r));
+				SIPEstimate actual = PeakFinder.estimate(trafo, r);
+				assertEquals("index "+size+", "+r, expected.getIndex(), actual.getIndex());
+				assertEquals("confidence "+size+", "+r, expected.getConfidence(), actual.getConfidence(), 0.0);
+			}
+		}
+	}
+	
+	@Test
+	public void testEstimateRectangular(){
+		int width = 60, height = 36;
+		SIParams truth = new SIParams(2.1, 1.3, 5.3);
+		double[] image = Spass.createSIPattern(width, height, truth.getAngle(), truth.getPhase(), truth.getWvlen());
+		java.util.Random random = new java.util.Random(12);
+		for(int i=0; i<image.length; i++) image[i] = Math.round(image[i] * 200.0 + random.nextDouble() * 55.0);
+		Trafo trafo = new Trafo();
+		trafo.transform(image, width, height, Trafo.Mode.FFT);
+		SIPEstimate estimate = PeakFinder.estimate(trafo, 3.0);
+		assertEquals("index", PeakFinder.estimate(trafo, Spass.createMask(width, height, 3.0)).getIndex(), estimate.getIndex());
+		SIParams params = estimate.getParams();
+		assertEquals("angle", truth.getAngle(), params.getAngle(), 0.05);
+		assertEquals("wvlen", truth.getWvlen(), params.getWvlen(), 0.2);
+		
+		SIPOptimizer optimizer = new SIPOptimizer(new SumMulEvaluator(image, width, height, trafo));
+		params = optimizer.optimize(params);
+		assertEquals("fitted angle", truth.getAngle(), params.getAngle(), 0.005);
+		assertEquals("fitted wvlen", truth.getWvlen(), params.getWvlen(), 0.02);
+		double error = Math.abs(truth.getPhase() - params.getPhase()) % params.getWvlen();
+		assertEquals("fitted phase", 0.0, Math.min(error, params.getWvlen() - error), 0.1);
+		
+		// the radius works like the rectangular mask:
+		for(double r : new double[]{0.0, 2.5, 7.9, 20.0}){
+			SIPEstimate expected = PeakFinder.estimate(trafo, Spass.createMask(width, height, r));
+			assertEquals("index "+r, expected.getIndex(), PeakFinder.estimate(trafo, r).getIndex());
+			assertEquals("confidence "+r, expected.getConfidence(), PeakFinder.estimate(trafo, r).getConfidence(), 0.0);
+		}
+	}
+	
+	/**
+	 * Sum of the patterns of three orientations, with noise.
+	 */
+	protected static double[] createOrientations(int width, int height, SIParams[] truth, double[] weights, long seed){
+		double[] image = new double[width*height];
+		for(int o=0; o<truth.length; o++){
+			double[] pattern = Spass.createSIPattern(width, height, truth[o].getAngle(), truth[o].getPhase(), truth[o].getWvlen());
+			for(int i=0; i<image.length; i++) image[i] += weights[o] * 100.0 * pattern[i];
+		}
+		java.util.Random random = new java.util.Random(seed);
+		for(int i=0; i<image.length; i++) image[i] += random.nextDouble() * 40.0;
+		return image;
+	}
+	
+	/**
+	 * Difference of two angles of SI-patterns, which are equal modulo pi.
+	 */
+	protected static double angleError(double a, double b){
+		double d = Math.abs(a - b) % Math.PI;
+		return Math.min(d, Math.PI - d);
+	}
+	
+	@Test
+	public void testFindPeaks(){
+		int width = 96, height = 80;
+		SIParams[] truth = {
+				new SIParams(0.3, 1.0, 5.5),
+				new SIParams(0.3 + Math.PI/3.0, 2.0, 5.5),
+				new SIParams(0.3 + 2.0*Math.PI/3.0, 0.5, 5.5)};
+		double[] weights = {1.0, 0.8, 0.6};
+		double[] image = createOrientations(width, height, truth, weights, 13);
+		Trafo trafo = new Trafo();
+		trafo.transform(image, width, height, Trafo.Mode.FFT);
+		SIPEstimate[] peaks = PeakFinder.findPeaks(trafo, 3.0, 3, 2.0);
+		assertEquals("peaks", 3, peaks.length);
+		// the order depends on the distance of each peak to the grid:
+		boolean[] matched = new boolean[truth.length];
+		for(int p=0; p<peaks.length; p++){
+			SIParams params = peaks[p].getParams();
+			int o = 0;
+			while(o < truth.length && angleError(truth[o].getAngle(), params.getAngle()) > 0.05) o++;
+			assertTrue("angle "+p+": "+params, o < truth.length && !matched[o]);
+			matched[o] = true;
+			assertEquals("wvlen "+p, truth[o].getWvlen(), params.getWvlen(), 0.2);
+			assertTrue("confidence "+p, peaks[p].getConfidence() > 0.8);
+			if(p > 0) assertTrue("order "+p, peaks[p].getMagnitude() <= peaks[p-1].getMagnitude());
+		}
+		
+		// the strongest peak is the one of estimate:
+		SIPEstimate best = PeakFinder.estimate(trafo, 3.0);
+		assertEquals("index", best.getIndex(), peaks[0].getIndex());
+		assertEquals("confidence", best.getConfidence(), peaks[0].getConfidence(), 0.0);
+		assertEquals("phase", best.getParams().getPhase(), peaks[0].getParams().getPhase(), 0.0);
+		
+		// independent of the number of threads:
+		try{
+			Parallel.setThreads(1);
+			SIPEstimate[] expected = PeakFinder.findPeaks(trafo, 3.0, 5, 2.0);
+			Parallel.setThreads(4);
+			Parallel.setThreshold(0);
+			SIPEstimate[] actual = PeakFinder.findPeaks(trafo, 3.0, 5, 2.0);
+			assertEquals("count", expected.length, actual.length);
+			for(int p=0; p<expected.length; p++){
+				assertEquals("index "+p, expected[p].getIndex(), actual[p].getIndex());
+			}
+		}
+		finally{
+			Parallel.setThreads(Runtime.getRuntime().availableProcessors());
+			Parallel.setThreshold(Parallel.THRESHOLD);
+		}
+	}
+	
+	@Test
+	public void testFindPeaksHermitian(){
+		// horizontal pattern: both first orders lie in the first row, so
+		// both are in the searched half of the spectrum:
+		int width = 64, height = 48;
+		SIParams truth = new SIParams(0.0, 0.0, 8.0);
+		double[] image = createOrientations(width, height, new SIParams[]{truth}, new double[]{1.0}, 5);
+		Trafo trafo = new Trafo();
+		trafo.transform(image, width, height, Trafo.Mode.FFT);
+		SIPEstimate[] peaks = PeakFinder.findPeaks(trafo, 3.0, 2, 2.0);
+		assertTrue("peaks", peaks.length >= 1);
+		assertEquals("wvlen", truth.getWvlen(), peaks[0].getParams().getWvlen(), 0.1);
+		for(int p=1; p<peaks.length; p++){
+			double fx = peaks[p].getFx(), fy = peaks[p].getFy();
+			assertTrue("mirror "+p, Math.hypot(fx + peaks[0].getFx(), fy + peaks[0].getFy()) >= 2.0);
+			assertTrue("weak "+p, peaks[p].getMagnitude() < 0.2 * peaks[0].getMagnitude());
+		}
+	}
+	
+	@Test
+	public void testFindPeaksMirror(){
+		// without a minimum distance, the mirror in the first row is skipped:
+		int width = 64, height = 48;
+		double[] image = Spass.createSIPattern(width, height, 0.0, 0.0, 8.0);
+		Trafo trafo = new Trafo();
+		trafo.transform(image, width, height, Trafo.Mode.FFT);
+		SIPEstimate[] peaks = PeakFinder.findPeaks(trafo, 3.0, 3, 0.0);
+		assertTrue("peaks", peaks.length >= 1);
+		assertEquals("row", 0, peaks[0].getIndex() / width);
+		int mirror = (width - peaks[0].getIndex() % width) % width;
+		for(int p=1; p<peaks.length; p++){
+			assertNotEquals("mirror "+p, mirror, peaks[p].getIndex());
+			assertTrue("weak "+p, peaks[p].getMagnitude() < 1e-6 * peaks[0].getMagnitude());
+		}
+	}
+}
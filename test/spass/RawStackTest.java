@@ -0,0 +1,68 @@
+package spass;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the class <code>RawStack</code>.
+ */
+public class RawStackTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void test8Bit() throws IOException {
+		int w = 5, h = 3, frames = 4;
+		byte[] data = new byte[w*h*frames + 7]; // incomplete frame at the end
+		for(int i=0; i<data.length; i++) data[i] = (byte) (i * 7);
+		File file = folder.newFile("stack8.raw");
+		Files.write(file.toPath(), data);
+		
+		try(RawStack stack = new RawStack(file, w, h, 8)){
+			assertEquals("frames", frames, stack.getFrameCount());
+			assertEquals("bits", 8, stack.getBits());
+			ByteBuffer frame = stack.getFrame(2);
+			assertEquals("frame bytes", w*h, frame.remaining());
+			assertEquals("view", data[2*w*h + 1], frame.get(1));
+			
+			double[] values = stack.getFrame(1, (double[]) null);
+			float[] valuesFloat = stack.getFrame(1, (float[]) null);
+			for(int i=0; i<w*h; i++){
+				assertEquals("value "+i, Byte.toUnsignedInt(data[w*h + i]), values[i], 0.0);
+				assertEquals("float value "+i, Byte.toUnsignedInt(data[w*h + i]), valuesFloat[i], 0.0f);
+			}
+			assertSame("buffer reused", values, stack.getFrame(3, values));
+		}
+	}
+	
+	@Test
+	public void test16Bit() throws IOException {
+		int w = 4, h = 4, frames = 3, header = 10;
+		for(ByteOrder order : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}){
+			ByteBuffer data = ByteBuffer.allocate(header + w*h*frames*2).order(order);
+			data.position(header);
+			for(int i=0; i<w*h*frames; i++) data.putShort((short) (60000 - i*1000));
+			File file = folder.newFile("stack16"+order+".raw");
+			Files.write(file.toPath(), data.array());
+			
+			try(RawStack stack = new RawStack(file, w, h, 16, order, header)){
+				assertEquals("frames", frames, stack.getFrameCount());
+				assertEquals("view", (short) (60000 - 17*1000), stack.getFrame(1).getShort(2));
+				double[] values = stack.getFrame(2, (double[]) null);
+				for(int i=0; i<w*h; i++){
+					assertEquals("value "+i, 60000 - (2*w*h + i)*1000, values[i], 0.0);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package spass;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the class <code>Recomputer</code>.
+ */
+public class RecomputerTest {
+
+	/**
+	 * Waits, until the recomputer has nothing to do.
+	 */
+	protected static void waitIdle(Recomputer<?, ?> recomputer) throws InterruptedException {
+		for(int i=0; i<500 && !recomputer.isIdle(); i++) Thread.sleep(10);
+		assertTrue("idle", recomputer.isIdle());
+	}
+
+	@Test
+	public void testCoalescing() throws InterruptedException {
+		List<Integer> published = new CopyOnWriteArrayList<>();
+		Recomputer<Integer, Integer> recomputer = new Recomputer<>((n, cancelled) -> {
+			try{
+				Thread.sleep(20);
+			}
+			catch(InterruptedException e){
+				return null;
+			}
+			return n;
+		}, published::add, Runnable::run);
+		recomputer.setMaxLatency(0); // do not cancel
+		for(int n=1; n<=50; n++) recomputer.submit(n);
+		waitIdle(recomputer);
+		recomputer.shutdown();
+		assertTrue("coalesced: "+published, published.size() < 10);
+		assertEquals("last", Integer.valueOf(50), published.get(published.size()-1));
+		for(int i=1; i<published.size(); i++){
+			assertTrue("order", published.get(i) > published.get(i-1));
+		}
+	}
+
+	@Test
+	public void testCancelStale() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		List<Integer> published = new CopyOnWriteArrayList<>();
+		Recomputer<Integer, Integer> recomputer = new Recomputer<>((n, cancelled) -> {
+			started.countDown();
+			long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while(System.nanoTime() < end){
+				if(cancelled.getAsBoolean()) return null;
+			}
+			return n;
+		}, published::add, Runnable::run);
+		recomputer.setMaxLatency(10000);
+		recomputer.submit(1);
+		assertTrue("started", started.await(1, TimeUnit.SECONDS));
+		recomputer.cancel();
+		waitIdle(recomputer);
+		recomputer.shutdown();
+		assertTrue("nothing published: "+published, published.isEmpty());
+	}
+
+	@Test
+	public void testPublishLatest() throws InterruptedException {
+		List<Integer> published = new CopyOnWriteArrayList<>();
+		Recomputer<Integer, Integer> recomputer = new Recomputer<>((n, cancelled) -> {
+			for(int i=0; i<20; i++){
+				if(cancelled.getAsBoolean()) return null;
+				try{
+					Thread.sleep(1);
+				}
+				catch(InterruptedException e){
+					return null;
+				}
+			}
+			return n;
+		}, published::add, Runnable::run);
+		for(int n=1; n<=20; n++){
+			recomputer.submit(n);
+			Thread.sleep(2);
+		}
+		waitIdle(recomputer);
+		recomputer.shutdown();
+		assertFalse("published", published.isEmpty());
+		assertEquals("last", Integer.valueOf(20), published.get(published.size()-1));
+	}
+
+	@Test
+	public void testFailure() throws InterruptedException {
+		List<Integer> published = new CopyOnWriteArrayList<>();
+		List<RuntimeException> failures = new CopyOnWriteArrayList<>();
+		Recomputer<Integer, Integer> recomputer = new Recomputer<>((n, cancelled) -> {
+			if(n == 1) throw new IllegalStateException("failed");
+			return n;
+		}, published::add, failures::add, Runnable::run);
+		recomputer.submit(1);
+		waitIdle(recomputer);
+		assertEquals("failures", 1, failures.size());
+		assertEquals("message", "failed", failures.get(0).getMessage());
+		assertTrue("nothing published: "+published, published.isEmpty());
+
+		// the recomputer goes on after a failure:
+		recomputer.submit(2);
+		waitIdle(recomputer);
+		recomputer.shutdown();
+		assertEquals("published", Integer.valueOf(2), published.get(0));
+		assertEquals("failures", 1, failures.size());
+	}
+}
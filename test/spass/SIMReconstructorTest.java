@@ -0,0 +1,125 @@
+package spass;
+
+import static org.junit.Assert.*;
+
+import org.jtransforms.fft.DoubleFFT_2D;
+import org.junit.Test;
+
+/**
+ * Unit tests for the class <code>SIMReconstructor</code>.
+ */
+public class SIMReconstructorTest {
+	
+	/**
+	 * Multiplies the image with the OTF in the frequency domain.
+	 */
+	protected static double[] blur(double[] image, int size, double fc){
+		double[] c = new double[2*size*size];
+		for(int i=0; i<image.length; i++) c[2*i] = image[i];
+		DoubleFFT_2D fft = new DoubleFFT_2D(size, size);
+		fft.complexForward(c);
+		for(int row=0; row<size; row++){
+			for(int col=0; col<size; col++){
+				double h = SIMReconstructor.otf(Math.hypot(SIMReconstructor.frequency(col, size), SIMReconstructor.frequency(row, size)), fc);
+				c[2*(row*size+col)] *= h;
+				c[2*(row*size+col)+1] *= h;
+			}
+		}
+		fft.complexInverse(c, true);
+		double[] result = new double[image.length];
+		for(int i=0; i<result.length; i++) result[i] = c[2*i];
+		return result;
+	}
+	
+	/**
+	 * Absolute value of the spectrum of the image at the given frequency.
+	 */
+	protected static double spectrum(double[] image, int size, int fx, int fy){
+		Trafo trafo = new Trafo();
+		trafo.transform(image, size, Trafo.Mode.FFT);
+		return trafo.getAbs(Math.floorMod(fy, size)*size + Math.floorMod(fx, size));
+	}
+	
+	@Test
+	public void testReconstruct(){
+		int size = 64;
+		double cutoff = 0.25; // 16 cycles per image
+		double wvlen = size / 14.0;
+		// sample with a low frequency, and a frequency beyond the cutoff:
+		double[] sample = new double[size*size];
+		for(int y=0; y<size; y++){
+			for(int x=0; x<size; x++){
+				sample[y*size+x] = 1.0 + 0.5*Math.cos(2.0*Math.PI*(3*x + 2*y)/size) + 0.5*Math.cos(2.0*Math.PI*24*x/size);
+			}
+		}
+		// two orientations with three phases each, in mixed order:
+		double[] angles = {Math.PI/2.0, 0.0};
+		double[][] frames = new double[6][];
+		SIParams[] params = new SIParams[6];
+		double[] widefield = new double[size*size];
+		for(int i=0; i<6; i++){
+			params[i] = new SIParams(angles[i % 2], (i / 2) * wvlen / 3.0, wvlen);
+			double[] pattern = Spass.createSIPattern(size, params[i].getAngle(), params[i].getPhase(), wvlen);
+			double[] frame = new double[size*size];
+			for(int l=0; l<frame.length; l++) frame[l] = sample[l] * pattern[l];
+			frames[i] = blur(frame, size, cutoff*size);
+			for(int l=0; l<frame.length; l++) widefield[l] += frames[i][l];
+		}
+		assertTrue("widefield without high frequency",
+				spectrum(widefield, size, 24, 0) < 1e-9 * spectrum(widefield, size, 3, 2));
+		
+		SIMReconstructor reconstructor = new SIMReconstructor();
+		reconstructor.setCutoff(cutoff);
+		reconstructor.setWiener(0.05);
+		reconstructor.setApodization(false);
+		double[] result = reconstructor.reconstruct(frames, params, size);
+		assertEquals("size", 4*size*size, result.length);
+		double low = spectrum(result, 2*size, 3, 2);
+		double high = spectrum(result, 2*size, 24, 0);
+		assertEquals("high frequency restored", 1.0, high / low, 0.3);
+		
+		// with apodization, the high frequency is damped:
+		reconstructor.setApodization(true);
+		result = reconstructor.reconstruct(frames, params, size);
+		double ratio = spectrum(result, 2*size, 24, 0) / spectrum(result, 2*size, 3, 2);
+		assertTrue("apodized "+ratio, ratio > 0.1 && ratio < high / low);
+	}
+	
+	@Test
+	public void testPseudoInverse(){
+		SIMReconstructor reconstructor = new SIMReconstructor();
+		int size = 32;
+		SIParams[] params = {new SIParams(0.3, 0.0, 5.0), new SIParams(0.3, 1.2, 5.0),
+				new SIParams(0.3, 2.9, 5.0), new SIParams(0.3, 4.1, 5.0)};
+		int[] group = {0, 1, 2, 3};
+		double[] a = reconstructor.mixingMatrix(group, params, size);
+		double[] p = SIMReconstructor.pseudoInverse(a);
+		// P * A = identity:
+		for(int j=0; j<3; j++){
+			for(int l=0; l<3; l++){
+				double re = 0.0, im = 0.0;
+				for(int n=0; n<group.length; n++){
+					double pr = p[(j*group.length + n)*2], pi = p[(j*group.length + n)*2+1];
+					double ar = a[n*6+2*l], ai = a[n*6+2*l+1];
+					re += pr*ar - pi*ai;
+					im += pr*ai + pi*ar;
+				}
+				assertEquals("re "+j+", "+l, j == l ? 1.0 : 0.0, re, 1e-9);
+				assertEquals("im "+j+", "+l, 0.0, im, 1e-9);
+			}
+		}
+		
+		// two phases, or equal phases, are not enough:
+		try{
+			SIMReconstructor.pseudoInverse(reconstructor.mixingMatrix(new int[]{0, 1}, params, size));
+			fail("two phases");
+		}
+		catch(IllegalArgumentException e){}
+		SIParams[] same = {params[0], params[0], params[0]};
+		try{
+			SIMReconstructor.pseudoInverse(reconstructor.mixingMatrix(new int[]{0, 1, 2}, same, size));
+			fail("equal phases");
+		}
+		catch(IllegalArgumentException e){}
+	}
+}
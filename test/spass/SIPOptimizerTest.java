@@ -0,0 +1,55 @@
+package spass;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the class <code>SIPOptimizer</code>.
+ */
+public class SIPOptimizerTest {
+	
+	@Test
+	public void testOptimize(){
+		int size = 64;
+		double angle = 0.6, phase = 1.3, wvlen = 7.3;
+		double[] image = TestImages.createImage(size, angle, phase, wvlen, 4);
+		Trafo trafo = new Trafo();
+		trafo.transform(image, size, Trafo.Mode.FFT);
+		SumMulEvaluator evaluator = new SumMulEvaluator(image, size, trafo);
+		
+		SIParams seed = SIPOptimizer.seed(trafo, Spass.createMask(size, 3.0));
+		SIPOptimizer optimizer = new SIPOptimizer(evaluator);
+		int[] calls = new int[1];
+		optimizer.setListener((iteration, best, sumMul) -> {
+			calls[0]++;
+			assertEquals("iteration", calls[0], iteration);
+		});
+		SIParams result = optimizer.optimize(seed);
+		assertEquals("listener calls", optimizer.getIterations(), calls[0]);
+		
+		// the frequency may point into the opposite direction:
+		double sign = Math.signum(Math.cos(result.getAngle() - angle));
+		double u = size * Math.cos(angle) / wvlen, v = size * Math.sin(angle) / wvlen;
+		double uFit = sign * size * Math.cos(result.getAngle()) / result.getWvlen();
+		double vFit = sign * size * Math.sin(result.getAngle()) / result.getWvlen();
+		assertEquals("u", u, uFit, 0.02);
+		assertEquals("v", v, vFit, 0.02);
+		assertEquals("wvlen", wvlen, result.getWvlen(), 0.02);
+		
+		double sumTrue = evaluator.evaluate(angle, phase, wvlen);
+		assertTrue("sum", optimizer.getBestSum() >= sumTrue);
+		assertEquals("sum of result", optimizer.getBestSum(), evaluator.evaluate(result), 1e-9 * sumTrue);
+		assertTrue("better than seed", optimizer.getBestSum() > evaluator.maxOverPhase(seed.getAngle(), seed.getWvlen()));
+	}
+	
+	@Test
+	public void testBudget(){
+		int size = 32;
+		double[] image = TestImages.createImage(size, 0.1, 0.0, 5.1, 5);
+		SIPOptimizer optimizer = new SIPOptimizer(new SumMulEvaluator(image, size));
+		optimizer.setMaxIterations(3);
+		optimizer.optimize(new SIParams(0.0, 0.0, 5.0));
+		assertEquals("iterations", 3, optimizer.getIterations());
+	}
+}
@@ -18,7 +18,7 @@ public class SpassTest {
 		for(int i = 0; i < size*size; i++) values[i] = i;
 		int iTest = size - 2;
 		values[iTest] = 10000.0;
-		int iMaxA = Spass.findMaxInFirstHalf(values, null);
+		int iMaxA = Spass.findMaxInFirstHalf(values, (boolean[]) null);
 		assertEquals("findMax", iTest, iMaxA);
 		
 		// B) easy test with mask
@@ -54,4 +54,66 @@ public class SpassTest {
 		int i6_45 = row*size+col;
 		assertEquals("mask ("+col+", "+row+")", true, mask[i6_45]);
 	}
+	
+	@Test
+	public void testSinglePrecision(){
+		int size = 128;
+		double[] sip = Spass.createSIPattern(size, 0.7, 1.3, 6.1);
+		float[] sipFloat = Spass.createSIPatternFloat(size, 0.7, 1.3, 6.1);
+		double[] img = Spass.createSIPattern(size, 0.2, 0.0, 9.0);
+		float[] imgFloat = new float[size*size];
+		for(int i=0; i<size*size; i++){
+			assertEquals("pattern "+i, sip[i], sipFloat[i], 1e-6);
+			img[i] = Math.round(img[i] * 255.0);
+			imgFloat[i] = (float) img[i];
+		}
+		double sum = Spass.multiply(new double[size*size], img, sip);
+		double sumFloat = Spass.multiply(new float[size*size], imgFloat, sipFloat);
+		assertEquals("sum", sum, sumFloat, 1e-6 * sum);
+	}
+	
+	@Test
+	public void testCreateSIPattern(){
+		int size = 64;
+		double[][] params = {{0.0, 0.0, 8.0}, {Math.PI/4.0, 0.0, 8.0},
+				{0.37, 2.5, 5.3}, {-2.1, -7.0, 13.7}, {Math.PI, 1.0, 2.1}};
+		for(double[] p : params){
+			double angle = p[0], phase = p[1], wavelength = p[2];
+			double[] pattern = Spass.createSIPattern(size, angle, phase, wavelength);
+			float[] patternFloat = Spass.createSIPatternFloat(size, angle, phase, wavelength);
+			
+			// compare with the rotation of the coordinates:
+			int xm = size / 2, ym = size / 2;
+			for(int y=0; y<size; y++){
+				for(int x=0; x<size; x++){
+					double r = Math.sqrt( (x-xm)*(x-xm) + (y-ym)*(y-ym) );
+					double x2 = xm + r * Math.cos(Math.atan2(y-ym, x-xm) - angle);
+					double expected = (1.0 + Math.sin(2.0 * Math.PI * (x2+phase) / wavelength)) / 2.0;
+					assertEquals("pattern ("+x+", "+y+")", expected, pattern[y*size+x], 1e-9);
+					assertEquals("float pattern ("+x+", "+y+")", expected, patternFloat[y*size+x], 1e-6);
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testPreview(){
+		int width = 96, height = 64, f = Spass.PREVIEW_FACTOR;
+		double angle = 0.37, phase = 2.5, wavelength = 13.7;
+		double[] pattern = Spass.createSIPattern(width, height, angle, phase, wavelength);
+		double[] downsampled = Spass.downsample(pattern, width, height, f);
+		float[] downsampledFloat = Spass.downsample(Spass.createSIPatternFloat(width, height, angle, phase, wavelength), width, height, f);
+		double[] preview = Spass.createSIPattern(width/f, height/f, angle,
+				Spass.toPreviewPhase(angle, phase, f), wavelength/f);
+		
+		// averaging a sine over a block only reduces its amplitude:
+		double kx = 2.0*Math.PI*Math.cos(angle)/wavelength, ky = 2.0*Math.PI*Math.sin(angle)/wavelength;
+		double gain = Math.sin(kx*f/2.0)/(f*Math.sin(kx/2.0)) * Math.sin(ky*f/2.0)/(f*Math.sin(ky/2.0));
+		assertEquals("length", preview.length, downsampled.length);
+		for(int i=0; i<preview.length; i++){
+			double expected = 0.5 + gain*(preview[i] - 0.5);
+			assertEquals("preview "+i, expected, downsampled[i], 1e-9);
+			assertEquals("float preview "+i, expected, downsampledFloat[i], 1e-5);
+		}
+	}
 }
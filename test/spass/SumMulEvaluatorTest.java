@@ -0,0 +1,60 @@
+package spass;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the class <code>SumMulEvaluator</code>.
+ */
+public class SumMulEvaluatorTest {
+	
+	@Test
+	public void testEvaluate(){
+		int size = 64;
+		double[] image = TestImages.createImage(size, 0.6, 1.0, 7.0, 1);
+		SumMulEvaluator evaluator = new SumMulEvaluator(image, size);
+		double[][] params = {{0.6, 1.0, 7.0}, {0.0, 0.0, 8.0}, {2.3, -4.1, 3.3}, {-1.0, 12.0, 17.5}};
+		for(double[] p : params){
+			double expected = Spass.multiply(new double[size*size], image,
+					Spass.createSIPattern(size, p[0], p[1], p[2]));
+			assertEquals("sum "+p[0]+", "+p[1]+", "+p[2], expected, evaluator.evaluate(p[0], p[1], p[2]), 1e-9 * expected);
+		}
+	}
+	
+	@Test
+	public void testSpectrum(){
+		int size = 32;
+		double[] image = TestImages.createImage(size, 0.3, 0.5, 5.0, 2);
+		Trafo trafo = new Trafo();
+		trafo.transform(image, size, Trafo.Mode.FFT);
+		SumMulEvaluator withSpectrum = new SumMulEvaluator(image, size, trafo);
+		SumMulEvaluator withoutSpectrum = new SumMulEvaluator(image, size);
+		
+		// frequencies on the grid of the FFT: (4, 0), (3, -2), (-5, 7)
+		int[][] frequencies = {{4, 0}, {3, -2}, {-5, 7}};
+		for(int[] f : frequencies){
+			double angle = Math.atan2(f[1], f[0]);
+			double wvlen = size / Math.sqrt(f[0]*f[0] + f[1]*f[1]);
+			for(double phase = 0.0; phase < 4.0; phase += 0.7){
+				double expected = withoutSpectrum.evaluate(angle, phase, wvlen);
+				assertEquals("sum "+f[0]+", "+f[1], expected, withSpectrum.evaluate(angle, phase, wvlen), 1e-9 * expected);
+			}
+		}
+	}
+	
+	@Test
+	public void testBestPhase(){
+		int size = 64;
+		double angle = 0.9, phase = 2.2, wvlen = 6.5;
+		double[] image = TestImages.createImage(size, angle, phase, wvlen, 3);
+		SumMulEvaluator evaluator = new SumMulEvaluator(image, size);
+		double best = evaluator.bestPhase(angle, wvlen);
+		assertEquals("best phase", phase, best, 0.05);
+		double max = evaluator.maxOverPhase(angle, wvlen);
+		assertEquals("max over phase", max, evaluator.evaluate(angle, best, wvlen), 1e-9 * max);
+		for(double p = 0.0; p < wvlen; p += 0.25){
+			assertTrue("phase "+p, evaluator.evaluate(angle, p, wvlen) <= max);
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package spass;
+
+import java.util.Random;
+
+/**
+ * Test images, which are used by several unit tests.
+ */
+public class TestImages {
+	
+	/**
+	 * Creates a test image: an SI-pattern with noise.
+	 */
+	static double[] createImage(int size, double angle, double phase, double wvlen, long seed){
+		double[] image = Spass.createSIPattern(size, angle, phase, wvlen);
+		Random random = new Random(seed);
+		for(int i=0; i<image.length; i++){
+			image[i] = Math.round(image[i] * 200.0 + random.nextDouble() * 55.0);
+		}
+		return image;
+	}
+}
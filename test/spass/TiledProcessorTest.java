@@ -0,0 +1,102 @@
+package spass;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the class <code>TiledProcessor</code>.
+ */
+public class TiledProcessorTest {
+	
+	@Test
+	public void testTiles(){
+		TiledProcessor processor = new TiledProcessor(32, 8);
+		List<TiledProcessor.Tile> tiles = processor.tiles(100, 32);
+		assertEquals("tiles", 4, tiles.size());
+		int[] xs = {0, 24, 48, 68};
+		for(int i=0; i<xs.length; i++){
+			assertEquals("x", xs[i], tiles.get(i).getX());
+			assertEquals("y", 0, tiles.get(i).getY());
+		}
+		
+		// identity:
+		int width = 100, height = 70;
+		double[] image = new double[width*height];
+		Random random = new Random(1);
+		for(int i=0; i<image.length; i++) image[i] = random.nextDouble();
+		double[] result = processor.apply(image, width, height, (tile, values, size) -> values.clone());
+		assertArrayEquals("stitched identity", image, result, 1e-12);
+	}
+	
+	@Test
+	public void testClampedTile(){
+		// the last tile is moved back to x=18, so it overlaps the first one:
+		TiledProcessor processor = new TiledProcessor(32, 16);
+		int width = 50, height = 50;
+		List<TiledProcessor.Tile> tiles = processor.tiles(width, height);
+		assertEquals("x", 18, tiles.get(2).getX());
+		for(List<TiledProcessor.Tile> group : processor.disjointGroups(tiles)){
+			for(TiledProcessor.Tile a : group){
+				for(TiledProcessor.Tile b : group){
+					assertTrue("disjoint", a == b || !processor.overlaps(a, b));
+				}
+			}
+		}
+		
+		double[] image = new double[width*height];
+		Random random = new Random(3);
+		for(int i=0; i<image.length; i++) image[i] = random.nextDouble();
+		try{
+			Parallel.setThreads(4);
+			Parallel.setThreshold(0);
+			for(int run=0; run<20; run++){
+				double[] result = processor.apply(image, width, height, (tile, values, size) -> values.clone());
+				assertArrayEquals("stitched identity "+run, image, result, 1e-12);
+			}
+		}
+		finally{
+			Parallel.setThreads(Runtime.getRuntime().availableProcessors());
+			Parallel.setThreshold(Parallel.THRESHOLD);
+		}
+	}
+	
+	@Test
+	public void testMultiply(){
+		int width = 96, height = 64;
+		SIParams params = new SIParams(0.7, 1.3, 6.5);
+		double[] image = new double[width*height];
+		Random random = new Random(2);
+		for(int i=0; i<image.length; i++) image[i] = 255.0*random.nextDouble();
+		double[] pattern = Spass.createSIPattern(width, height, params.getAngle(), params.getPhase(), params.getWvlen());
+		TiledProcessor processor = new TiledProcessor(32, 16);
+		double[] result = processor.multiply(image, width, height, params);
+		for(int i=0; i<image.length; i++){
+			assertEquals("value "+i, image[i]*pattern[i], result[i], 1e-9);
+		}
+	}
+	
+	@Test
+	public void testEstimate(){
+		int width = 160, height = 96;
+		SIParams params = new SIParams(2.2, 2.0, 5.3);
+		double[] image = Spass.createSIPattern(width, height, params.getAngle(), params.getPhase(), params.getWvlen());
+		Random random = new Random(4);
+		for(int i=0; i<image.length; i++) image[i] = 200.0*image[i] + 30.0*random.nextDouble();
+		TiledProcessor processor = new TiledProcessor(64, 16);
+		SIPEstimate[] estimates = processor.estimate(image, width, height);
+		assertEquals("tiles", processor.tiles(width, height).size(), estimates.length);
+		for(SIPEstimate e : estimates){
+			SIParams p = e.getParams();
+			// the peak is searched in the first half, which contains the angle 2.2:
+			assertEquals("angle", params.getAngle(), p.getAngle(), 0.02);
+			assertEquals("wvlen", params.getWvlen(), p.getWvlen(), 0.05);
+			double error = Math.IEEEremainder(p.getPhase() - params.getPhase(), p.getWvlen());
+			assertEquals("phase", 0.0, error, 0.3);
+			assertTrue("confidence", e.getConfidence() > 0.9);
+		}
+	}
+}
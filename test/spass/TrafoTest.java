@@ -2,6 +2,8 @@ package spass;
 
 import static org.junit.Assert.*;
 
+import java.util.Random;
+
 import org.junit.Test;
 
 public class TrafoTest {
@@ -26,4 +28,160 @@ public class TrafoTest {
 		assertEquals("SIP phase from trafo", phase, params.getPhase(), 0.001);
 		assertEquals("SIP wvlen from trafo", wvlen, params.getWvlen(), 0.001);
 	}
+	
+	@Test
+	public void testReuse(){
+		Trafo trafo = new Trafo();
+		int size = 16;
+		double[] values = Spass.createSIPattern(size, 0.3, 1.0, 5.0);
+		trafo.transform(values, size, Trafo.Mode.FFT);
+		double[] real = trafo.getRealArray();
+		double[] imag = trafo.getImagArray();
+		double re3 = trafo.getReal(3), im3 = trafo.getImag(3);
+		
+		trafo.transform(values, size, Trafo.Mode.DHT);
+		assertNull("no imag for DHT", trafo.getImagArray());
+		trafo.transform(values, size, Trafo.Mode.FFT);
+		assertSame("real buffer reused", real, trafo.getRealArray());
+		assertSame("imag buffer reused", imag, trafo.getImagArray());
+		assertEquals("same re", re3, trafo.getReal(3), 0.0);
+		assertEquals("same im", im3, trafo.getImag(3), 0.0);
+		assertEquals("plans cached", 2, trafo.getPlans().size());
+		
+		trafo.transform(Spass.createSIPattern(size*2, 0.3, 1.0, 5.0), size*2, Trafo.Mode.FFT);
+		assertEquals("new size", size*2*size*2, trafo.getRealArray().length);
+		assertEquals("plans cached", 3, trafo.getPlans().size());
+	}
+	
+	@Test
+	public void testRealInput(){
+		Random random = new Random(7);
+		for(int size : new int[]{16, 12}){
+			double[] values = new double[size*size];
+			for(int i=0; i<values.length; i++) values[i] = random.nextDouble();
+			Trafo complexTrafo = new Trafo();
+			complexTrafo.setRealInput(false);
+			complexTrafo.transform(values, size, Trafo.Mode.FFT);
+			Trafo realTrafo = new Trafo();
+			realTrafo.transform(values, size, Trafo.Mode.FFT);
+			for(int i=0; i<size*size; i++){
+				assertEquals("re "+i, complexTrafo.getReal(i), realTrafo.getReal(i), 1e-9);
+				assertEquals("im "+i, complexTrafo.getImag(i), realTrafo.getImag(i), 1e-9);
+				assertEquals("abs "+i, complexTrafo.getAbs(i), realTrafo.getAbs(i), 1e-9);
+			}
+		}
+	}
+	
+	@Test
+	public void testSinglePrecision(){
+		Random random = new Random(11);
+		for(int size : new int[]{64, 24}){
+			double[] values = new double[size*size];
+			float[] valuesFloat = new float[size*size];
+			for(int i=0; i<values.length; i++){
+				values[i] = random.nextInt(256);
+				valuesFloat[i] = (float) values[i];
+			}
+			for(Trafo.Mode mode : Trafo.Mode.values()){
+				Trafo trafoDouble = new Trafo();
+				trafoDouble.transform(values, size, mode);
+				Trafo trafoFloat = new Trafo();
+				trafoFloat.transform(valuesFloat, size, mode);
+				assertTrue("single precision", trafoFloat.isSinglePrecision());
+				assertNull("no double array", trafoFloat.getRealArray());
+				
+				// relative to the DC value, which is the largest:
+				double tolerance = 1e-6 * Math.abs(trafoDouble.getReal(0));
+				for(int i=0; i<size*size; i++){
+					assertEquals(mode+" re "+i, trafoDouble.getReal(i), trafoFloat.getRealArrayFloat()[i], tolerance);
+					if(mode == Trafo.Mode.FFT)
+						assertEquals(mode+" im "+i, trafoDouble.getImag(i), trafoFloat.getImagArrayFloat()[i], tolerance);
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testDerivedArrays(){
+		Trafo trafo = new Trafo();
+		int size = 16;
+		trafo.transform(Spass.createSIPattern(size, 0.5, 2.0, 4.0), size, Trafo.Mode.FFT);
+		double[] abs = trafo.getAbsArray();
+		double[] phase = trafo.getPhaseArray();
+		assertSame("abs cached", abs, trafo.getAbsArray());
+		assertSame("phase cached", phase, trafo.getPhaseArray());
+		for(int i=1; i<size*size; i++){
+			assertEquals("abs "+i, trafo.getAbs(i), abs[i], 0.0);
+			assertEquals("phase "+i, trafo.getPhasePix(i), phase[i], 0.0);
+			java.awt.Point p = trafo.getCoords(i);
+			assertEquals("wvlen "+i, size / p.distance(0, 0), trafo.getWavelength(i), 0.0);
+			assertEquals("angle "+i, Math.atan2(p.y, p.x), trafo.getAngle(i), 0.0);
+		}
+		
+		// new transform, same buffers but new values:
+		trafo.transform(Spass.createSIPattern(size, 1.5, 0.0, 3.0), size, Trafo.Mode.FFT);
+		assertSame("abs buffer reused", abs, trafo.getAbsArray());
+		for(int i=0; i<size*size; i++){
+			assertEquals("new abs "+i, trafo.getAbs(i), abs[i], 0.0);
+		}
+	}
+	
+	@Test
+	public void testRectangular(){
+		Random random = new Random(13);
+		for(int[] dim : new int[][]{{16, 8}, {8, 32}, {12, 20}, {15, 6}}){
+			int width = dim[0], height = dim[1];
+			double[] values = new double[width*height];
+			float[] valuesFloat = new float[width*height];
+			for(int i=0; i<values.length; i++){
+				values[i] = random.nextDouble();
+				valuesFloat[i] = (float) values[i];
+			}
+			Trafo complexTrafo = new Trafo();
+			complexTrafo.setRealInput(false);
+			complexTrafo.transform(values, width, height, Trafo.Mode.FFT);
+			Trafo realTrafo = new Trafo();
+			realTrafo.transform(values, width, height, Trafo.Mode.FFT);
+			Trafo floatTrafo = new Trafo();
+			floatTrafo.transform(valuesFloat, width, height, Trafo.Mode.FFT);
+			assertEquals("width", width, realTrafo.getWidth());
+			assertEquals("height", height, realTrafo.getHeight());
+			for(int i=0; i<width*height; i++){
+				String at = width+"x"+height+" "+i;
+				assertEquals("re "+at, complexTrafo.getReal(i), realTrafo.getReal(i), 1e-9);
+				assertEquals("im "+at, complexTrafo.getImag(i), realTrafo.getImag(i), 1e-9);
+				assertEquals("float re "+at, complexTrafo.getReal(i), floatTrafo.getRealArrayFloat()[i], 1e-4);
+				assertEquals("float im "+at, complexTrafo.getImag(i), floatTrafo.getImagArrayFloat()[i], 1e-4);
+			}
+		}
+		
+		// the peak of a pattern, which fits into the rectangle:
+		int width = 40, height = 24;
+		double angle = Math.atan2(3.0/height, 5.0/width), wvlen = 1.0 / Math.hypot(3.0/height, 5.0/width);
+		Trafo trafo = new Trafo();
+		trafo.transform(Spass.createSIPattern(width, height, angle, 1.5, wvlen), width, height, Trafo.Mode.FFT);
+		int index = 3*width + 5;
+		assertEquals("angle", angle, trafo.getAngle(index), 1e-12);
+		assertEquals("wvlen", wvlen, trafo.getWavelength(index), 1e-12);
+		SIParams params = PeakFinder.estimate(trafo, 2.0).getParams();
+		assertEquals("estimated angle", angle, params.getAngle(), 1e-3);
+		assertEquals("estimated phase", 1.5, params.getPhase(), 0.01);
+	}
+	
+	@Test
+	public void testFastSize(){
+		int[] sizes = {1, 7, 11, 13, 97, 1536, 2047, 2049};
+		int[] fast = {1, 8, 12, 15, 100, 1536, 2048, 2160};
+		for(int i=0; i<sizes.length; i++){
+			assertEquals("fast size of "+sizes[i], fast[i], Trafo.fastSize(sizes[i]));
+		}
+		assertTrue("2^a*3^b*5^c", Trafo.isFastSize(2*2*3*5*5));
+		assertFalse("factor 7", Trafo.isFastSize(2*7));
+		
+		double[] values = {1.0, 2.0, 3.0, 4.0, 5.0, 6.0};
+		double[] padded = Trafo.pad(values, 3, 2, 4, 3);
+		assertSame("same size", values, Trafo.pad(values, 3, 2, 3, 2));
+		assertArrayEquals("padded with the mean", new double[]{1.0, 2.0, 3.0, 3.5, 4.0, 5.0, 6.0, 3.5, 3.5, 3.5, 3.5, 3.5},
+				padded, 1e-12);
+	}
 }
@@ -2,10 +2,13 @@ package spass;
 
 import static org.junit.Assert.*;
 
+import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
 import java.awt.image.Raster;
 import java.awt.image.SampleModel;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -141,6 +144,25 @@ public class ValueDisplayTest {
 		assertEquals("(D) output byte 3", v3, output[3]);
 	}
 	
+	@Test
+	public void testFloatToByteArray(){
+		int size = 16;
+		double[] input = new double[size*size];
+		float[] inputFloat = new float[size*size];
+		boolean[] mask = new boolean[size*size];
+		for(int i=0; i<size*size; i++){
+			inputFloat[i] = (float) (Math.sin(i) * 1000.0);
+			input[i] = inputFloat[i];
+			mask[i] = i % 7 != 0;
+		}
+		for(boolean log : new boolean[]{false, true}){
+			assertArrayEquals("log "+log, ValueDisplay.doubleToByteArray(input, null, log),
+					ValueDisplay.floatToByteArray(inputFloat, null, log));
+			assertArrayEquals("masked, log "+log, ValueDisplay.doubleToByteArray(input, mask, log),
+					ValueDisplay.floatToByteArray(inputFloat, mask, log));
+		}
+	}
+	
 	@Test
 	public void testDoubleToImage(){
 		int size = 2;
@@ -162,6 +184,131 @@ public class ValueDisplayTest {
 		assertEquals("image byte 3", (byte)0x55, bytes[3]);
 	}
 	
+	@Test
+	public void testLogLookUp(){
+		Random random = new Random(5);
+		int n = 1 << 17;
+		double[] input = new double[n];
+		float[] inputFloat = new float[n];
+		boolean[] mask = new boolean[n];
+		for(int i=0; i<n; i++){
+			input[i] = Math.pow(10.0, 8.0*random.nextDouble()) - 1e4;
+			inputFloat[i] = (float) input[i];
+			mask[i] = i % 5 != 0;
+		}
+		input[7] = Double.NaN;
+		for(boolean[] m : new boolean[][]{null, mask}){
+			double[] minMax = ValueDisplay.minMax(input, m);
+			double gMax = ValueDisplay.logMax(minMax[0], minMax[1]);
+			byte[] bytes = ValueDisplay.doubleToByteArray(input, m, true);
+			for(int i=0; i<n; i++){
+				byte expected = m != null && !m[i] ? 0 : (byte) ValueDisplay.logByte(input[i], minMax[0], gMax);
+				assertEquals("log byte "+i, expected, bytes[i]);
+			}
+			minMax = ValueDisplay.minMax(inputFloat, m);
+			gMax = ValueDisplay.logMax(minMax[0], minMax[1]);
+			bytes = ValueDisplay.floatToByteArray(inputFloat, m, true);
+			for(int i=0; i<n; i++){
+				byte expected = m != null && !m[i] ? 0 : (byte) ValueDisplay.logByte(inputFloat[i], minMax[0], gMax);
+				assertEquals("float log byte "+i, expected, bytes[i]);
+			}
+		}
+	}
+	
+	@Test
+	public void testBuffers(){
+		int width = 64, height = 48;
+		double[] input = new double[width*height];
+		for(int i=0; i<input.length; i++) input[i] = i*i;
+		ValueDisplay display = new ValueDisplay();
+		display.setLog(true);
+		display.setValues(width, height, input);
+		ValueDisplay.Buffers buffers = display.buffers;
+		double[] mins = buffers.mins;
+		double[] thresholds = buffers.logThresholds(buffers.min, ValueDisplay.logMax(buffers.min, buffers.max));
+		assertNotNull("thresholds", thresholds);
+		double[] expected = new double[255];
+		assertTrue("found", ValueDisplay.logThresholds(buffers.min, ValueDisplay.logMax(buffers.min, buffers.max), expected));
+		assertArrayEquals("thresholds", expected, thresholds, 0.0);
+
+		// the same buffers are used again, the table follows the range:
+		input[1] = -100.0;
+		display.setValues(width, height, input);
+		assertSame("bands", mins, buffers.mins);
+		assertSame("table", thresholds, buffers.thresholds);
+		assertEquals("min", -100.0, buffers.min, 0.0);
+		byte[] bytes = ValueDisplay.doubleToByteArray(input, (boolean[]) null, true);
+		assertArrayEquals("bytes", bytes, ValueDisplay.getBytes(display.image));
+	}
+	
+	@Test
+	public void testReuseImage(){
+		int width = 6, height = 4;
+		double[] input = new double[width*height];
+		for(int i=0; i<input.length; i++) input[i] = i;
+		BufferedImage image = ValueDisplay.doubleToImage(width, height, input, null, false, null);
+		input[0] = input.length;
+		BufferedImage reused = ValueDisplay.doubleToImage(width, height, input, null, true, image);
+		assertSame("reused", image, reused);
+		assertEquals("max", 0xFF, reused.getRaster().getSample(0, 0, 0));
+		assertEquals("min", 0, reused.getRaster().getSample(1, 0, 0));
+		assertNotSame("other size", image, ValueDisplay.doubleToImage(height, width, input, null, true, image));
+	}
+	
+	@Test
+	public void testMaskImage(){
+		int size = 8;
+		double[] values = new double[size*size];
+		for(int i=0; i<values.length; i++) values[i] = 1.0 + i % 3;
+		boolean[] mask = Spass.createMask(size, size, 1.5);
+		ValueDisplay display = new ValueDisplay(size, values);
+		display.setBorderWidth(1);
+		display.setSize(2*size+2, 2*size+2);
+		display.setMask(mask);
+		BufferedImage overlay = ValueDisplay.createMaskImage(size, size, mask, Color.RED);
+		
+		BufferedImage painted = new BufferedImage(display.getWidth(), display.getHeight(), BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = painted.createGraphics();
+		display.paintComponent(g);
+		g.dispose();
+		assertEquals("zoom", 2, display.getZoom());
+		for(int i=0; i<mask.length; i++){
+			int x = i % size, y = i / size;
+			assertEquals("overlay "+i, mask[i] ? 0 : Color.RED.getRGB(), overlay.getRGB(x, y));
+			int rgb = painted.getRGB(1 + 2*x + 1, 1 + 2*y + 1) & 0xFFFFFF;
+			if(!mask[i]) assertEquals("masked "+i, 0x008000, rgb);
+			else assertEquals("gray "+i, rgb & 0xFF, (rgb >> 8) & 0xFF);
+		}
+	}
+	
+	@Test
+	public void testScaledImage(){
+		int size = 8;
+		double[] values = new double[size*size];
+		for(int i=0; i<values.length; i++) values[i] = i;
+		ValueDisplay display = new ValueDisplay(size, values);
+		display.setBorderWidth(1);
+		display.setSize(3*size+2, 3*size+2);
+		BufferedImage painted = new BufferedImage(display.getWidth(), display.getHeight(), BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = painted.createGraphics();
+		display.paintComponent(g);
+		BufferedImage scaled = display.scaled;
+		assertEquals("scaled width", 3*size, scaled.getWidth());
+		assertTrue("valid", display.scaledValid);
+		assertEquals("last pixel", 0xFFFFFF, painted.getRGB(3*size, 3*size) & 0xFFFFFF);
+		
+		// repaints reuse the scaled image, new values redraw it:
+		display.paintComponent(g);
+		assertSame("repaint", scaled, display.scaled);
+		values[values.length-1] = 0.0;
+		display.setValues(size, values);
+		assertFalse("outdated", display.scaledValid);
+		display.paintComponent(g);
+		g.dispose();
+		assertSame("same zoom", scaled, display.scaled);
+		assertEquals("new last pixel", 0x000000, painted.getRGB(3*size, 3*size) & 0xFFFFFF);
+	}
+	
 	@Test
 	public void testCreateSIPattern(){
 		double angle = 0.0;